@@ -0,0 +1,116 @@
+package com.google.api.services.samples.youtube.cmdline.live;
+
+import com.google.api.services.youtube.YouTube;
+import com.google.api.services.youtube.model.CdnSettings;
+import com.google.api.services.youtube.model.LiveBroadcast;
+import com.google.api.services.youtube.model.LiveBroadcastSnippet;
+import com.google.api.services.youtube.model.LiveBroadcastStatus;
+import com.google.api.services.youtube.model.LiveStream;
+import com.google.api.services.youtube.model.LiveStreamSnippet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Provisioning {@code batch} broadcast and stream pairs against a {@link LocalLiveApiServer} that
+ * adds {@code latencyMillis} to every response, one blocking request after another as the sample
+ * originally did and through a {@link LiveProvisioner}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProvisioningBenchmark {
+
+    @Param({"50"})
+    public long latencyMillis;
+
+    @Param({"1", "10"})
+    public int batch;
+
+    private LocalLiveApiServer server;
+
+    private YouTube youtube;
+
+    private LiveProvisioner provisioner;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new LocalLiveApiServer(0);
+        server.setLatency(latencyMillis);
+        server.start();
+        youtube = new YouTube.Builder(Auth.HTTP_TRANSPORT, Auth.JSON_FACTORY, null)
+                .setRootUrl(server.getRootUrl()).setApplicationName("ProvisioningBenchmark").build();
+        provisioner = new LiveProvisioner.Builder(youtube).build();
+    }
+
+    @Benchmark
+    public LiveBroadcast sequential() throws IOException {
+        LiveBroadcast bound = null;
+        for (int i = 0; i < batch; i++) {
+            LiveBroadcast broadcast = youtube.liveBroadcasts().insert("snippet,status", newBroadcast()).execute();
+            LiveStream stream = youtube.liveStreams().insert("snippet,cdn", newStream()).execute();
+            YouTube.LiveBroadcasts.Bind bind = youtube.liveBroadcasts().bind(broadcast.getId(), "id,contentDetails");
+            bind.setStreamId(stream.getId());
+            bound = bind.execute();
+        }
+        return bound;
+    }
+
+    @Benchmark
+    public List<LiveProvisioner.Provisioned> provisioner() throws IOException {
+        List<LiveBroadcast> broadcasts = new ArrayList<LiveBroadcast>(batch);
+        List<LiveStream> streams = new ArrayList<LiveStream>(batch);
+        for (int i = 0; i < batch; i++) {
+            broadcasts.add(newBroadcast());
+            streams.add(newStream());
+        }
+        return provisioner.provisionAll(broadcasts, streams);
+    }
+
+    @TearDown
+    public void tearDown() {
+        provisioner.close();
+        server.stop();
+    }
+
+    private static LiveBroadcast newBroadcast() {
+        LiveBroadcastSnippet snippet = new LiveBroadcastSnippet();
+        snippet.setTitle("benchmark");
+        LiveBroadcastStatus status = new LiveBroadcastStatus();
+        status.setPrivacyStatus("private");
+        LiveBroadcast broadcast = new LiveBroadcast();
+        broadcast.setSnippet(snippet);
+        broadcast.setStatus(status);
+        return broadcast;
+    }
+
+    private static LiveStream newStream() {
+        LiveStreamSnippet snippet = new LiveStreamSnippet();
+        snippet.setTitle("benchmark");
+        CdnSettings cdn = new CdnSettings();
+        cdn.setFormat("240p");
+        cdn.setIngestionType("rtmp");
+        LiveStream stream = new LiveStream();
+        stream.setSnippet(snippet);
+        stream.setCdn(cdn);
+        return stream;
+    }
+}
@@ -0,0 +1,117 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import com.xuggle.xuggler.IPacket;
+import com.xuggle.xuggler.IStreamCoder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixtures shared by the benchmarks.
+ */
+final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Parses a {@code WIDTHxHEIGHT} benchmark parameter.
+     */
+    static int[] parseResolution(String resolution) {
+        int separator = resolution.indexOf('x');
+        return new int[] {
+                Integer.parseInt(resolution.substring(0, separator)),
+                Integer.parseInt(resolution.substring(separator + 1))
+        };
+    }
+
+    /**
+     * Returns the classpath resource of an x264 preset parameter such as {@code normal}.
+     */
+    static String presetResource(String preset) {
+        return "/resources/libx264-" + preset + ".ffpreset";
+    }
+
+    /**
+     * Allocates a pool holding a single pooled frame and returns that frame.
+     */
+    static Frame singleFrame(FramePool pool) {
+        pool.allocate(1);
+        return pool.acquire();
+    }
+
+    /**
+     * Creates the sink named by a benchmark parameter: {@code memory}, {@code file} or
+     * {@code loopback}. The loopback server, if any, is returned through {@code server}.
+     */
+    static OutputSink createSink(String sink, LoopbackRtmpServer[] server) throws IOException {
+        if ("memory".equals(sink)) {
+            return new MemorySink();
+        }
+        if ("file".equals(sink)) {
+            java.io.File file = java.io.File.createTempFile("benchmark", ".flv");
+            file.deleteOnExit();
+            return ContainerSink.file(file.getAbsolutePath());
+        }
+        if ("loopback".equals(sink)) {
+            server[0] = new LoopbackRtmpServer(0);
+            server[0].start();
+            return ContainerSink.rtmp(server[0].getUrl("live", "benchmark"));
+        }
+        throw new IllegalArgumentException("unknown sink: " + sink);
+    }
+
+    /**
+     * Encodes synthetic frames and returns copies of the resulting packets, starting with a
+     * keyframe.
+     */
+    static List<IPacket> encodePackets(int width, int height, int frames) throws IOException {
+        final List<IPacket> packets = new ArrayList<IPacket>();
+        OutputSink collector = new OutputSink() {
+            @Override
+            public void open(IStreamCoder coder) {
+            }
+
+            @Override
+            public void write(IPacket packet) {
+                packets.add(IPacket.make(packet, true));
+            }
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public String getName() {
+                return "collector";
+            }
+        };
+        StreamSession session = new StreamSession.Builder(collector).setSize(width, height).build();
+        session.open();
+        SyntheticFrameSource source = new SyntheticFrameSource(width, height);
+        source.open();
+        FramePool pool = new FramePool(width, height);
+        Frame frame = singleFrame(pool);
+        ColorConverter converter = new ParallelColorConverter(width, height);
+        try {
+            for (int i = 0; i < frames; i++) {
+                frame.setSequence(i);
+                frame.setTimeStamp(i * 1000000L / 24);
+                source.read(frame);
+                converter.convert(frame);
+                frame.getPicture().setKeyFrame(i == 0);
+                if (session.encode(frame.getPicture(), frame.getPacket())) {
+                    session.write(frame.getPacket());
+                }
+                frame.getPacket().reset();
+            }
+        } finally {
+            converter.close();
+            source.close();
+            session.close();
+            pool.close();
+        }
+        return packets;
+    }
+}
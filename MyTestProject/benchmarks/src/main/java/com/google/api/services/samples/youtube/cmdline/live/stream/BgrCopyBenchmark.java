@@ -0,0 +1,92 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning a packed-int screen capture into the BGR raster Xuggler expects: the original
+ * per-frame image and {@code drawImage}, a redraw into a cached image, and the direct unpacking
+ * loop used by {@link RobotFrameSource}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BgrCopyBenchmark {
+
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String resolution;
+
+    private BufferedImage capture;
+
+    private int[] rgb;
+
+    private BufferedImage bgrImage;
+
+    private Graphics2D bgrGraphics;
+
+    private byte[] bgr;
+
+    private int width;
+
+    private int height;
+
+    @Setup
+    public void setUp() {
+        int[] size = BenchmarkSupport.parseResolution(resolution);
+        width = size[0];
+        height = size[1];
+        capture = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        rgb = ((DataBufferInt) capture.getRaster().getDataBuffer()).getData();
+        Random random = new Random(42);
+        for (int i = 0; i < rgb.length; i++) {
+            rgb[i] = random.nextInt() & 0xFFFFFF;
+        }
+        bgrImage = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        bgrGraphics = bgrImage.createGraphics();
+        bgr = ((DataBufferByte) bgrImage.getRaster().getDataBuffer()).getData();
+    }
+
+    @Benchmark
+    public BufferedImage newImageAndRedraw() {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        image.getGraphics().drawImage(capture, 0, 0, null);
+        return image;
+    }
+
+    @Benchmark
+    public BufferedImage pooledRedraw() {
+        bgrGraphics.drawImage(capture, 0, 0, null);
+        return bgrImage;
+    }
+
+    @Benchmark
+    public byte[] directUnpack() {
+        RobotFrameSource.copyToBgr(rgb, width, bgr, width, height);
+        return bgr;
+    }
+
+    @TearDown
+    public void tearDown() {
+        bgrGraphics.dispose();
+    }
+}
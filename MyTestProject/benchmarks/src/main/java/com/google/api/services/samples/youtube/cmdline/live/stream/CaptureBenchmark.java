@@ -0,0 +1,69 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of filling a pooled frame from a {@link FrameSource}. The Robot source needs a display:
+ * run it with {@code -p source=robot}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CaptureBenchmark {
+
+    @Param({"synthetic"})
+    public String source;
+
+    @Param({"640x480", "1280x720"})
+    public String resolution;
+
+    private FrameSource frameSource;
+
+    private FramePool pool;
+
+    private Frame frame;
+
+    @Setup
+    public void setUp() throws IOException {
+        int[] size = BenchmarkSupport.parseResolution(resolution);
+        if ("robot".equals(source)) {
+            frameSource = new RobotFrameSource(new Rectangle(0, 0, size[0], size[1]));
+        } else {
+            frameSource = new SyntheticFrameSource(size[0], size[1]);
+        }
+        frameSource.open();
+        pool = new FramePool(size[0], size[1]);
+        frame = BenchmarkSupport.singleFrame(pool);
+    }
+
+    @Benchmark
+    public byte[] capture() throws IOException {
+        frame.setSequence(frame.getSequence() + 1);
+        frameSource.read(frame);
+        return frame.getPixels();
+    }
+
+    @TearDown
+    public void tearDown() {
+        frameSource.close();
+        pool.close();
+    }
+}
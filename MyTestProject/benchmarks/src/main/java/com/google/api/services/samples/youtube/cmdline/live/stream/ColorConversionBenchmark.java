@@ -0,0 +1,67 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BGR to YUV420P conversion of one frame with each {@link ColorConverter}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ColorConversionBenchmark {
+
+    @Param({"xuggler", "parallel"})
+    public String converter;
+
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String resolution;
+
+    private ColorConverter colorConverter;
+
+    private FramePool pool;
+
+    private Frame frame;
+
+    @Setup
+    public void setUp() throws IOException {
+        int[] size = BenchmarkSupport.parseResolution(resolution);
+        pool = new FramePool(size[0], size[1]);
+        frame = BenchmarkSupport.singleFrame(pool);
+        SyntheticFrameSource source = new SyntheticFrameSource(size[0], size[1]);
+        source.open();
+        source.read(frame);
+        source.close();
+        colorConverter = "parallel".equals(converter)
+                ? new ParallelColorConverter(size[0], size[1])
+                : new XugglerColorConverter();
+    }
+
+    @Benchmark
+    public Frame convert() {
+        colorConverter.convert(frame);
+        return frame;
+    }
+
+    @TearDown
+    public void tearDown() {
+        colorConverter.close();
+        pool.close();
+    }
+}
@@ -0,0 +1,83 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * H.264 encoding of one frame at the bit rate and GOP used by {@code CreateBroadcast}, for each
+ * x264 preset shipped in {@code src/resources}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodeBenchmark {
+
+    @Param({"normal", "ultrafast"})
+    public String preset;
+
+    @Param({"426x240", "640x480", "1280x720"})
+    public String resolution;
+
+    @Param({"200000"})
+    public int bitRate;
+
+    @Param({"5"})
+    public int groupOfPictures;
+
+    private StreamSession session;
+
+    private FramePool pool;
+
+    private Frame frame;
+
+    private long pts;
+
+    @Setup
+    public void setUp() throws IOException {
+        int[] size = BenchmarkSupport.parseResolution(resolution);
+        session = new StreamSession.Builder(new MemorySink())
+                .setSize(size[0], size[1])
+                .setBitRate(bitRate)
+                .setNumPicturesInGroupOfPictures(groupOfPictures)
+                .setPreset(BenchmarkSupport.presetResource(preset))
+                .build();
+        session.open();
+        pool = new FramePool(size[0], size[1]);
+        frame = BenchmarkSupport.singleFrame(pool);
+        SyntheticFrameSource source = new SyntheticFrameSource(size[0], size[1]);
+        source.open();
+        source.read(frame);
+        source.close();
+        new XugglerColorConverter().convert(frame);
+    }
+
+    @Benchmark
+    public boolean encode() throws IOException {
+        pts += 1000000L / 24;
+        frame.getPicture().setPts(pts);
+        frame.getPacket().reset();
+        return session.encode(frame.getPicture(), frame.getPacket());
+    }
+
+    @TearDown
+    public void tearDown() {
+        session.close();
+        pool.close();
+    }
+}
@@ -0,0 +1,107 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import com.xuggle.xuggler.IRational;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frames per second through the whole pipeline: synthetic capture, conversion, encoding and
+ * muxing, with the source unthrottled so the slowest stage sets the rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    private static final int FRAMES = 240;
+
+    @Param({"640x480", "1280x720"})
+    public String resolution;
+
+    @Param({"parallel", "xuggler"})
+    public String converter;
+
+    @Param({"memory", "loopback"})
+    public String sink;
+
+    private final LoopbackRtmpServer[] server = new LoopbackRtmpServer[1];
+
+    private int width;
+
+    private int height;
+
+    private StreamSession session;
+
+    private SyntheticFrameSource source;
+
+    private ColorConverter colorConverter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        int[] size = BenchmarkSupport.parseResolution(resolution);
+        width = size[0];
+        height = size[1];
+        session = new StreamSession.Builder(BenchmarkSupport.createSink(sink, server))
+                .setSize(width, height)
+                .build();
+        session.open();
+        source = new SyntheticFrameSource(width, height);
+        source.open();
+        colorConverter = "parallel".equals(converter)
+                ? new ParallelColorConverter(width, height)
+                : new XugglerColorConverter();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public long stream() throws InterruptedException, ExecutionException {
+        FramePool pool = new FramePool(width, height);
+        try {
+            StreamPipeline pipeline = new StreamPipeline.Builder()
+                    .setFrameRate(IRational.make(1000000, 1))
+                    .setPacingPolicy(PacingPolicy.CATCH_UP)
+                    .setMaxFrames(FRAMES)
+                    .setFramePool(pool)
+                    .source("capture", new CaptureStage(source))
+                    .stage("convert", new ConvertStage(colorConverter), 4, DropPolicy.BLOCK)
+                    .stage("encode", new EncodeStage(session), 4, DropPolicy.BLOCK)
+                    .stage("mux", new MuxStage(session), 16, DropPolicy.BLOCK)
+                    .build();
+            pipeline.start();
+            pipeline.awaitTermination();
+            return pipeline.getProducedFrames();
+        } finally {
+            pool.close();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        colorConverter.close();
+        source.close();
+        session.close();
+        if (server[0] != null) {
+            server[0].stop();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import com.xuggle.xuggler.IPacket;
+import com.xuggle.xuggler.IStreamCoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing pre-encoded packets to each kind of {@link OutputSink}. A few seconds of encoded video
+ * are replayed in a loop with their time stamps shifted forward.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MuxBenchmark {
+
+    @Param({"memory", "file", "loopback"})
+    public String sink;
+
+    private final LoopbackRtmpServer[] server = new LoopbackRtmpServer[1];
+
+    private OutputSink outputSink;
+
+    private StreamSession encoder;
+
+    private IPacket[] packets;
+
+    private long[] pts;
+
+    private long[] dts;
+
+    private long span;
+
+    private int next;
+
+    private long loop;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<IPacket> encoded = BenchmarkSupport.encodePackets(640, 480, 96);
+        packets = encoded.toArray(new IPacket[encoded.size()]);
+        pts = new long[packets.length];
+        dts = new long[packets.length];
+        for (int i = 0; i < packets.length; i++) {
+            pts[i] = packets[i].getPts();
+            dts[i] = packets[i].getDts();
+        }
+        span = dts[dts.length - 1] - dts[0] + (dts[1] - dts[0]);
+
+        // the sink needs an opened coder to describe the stream
+        encoder = new StreamSession.Builder(new MemorySink()).setSize(640, 480).build();
+        encoder.open();
+        outputSink = BenchmarkSupport.createSink(sink, server);
+        IStreamCoder coder = encoder.getCoder();
+        outputSink.open(coder);
+    }
+
+    @Benchmark
+    public IPacket write() throws IOException {
+        IPacket packet = packets[next];
+        packet.setPts(pts[next] + loop * span);
+        packet.setDts(dts[next] + loop * span);
+        outputSink.write(packet);
+        if (++next == packets.length) {
+            next = 0;
+            loop++;
+        }
+        return packet;
+    }
+
+    @TearDown
+    public void tearDown() {
+        outputSink.close();
+        encoder.close();
+        for (IPacket packet : packets) {
+            packet.delete();
+        }
+        if (server[0] != null) {
+            server[0].stop();
+        }
+    }
+}
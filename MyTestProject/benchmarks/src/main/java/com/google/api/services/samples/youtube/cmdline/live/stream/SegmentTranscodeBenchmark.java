@@ -0,0 +1,75 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transcoding of {@code resources/sample-video.mp4} into memory in one-second segments. With
+ * enough segments the time should fall close to linearly with the number of workers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SegmentTranscodeBenchmark {
+
+    @Param({"1", "2", "4"})
+    public int workers;
+
+    private File input;
+
+    @Setup
+    public void setUp() throws IOException {
+        input = File.createTempFile("benchmark", ".mp4");
+        input.deleteOnExit();
+        InputStream in = SegmentTranscodeBenchmark.class.getResourceAsStream("/resources/sample-video.mp4");
+        if (in == null) {
+            throw new IOException("Missing /resources/sample-video.mp4");
+        }
+        OutputStream out = new FileOutputStream(input);
+        try {
+            byte[] buffer = new byte[65536];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            out.close();
+            in.close();
+        }
+    }
+
+    @Benchmark
+    public long transcode() throws IOException {
+        SegmentTranscoder transcoder = new SegmentTranscoder.Builder(input.getAbsolutePath(), new MemorySink())
+                .setWorkers(workers)
+                .setSegmentDuration(1)
+                .build();
+        transcoder.transcode();
+        return transcoder.getFrames();
+    }
+
+    @TearDown
+    public void tearDown() {
+        input.delete();
+    }
+}
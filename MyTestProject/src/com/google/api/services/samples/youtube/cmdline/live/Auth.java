@@ -1,22 +1,11 @@
 package com.google.api.services.samples.youtube.cmdline.live;
 
 import com.google.api.client.auth.oauth2.Credential;
-import com.google.api.client.auth.oauth2.StoredCredential;
-import com.google.api.client.extensions.java6.auth.oauth2.AuthorizationCodeInstalledApp;
-import com.google.api.client.extensions.jetty.auth.oauth2.LocalServerReceiver;
-import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
-import com.google.api.client.googleapis.auth.oauth2.GoogleClientSecrets;
 import com.google.api.client.http.HttpTransport;
 import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.jackson2.JacksonFactory;
-import com.google.api.client.util.store.DataStore;
-import com.google.api.client.util.store.FileDataStoreFactory;
 
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.util.List;
 
 /**
@@ -35,51 +24,14 @@ public class Auth {
     public static final JsonFactory JSON_FACTORY = new JacksonFactory();
 
     /**
-     * This is the directory that will be used under the user's home directory where OAuth tokens will be stored.
-     */
-    private static final String CREDENTIALS_DIRECTORY = ".oauth-credentials";
-
-    /**
-     * Authorizes the installed application to access user's protected data.
+     * Authorizes the installed application to access user's protected data. Credentials are cached
+     * and kept fresh by {@link CredentialManager#getDefault()}, so repeated calls are cheap.
      *
      * @param scopes              list of scopes needed to run youtube upload.
      * @param credentialDatastore name of the credential datastore to cache OAuth tokens
      * @throws Exception 
      */
     public static Credential authorize(List<String> scopes, String credentialDatastore) throws Exception {
-
-    	System.out.println("" + Auth.class.getClass().getResourceAsStream("/resources/client_secrets.json"));
-        // Load client secrets.
-        // Load client secrets.
-        Reader clientSecretReader = new InputStreamReader(Auth.class.getClass().getResourceAsStream("/resources/client_secrets.json"));
-        GoogleClientSecrets clientSecrets = GoogleClientSecrets.load(JSON_FACTORY, clientSecretReader);
-        
-        // Checks that the defaults have been replaced (Default = "Enter X here").
-        if (clientSecrets.getDetails().getClientId().startsWith("Enter")
-                || clientSecrets.getDetails().getClientSecret().startsWith("Enter ")) {
-            System.out.println(
-                    "Enter Client ID and Secret from https://code.google.com/apis/console/?api=youtube"
-                            + "into src/main/resources/client_secrets.json");
-            System.exit(1);
-        }
-
-        // This creates the credentials datastore at ~/.oauth-credentials/${credentialDatastore}
-        FileDataStoreFactory fileDataStoreFactory = new FileDataStoreFactory(new File(System.getProperty("user.home") + "/" + CREDENTIALS_DIRECTORY));
-        DataStore<StoredCredential> datastore = fileDataStoreFactory.getDataStore(credentialDatastore);
-
-//        GoogleAuthorizationCodeFlow flow = new GoogleAuthorizationCodeFlow.Builder(
-//        		HTTP_TRANSPORT, JSON_FACTORY, clientSecrets, scopes)
-//                .setAccessType("offline")
-//                .setApprovalPrompt("force").build();
-        
-        GoogleAuthorizationCodeFlow flow =  (GoogleAuthorizationCodeFlow) new GoogleAuthorizationCodeFlow.Builder(
-                HTTP_TRANSPORT, JSON_FACTORY, clientSecrets, scopes).setCredentialDataStore(datastore)
-                .build();
-
-        // Build the local server and bind it to port 8080
-        LocalServerReceiver localReceiver = new LocalServerReceiver.Builder().setPort(8080).build();
-
-        // Authorize.
-        return new AuthorizationCodeInstalledApp(flow, localReceiver).authorize("user");
+        return CredentialManager.getDefault().authorize(scopes, credentialDatastore);
     }
-}
\ No newline at end of file
+}
@@ -20,37 +20,62 @@ import com.google.api.client.auth.oauth2.Credential;
 import com.google.api.client.googleapis.json.GoogleJsonResponseException;
 import com.google.api.client.util.DateTime;
 import com.google.api.services.samples.youtube.cmdline.live.Auth;
+import com.google.api.services.samples.youtube.cmdline.live.stream.AdaptiveController;
+import com.google.api.services.samples.youtube.cmdline.live.stream.CaptureStage;
+import com.google.api.services.samples.youtube.cmdline.live.stream.ColorConverter;
+import com.google.api.services.samples.youtube.cmdline.live.stream.ContainerSink;
+import com.google.api.services.samples.youtube.cmdline.live.stream.ConvertStage;
+import com.google.api.services.samples.youtube.cmdline.live.stream.DropPolicy;
+import com.google.api.services.samples.youtube.cmdline.live.stream.EncodeStage;
+import com.google.api.services.samples.youtube.cmdline.live.stream.EncodingProfile;
+import com.google.api.services.samples.youtube.cmdline.live.stream.FanOutSink;
+import com.google.api.services.samples.youtube.cmdline.live.stream.FileFrameSource;
+import com.google.api.services.samples.youtube.cmdline.live.stream.FileRemuxer;
+import com.google.api.services.samples.youtube.cmdline.live.stream.FramePool;
+import com.google.api.services.samples.youtube.cmdline.live.stream.FrameSource;
+import com.google.api.services.samples.youtube.cmdline.live.stream.MuxStage;
+import com.google.api.services.samples.youtube.cmdline.live.stream.NativeResources;
+import com.google.api.services.samples.youtube.cmdline.live.stream.OutputSink;
+import com.google.api.services.samples.youtube.cmdline.live.stream.PacketRingBuffer;
+import com.google.api.services.samples.youtube.cmdline.live.stream.ParallelColorConverter;
+import com.google.api.services.samples.youtube.cmdline.live.stream.RenditionLadder;
+import com.google.api.services.samples.youtube.cmdline.live.stream.RobotFrameSource;
+import com.google.api.services.samples.youtube.cmdline.live.stream.SegmentTranscoder;
+import com.google.api.services.samples.youtube.cmdline.live.stream.StreamPipeline;
+import com.google.api.services.samples.youtube.cmdline.live.stream.StreamMetrics;
+import com.google.api.services.samples.youtube.cmdline.live.stream.StreamSession;
+import com.google.api.services.samples.youtube.cmdline.live.stream.TileChangeDetector;
+import com.google.api.services.samples.youtube.cmdline.live.stream.WatermarkOverlay;
+import com.google.api.services.samples.youtube.cmdline.live.stream.XugglerColorConverter;
 import com.google.api.services.youtube.YouTube;
 import com.google.api.services.youtube.model.*;
 import com.google.common.collect.Lists;
-import com.xuggle.xuggler.Configuration;
-import com.xuggle.xuggler.ICodec;
-import com.xuggle.xuggler.IContainer;
-import com.xuggle.xuggler.IContainerFormat;
-import com.xuggle.xuggler.IPacket;
-import com.xuggle.xuggler.IPixelFormat;
 import com.xuggle.xuggler.IRational;
-import com.xuggle.xuggler.IStream;
-import com.xuggle.xuggler.IStreamCoder;
-import com.xuggle.xuggler.IVideoPicture;
-import com.xuggle.xuggler.video.ConverterFactory;
-import com.xuggle.xuggler.video.IConverter;
 
-import java.awt.AWTException;
 import java.awt.Dimension;
 import java.awt.Rectangle;
-import java.awt.Robot;
-import java.awt.image.BufferedImage;
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.ObjectOutputStream;
 import java.io.OutputStreamWriter;
+import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Use the YouTube Live Streaming API to insert a broadcast and a stream
@@ -69,25 +94,152 @@ public class CreateBroadcast {
 
     /**
      * Create and insert a liveBroadcast resource.
+     *
+     * <p>The encoder is opened and warmed up on a background thread from launch, and the capture
+     * pipeline starts encoding while the broadcast and stream are still being provisioned. Once the
+     * ingestion address is known the session connects and starts from the last buffered keyframe.
+     * -Dstream.config=&lt;file.properties&gt; supplies the settings read from system properties,
+     * including {@code broadcast.title} and {@code stream.title}, so nothing has to be typed in.</p>
      */
     public static void main(String[] args) {
+        long launchMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
 
         // This OAuth 2.0 access scope allows for full read/write access to the
         // authenticated user's account.
         List<String> scopes = Lists.newArrayList("https://www.googleapis.com/auth/youtube");
 
+        ExecutorService startup = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "startup");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        LiveProvisioner provisioner = null;
+        StreamSession session = null;
+        PacketRingBuffer replayBuffer = null;
+        FrameSource source = null;
+        FileRemuxer remuxer = null;
+        Future<Long> warmUp = null;
+        FramePool framePool = null;
+        ColorConverter converter = null;
+        StreamMetrics metrics = null;
+        StreamPipeline pipeline = null;
+        AdaptiveController controller = null;
+        StreamHealthMonitor monitor = null;
         try {
-            // Authorize the request.
-            Credential credential = Auth.authorize(scopes, "createbroadcast");
+            loadConfig(System.getProperty("stream.config"));
+            NativeResources.register();
+
+            int framesToEncode = framesToEncode();
+            int x = 0;
+            int y = 0;
+            int height = 480;
+            int width = 640;
+            IRational frameRate = IRational.make(24, 1);
+            String format = System.getProperty("stream.format", "240p");
+            // -Dstream.ladder=240p,360p,480p encodes one capture into several renditions, each sent
+            // to its own stream and broadcast.
+            String renditions = System.getProperty("stream.ladder");
+
+            // Encode at the CDN format of the stream, shaped like the captured area; the adaptive
+            // controller may step down the ladder below it when the CPU or uplink falls behind.
+            List<EncodingProfile> ladder = new ArrayList<EncodingProfile>();
+            for (EncodingProfile profile : EncodingProfile.ladder(format)) {
+                ladder.add(profile.withAspectOf(width, height));
+            }
+            EncodingProfile target = ladder.get(ladder.size() - 1);
 
-            // This object is used to make YouTube Data API requests.
-            youtube = new YouTube.Builder(Auth.HTTP_TRANSPORT, Auth.JSON_FACTORY, credential)
-                    .setApplicationName("MyTestProject").build();
+            // -Dstream.file=<video file> streams a file instead of the screen. H.264 video is sent
+            // as it is; anything else is decoded and encoded again like a capture, or with
+            // -Dstream.transcodeFirst=true transcoded on every core before going live and then
+            // sent as it is.
+            String inputFile = System.getProperty("stream.file");
+            if (inputFile != null && renditions == null) {
+                remuxer = new FileRemuxer(inputFile);
+                remuxer.open();
+                if (!remuxer.canStreamCopy()) {
+                    System.out.println("[REMUX] transcoding " + inputFile + ": " + remuxer.getIncompatibility());
+                    EncodingProfile fileTarget = target.withAspectOf(remuxer.getWidth(), remuxer.getHeight());
+                    remuxer.close();
+                    remuxer = null;
+                    if (Boolean.getBoolean("stream.transcodeFirst")) {
+                        File transcoded = File.createTempFile("transcoded", ".flv");
+                        transcoded.deleteOnExit();
+                        SegmentTranscoder transcoder = new SegmentTranscoder.Builder(inputFile,
+                                ContainerSink.file(transcoded.getPath()))
+                                .setSize(fileTarget.getWidth(), fileTarget.getHeight())
+                                .setBitRate(fileTarget.getMaxBitRate())
+                                .build();
+                        transcoder.transcode();
+                        System.out.println(transcoder.summary());
+                        remuxer = new FileRemuxer(transcoded.getPath());
+                        remuxer.open();
+                    }
+                }
+            }
+            if (renditions == null && remuxer == null) {
+                // Keep the last 10 seconds of packets, twice over to leave room for the ring to wrap,
+                // so a dropped connection resumes from the last keyframe. Until the stream is
+                // provisioned it also holds what is encoded in the meantime.
+                int replaySeconds = 10;
+                replayBuffer = new PacketRingBuffer(target.getMaxBitRate() / 8 * replaySeconds * 2,
+                        (int) frameRate.getDouble() * replaySeconds * 2, replaySeconds * 1000000L);
+                session = new StreamSession.Builder()
+                        .setSize(target.getWidth(), target.getHeight())
+                        .setFrameRate(frameRate)
+                        .setBitRate(target.getDefaultBitRate())
+                        .setNumPicturesInGroupOfPictures(5)
+                        .setReplayBuffer(replayBuffer)
+                        .build();
+                source = newFrameSource(new Rectangle(x, y, width, height));
+
+                // Load the natives, open and warm up the encoder and open the capture source while
+                // authorization and provisioning run.
+                final StreamSession preparing = session;
+                final FrameSource opening = source;
+                warmUp = startup.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws IOException {
+                        preparing.prepare();
+                        opening.open();
+                        return System.currentTimeMillis();
+                    }
+                });
+            }
+
+            // -Dyoutube.rootUrl=http://127.0.0.1:8089/ talks to a LocalLiveApiServer instead,
+            // which needs no authorization.
+            String rootUrl = System.getProperty("youtube.rootUrl");
+            if (rootUrl != null) {
+                youtube = new YouTube.Builder(Auth.HTTP_TRANSPORT, Auth.JSON_FACTORY, null)
+                        .setRootUrl(rootUrl).setApplicationName("MyTestProject").build();
+            } else {
+                // Authorize the request.
+                Credential credential = Auth.authorize(scopes, "createbroadcast");
+
+                // This object is used to make YouTube Data API requests.
+                youtube = new YouTube.Builder(Auth.HTTP_TRANSPORT, Auth.JSON_FACTORY, credential)
+                        .setApplicationName("MyTestProject").build();
+            }
+            provisioner = new LiveProvisioner.Builder(youtube).build();
 
-            // Prompt the user to enter a title for the broadcast.
-            String title = getBroadcastTitle();
+            // Prompt the user to enter a title for the broadcast, unless the configuration has one.
+            String title = System.getProperty("broadcast.title");
+            if (title == null) {
+                title = getBroadcastTitle();
+            }
             System.out.println("You chose " + title + " for broadcast title.");
 
+            // Prompt the user to enter a title for the video stream. Both titles are asked for up
+            // front so the broadcast and the stream can be inserted at the same time.
+            String streamTitle = System.getProperty("stream.title");
+            if (streamTitle == null) {
+                streamTitle = getStreamTitle();
+            }
+            System.out.println("You chose " + streamTitle + " for stream title.");
+
             // Create a snippet with the title and scheduled start and end
             // times for the broadcast. Currently, those times are hard-coded.
             LiveBroadcastSnippet broadcastSnippet = new LiveBroadcastSnippet();
@@ -105,27 +257,8 @@ public class CreateBroadcast {
             broadcast.setSnippet(broadcastSnippet);
             broadcast.setStatus(status);
 
-            // Construct and execute the API request to insert the broadcast.
-            YouTube.LiveBroadcasts.Insert liveBroadcastInsert =
-                    youtube.liveBroadcasts().insert("snippet,status", broadcast);
-            LiveBroadcast returnedBroadcast = liveBroadcastInsert.execute();
-
-            // Print information from the API response.
-            System.out.println("\n================== Returned Broadcast ==================\n");
-            System.out.println("  - Id: " + returnedBroadcast.getId());
-            System.out.println("  - Title: " + returnedBroadcast.getSnippet().getTitle());
-            System.out.println("  - Description: " + returnedBroadcast.getSnippet().getDescription());
-            System.out.println("  - Published At: " + returnedBroadcast.getSnippet().getPublishedAt());
-            System.out.println(
-                    "  - Scheduled Start Time: " + returnedBroadcast.getSnippet().getScheduledStartTime());
-            System.out.println(
-                    "  - Scheduled End Time: " + returnedBroadcast.getSnippet().getScheduledEndTime());
-
-            // Prompt the user to enter a title for the video stream.
-            title = getStreamTitle();
-            System.out.println("You chose " + title + " for stream title.");
-
             // Create a snippet with the video stream's title.
+            title = streamTitle;
             LiveStreamSnippet streamSnippet = new LiveStreamSnippet();
             streamSnippet.setTitle(title);
 
@@ -134,7 +267,7 @@ public class CreateBroadcast {
             // ingestion type. See:
             // https://developers.google.com/youtube/v3/live/docs/liveStreams#cdn
             CdnSettings cdnSettings =  new CdnSettings();
-            cdnSettings.setFormat("240p");
+            cdnSettings.setFormat(format);
             cdnSettings.setIngestionType("rtmp");
 
             Video video = new Video();
@@ -146,36 +279,68 @@ public class CreateBroadcast {
             stream.setSnippet(streamSnippet);
             stream.setCdn(cdnSettings);
 
-            // Construct and execute the API request to insert the stream.
-            YouTube.LiveStreams.Insert liveStreamInsert =
-                    youtube.liveStreams().insert("snippet,cdn", stream);
-            liveStreamInsert.set("video", "/resources/vid_bigbuckbunny.mov");
-            LiveStream returnedStream = liveStreamInsert.execute();
+            if (renditions != null) {
+                LiveProvisioner.Provisioned provisioned = provisioner.provision(broadcast, stream);
+                printProvisioned(provisioned, provisioner);
+                streamLadder(provisioner, title, format, provisioned.getStream(), renditions.split(","));
+                return;
+            }
+
+            // Insert the broadcast and the stream concurrently and bind them once both exist,
+            // while the capture pipeline fills up behind the warmed-up encoder.
+            final LiveProvisioner provisioning = provisioner;
+            final LiveBroadcast newBroadcast = broadcast;
+            final LiveStream newStream = stream;
+            Future<LiveProvisioner.Provisioned> provisioned = startup.submit(
+                    new Callable<LiveProvisioner.Provisioned>() {
+                        @Override
+                        public LiveProvisioner.Provisioned call() throws IOException {
+                            return provisioning.provision(newBroadcast, newStream);
+                        }
+                    });
+
+            long encoderReadyMillis = 0;
+            if (session != null) {
+                encoderReadyMillis = await(warmUp);
+                framePool = new FramePool(source.getWidth(), source.getHeight());
+                // -Dstream.xugglerConverter=true selects Xuggler's native colour conversion.
+                converter = Boolean.getBoolean("stream.xugglerConverter")
+                        ? new XugglerColorConverter()
+                        : new ParallelColorConverter(source.getWidth(), source.getHeight());
+                TileChangeDetector detector = newChangeDetector(source, converter);
+                WatermarkOverlay watermark = newWatermark(source);
+                // Per-stage timings are published over JMX and summarised every 5 seconds.
+                metrics = new StreamMetrics(streamTitle);
+                metrics.register();
+                metrics.startReporting(5, TimeUnit.SECONDS);
+                StreamPipeline.Builder pipelineBuilder = new StreamPipeline.Builder()
+                        .setFrameRate(frameRate)
+                        .setTimeBase(session.getCoder().getTimeBase())
+                        .setMaxFrames(framesToEncode)
+                        .setFramePool(framePool)
+                        .setMetrics(metrics)
+                        .source("capture", new CaptureStage(source, metrics))
+                        .stage("convert", new ConvertStage(converter, detector, metrics), 4, DropPolicy.DROP_OLDEST);
+                if (watermark != null) {
+                    pipelineBuilder.stage("watermark", watermark, 4, DropPolicy.DROP_OLDEST);
+                }
+                pipeline = pipelineBuilder
+                        .stage("encode", new EncodeStage(session, metrics), 4, DropPolicy.DROP_OLDEST)
+                        .stage("mux", new MuxStage(session, metrics), 16, DropPolicy.BLOCK)
+                        .build();
+                controller = new AdaptiveController.Builder(session, metrics, ladder)
+                        .setPipeline(pipeline)
+                        .setFrameRateRange(10, frameRate.getDouble())
+                        .build();
+                pipeline.start();
+            }
+
+            LiveProvisioner.Provisioned result = await(provisioned);
+            long provisionedMillis = System.currentTimeMillis();
+            printProvisioned(result, provisioner);
+            LiveStream returnedStream = result.getStream();
             returnedStream.set("video", "/resources/vid_bigbuckbunny.mov");
-            
-            // Print information from the API response.
-            System.out.println("\n================== Returned Stream ==================\n");
-            System.out.println("  - Id: " + returnedStream.getId());
-            System.out.println("  - Title: " + returnedStream.getSnippet().getTitle());
-            System.out.println("  - Description: " + returnedStream.getSnippet().getDescription());
-            System.out.println("  - Published At: " + returnedStream.getSnippet().getPublishedAt());
-            System.out.println("  - Ingestion Address: " + returnedStream.getCdn().getIngestionInfo().getIngestionAddress());
-            
-            
-            // Construct and execute a request to bind the new broadcast
-            // and stream.
-            YouTube.LiveBroadcasts.Bind liveBroadcastBind =
-                    youtube.liveBroadcasts().bind(returnedBroadcast.getId(), "id,contentDetails");
-            liveBroadcastBind.setStreamId(returnedStream.getId());
-            returnedBroadcast = liveBroadcastBind.execute();
-
-            // Print information from the API response.
-            System.out.println("\n================== Returned Bound Broadcast ==================\n");
-            System.out.println("  - Broadcast Id: " + returnedBroadcast.getId());
-            System.out.println(
-                    "  - Bound Stream Id: " + returnedBroadcast.getContentDetails().getBoundStreamId());
-            
-            
+
             //call to upload code
 //            String url =  returnedStream.getCdn().getIngestionInfo().getIngestionAddress(); 
 //            String fileName = returnedStream.getCdn().getIngestionInfo().getStreamName() ;
@@ -261,111 +426,79 @@ public class CreateBroadcast {
             
             //*****************//
             String url = returnedStream.getCdn().getIngestionInfo().getIngestionAddress();
+            String backupUrl = returnedStream.getCdn().getIngestionInfo().getBackupIngestionAddress();
             String fileName = returnedStream.getCdn().getIngestionInfo().getStreamName();
-            ArrayList<IPacket> arrayList = new ArrayList<IPacket>();
-            arrayList = callMyDataPacket(url, fileName);
-            
-            int framesToEncode = 280;
-            int x = 0;
-            int y = 0;
-            int height = 480;
-            int width = 640;
-            
-            int l = 0;
-            while (l <= 100) {
-            
-            IContainer container = IContainer.make();
-            IContainerFormat containerFormat_live = IContainerFormat.make();
-            containerFormat_live.setOutputFormat("flv", url + "/" + fileName, null);
-            container.setInputBufferLength(0);
-            int retVal = container.open(url + "/" + fileName, IContainer.Type.WRITE, containerFormat_live);
-            if (retVal < 0) {
-                System.err.println("Could not open output container for live stream");
-                System.exit(1);
-            }
-            IStream stream1 = container.addNewStream(0);
-            IStreamCoder coder = stream1.getStreamCoder();
-            ICodec codec = ICodec.findEncodingCodec(ICodec.ID.CODEC_ID_H264);
-            coder.setNumPicturesInGroupOfPictures(5);
-            coder.setCodec(codec);
-            coder.setBitRate(200000);
-            coder.setPixelType(IPixelFormat.Type.YUV420P);
-            coder.setHeight(height);
-            coder.setWidth(width);
-            System.out.println("[ENCODER] video size is " + width + "x" + height);
-            coder.setFlag(IStreamCoder.Flags.FLAG_QSCALE, true);
-            coder.setGlobalQuality(0);
-            IRational frameRate = IRational.make(24, 1);
-            coder.setFrameRate(frameRate);
-            coder.setTimeBase(IRational.make(frameRate.getDenominator(), frameRate.getNumerator()));
-            Properties props = new Properties();
-//            props.setProperty("x264opts", "bitrate=10500:qpmin=7:min-keyint=5:keyint=15:cabac=1:pass=1:stats=/home/surfdogisHappyDog/Downloads/my888file.stats:no-mbtree=1");
-//            props.setProperty("tune", "film");
-//            props.setProperty("preset", "slow");
-            InputStream is = CreateBroadcast.class.getClass().getResourceAsStream("/resources/libx264-normal.ffpreset");
-            try {
-                props.load(is);
-            } catch (IOException e) {
-                System.err.println("You need the libx264-normal.ffpreset file from the Xuggle distribution in your classpath.");
-                System.exit(1);
-            }
-            Configuration.configure(props, coder);
-            coder.open();
-            int retvall = container.writeHeader();
-            if (retvall < 0)
-                throw new RuntimeException("Could not write header for: .................." );
-            long firstTimeStamp = System.currentTimeMillis();
-            long lastTimeStamp = -1;
-            int i = 0;
-//            IPacket packet = null;
-            try {
-                Robot robot = new Robot();
-//                while (i < framesToEncode) {
-                    //long iterationStartTime = System.currentTimeMillis();
-                    long now = System.currentTimeMillis();
-                    //grab the screenshot
-                    BufferedImage image = robot.createScreenCapture(new Rectangle(x, y, width, height));
-                    //convert it for Xuggler
-                    BufferedImage currentScreenshot = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
-                    currentScreenshot.getGraphics().drawImage(image, 0, 0, null);
-                    //start the encoding process
-                    IPacket packet = IPacket.make();
-                    IConverter converter = ConverterFactory.createConverter(currentScreenshot, IPixelFormat.Type.YUV420P);
-                    long timeStamp = (now - firstTimeStamp) * 1000; 
-                    IVideoPicture outFrame = converter.toPicture(currentScreenshot, timeStamp);
-                    if (i == 0) {
-                        //make first frame keyframe
-                        outFrame.setKeyFrame(true);
-                    }
-                    outFrame.setQuality(0);
-                    coder.encodeVideo(packet, outFrame, 0);
-                    outFrame.delete();
-                    if (arrayList.get(2).isComplete()) {
-                    	packet.setStreamIndex(0);
-                        container.writePacket(arrayList.get(2));
-                        System.out.println("[ENCODER Packet Completed] writing packet of size " + arrayList.get(2).getSize() + " for elapsed time " + ((timeStamp - lastTimeStamp) / 1000));
-                        lastTimeStamp = timeStamp;
-                    }
-                    System.out.println("[ENCODER] encoded image " + i + " in " + (System.currentTimeMillis() - now));
-                    i++;
-//                    try {
-//                        Thread.sleep(Math.max((long) (1000 / frameRate.getDouble()) - (System.currentTimeMillis() - now), 0));
-////                    	Thread.sleep(500);
-//                    } catch (InterruptedException e) {
-//                        e.printStackTrace();
-//                    }
-//                }
-            } catch (AWTException e) {
-                e.printStackTrace();
-            }
-            int retval = container.writeTrailer();
-            if (retval < 0)
-                throw new RuntimeException("Could not write trailer to output file");
-            coder.close();
-            container.close();
+
+            // Stream every frame through the one encoder into the ingestion container.
+            // -Dstream.output=<file.flv|file.mp4> writes to a local file instead of the ingestion address.
+            // Otherwise the encoded stream is sent to the primary and, if there is one, the backup
+            // ingestion address, each on its own connection.
+            String output = System.getProperty("stream.output");
+            FanOutSink fanOut = null;
+            OutputSink sink;
+            if (output != null) {
+                sink = ContainerSink.file(output);
+            } else if (backupUrl != null) {
+                fanOut = new FanOutSink((int) frameRate.getDouble() * 2)
+                        .add(ContainerSink.rtmp(url + "/" + fileName))
+                        .add(ContainerSink.rtmp(backupUrl + "/" + fileName));
+                sink = fanOut;
+            } else {
+                sink = ContainerSink.rtmp(url + "/" + fileName);
+            }
+            if (remuxer != null) {
+                // Copy the file's H.264 packets into the sink as they are, in real time.
+                remuxer.run(sink);
+                System.out.println(remuxer.summary());
+                if (fanOut != null) {
+                    System.out.print(fanOut.summary());
+                }
+            } else {
+                if (fanOut != null) {
+                    final StreamSession keyFrameSource = session;
+                    fanOut.setKeyFrameRequester(new Runnable() {
+                        @Override
+                        public void run() {
+                            keyFrameSource.requestKeyFrame();
+                        }
+                    });
+                }
+                // The writing thread opens the sink with the next packet and starts it from the last
+                // keyframe encoded while provisioning.
+                session.setSink(sink);
+                session.connectAsync();
+                controller.start();
+                // The stream's health is polled while it is live and fed back into the encoder;
+                // -Dstream.healthMonitor=false turns this off.
+                if (!"false".equals(System.getProperty("stream.healthMonitor"))) {
+                    final StreamPipeline running = pipeline;
+                    monitor = new StreamHealthMonitor.Builder(youtube, result.getBroadcast().getId(),
+                            returnedStream.getId())
+                            .setSession(session)
+                            .setController(controller)
+                            .setOnBroadcastEnded(new Runnable() {
+                                @Override
+                                public void run() {
+                                    running.stop();
+                                }
+                            })
+                            .build();
+                    monitor.start();
+                }
+                pipeline.awaitTermination();
+                System.out.println(metrics.summary());
+                if (monitor != null) {
+                    System.out.println(monitor.summary());
+                }
+                if (fanOut != null) {
+                    System.out.print(fanOut.summary());
+                }
+                System.out.println("[PIPELINE] dropped " + pipeline.getDroppedFrames() + " of "
+                        + pipeline.getProducedFrames() + " frames, reconnected "
+                        + session.getReconnects() + " times");
+                printStartup(launchMillis, encoderReadyMillis, provisionedMillis, session.getFirstPacketNanos());
+            }
             //*****************//
-    		l++;
-    		}
             System.out.println("Stream Name : " + fileName);
             
         } catch (GoogleJsonResponseException e) {
@@ -379,99 +512,353 @@ public class CreateBroadcast {
         } catch (Throwable t) {
             System.err.println("Throwable: " + t.getMessage());
             t.printStackTrace();
+        } finally {
+            if (monitor != null) {
+                monitor.stop();
+            }
+            if (controller != null) {
+                controller.stop();
+            }
+            if (pipeline != null) {
+                // let the stages finish with the session before it is closed
+                pipeline.stop();
+                try {
+                    pipeline.awaitTermination();
+                } catch (Exception e) {
+                    // already reported
+                }
+            }
+            if (metrics != null) {
+                metrics.close();
+            }
+            if (warmUp != null) {
+                // the session and source are still being opened if startup failed early
+                try {
+                    warmUp.get();
+                } catch (Exception e) {
+                    // already reported, or irrelevant now
+                }
+            }
+            if (source != null) {
+                source.close();
+            }
+            if (remuxer != null) {
+                remuxer.close();
+            }
+            if (converter != null) {
+                converter.close();
+            }
+            if (session != null) {
+                session.close();
+            }
+            if (replayBuffer != null) {
+                replayBuffer.close();
+            }
+            if (framePool != null) {
+                framePool.close();
+            }
+            if (provisioner != null) {
+                provisioner.close();
+            }
+            startup.shutdownNow();
+            String leaks = NativeResources.leakReport();
+            if (leaks != null) {
+                System.err.println(leaks);
+            }
         }
         
         
     }
 
-    private static ArrayList<IPacket> callMyDataPacket(String url, String fileName) throws AWTException {
-		// TODO Auto-generated method stub
-    	ArrayList<IPacket> arrayList = new ArrayList<IPacket>();
-        IContainer container = IContainer.make();
-        IContainerFormat containerFormat_live = IContainerFormat.make();
-        containerFormat_live.setOutputFormat("flv", url + "/" + fileName, null);
-        container.setInputBufferLength(0);
-        int retVal = container.open(url + "/" + fileName, IContainer.Type.WRITE, containerFormat_live);
-        if (retVal < 0) {
-            System.err.println("Could not open output container for live stream");
-            System.exit(1);
+    /**
+     * Copies the settings in a properties file to the system properties not already set, so
+     * options given with -D on the command line take precedence.
+     */
+    private static void loadConfig(String path) throws IOException {
+        if (path == null) {
+            return;
         }
-        IStream stream1 = container.addNewStream(0);
-        IStreamCoder coder = stream1.getStreamCoder();
-        ICodec codec = ICodec.findEncodingCodec(ICodec.ID.CODEC_ID_H264);
-        coder.setNumPicturesInGroupOfPictures(5);
-        coder.setCodec(codec);
-        coder.setBitRate(200000);
-        coder.setPixelType(IPixelFormat.Type.YUV420P);
-        coder.setHeight(480);
-        coder.setWidth(640);
-        System.out.println("[ENCODER] video size is " + 640 + "x" + 480);
-        coder.setFlag(IStreamCoder.Flags.FLAG_QSCALE, true);
-        coder.setGlobalQuality(0);
-        IRational frameRate = IRational.make(24, 1);
-        coder.setFrameRate(frameRate);
-        coder.setTimeBase(IRational.make(frameRate.getDenominator(), frameRate.getNumerator()));
-        Properties props = new Properties();
-//        props.setProperty("x264opts", "bitrate=10500:qpmin=7:min-keyint=5:keyint=15:cabac=1:pass=1:stats=/home/surfdogisHappyDog/Downloads/my888file.stats:no-mbtree=1");
-//        props.setProperty("tune", "film");
-//        props.setProperty("preset", "slow");
-        InputStream is = CreateBroadcast.class.getClass().getResourceAsStream("/resources/libx264-normal.ffpreset");
+        Properties config = new Properties();
+        InputStream in = new FileInputStream(path);
         try {
-            props.load(is);
-        } catch (IOException e) {
-            System.err.println("You need the libx264-normal.ffpreset file from the Xuggle distribution in your classpath.");
-            System.exit(1);
+            config.load(in);
+        } finally {
+            in.close();
         }
-        Configuration.configure(props, coder);
-        coder.open();
-        int retvall = container.writeHeader();
-        if (retvall < 0)
-            throw new RuntimeException("Could not write header for: .................." );
-        long firstTimeStamp = System.currentTimeMillis();
-        long lastTimeStamp = -1;
-        int i = 0;
-    	Robot robot = new Robot();
-      while (i < 60) {
-        //long iterationStartTime = System.currentTimeMillis();
-        long now = System.currentTimeMillis();
-        //grab the screenshot
-        BufferedImage image = robot.createScreenCapture(new Rectangle(0, 0, 640, 480));
-        //convert it for Xuggler
-        BufferedImage currentScreenshot = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
-        currentScreenshot.getGraphics().drawImage(image, 0, 0, null);
-        //start the encoding process
-        IPacket packet = IPacket.make();
-        IConverter converter = ConverterFactory.createConverter(currentScreenshot, IPixelFormat.Type.YUV420P);
-        long timeStamp = (now - firstTimeStamp) * 1000; 
-        IVideoPicture outFrame = converter.toPicture(currentScreenshot, timeStamp);
-        if (i == 0) {
-            //make first frame keyframe
-            outFrame.setKeyFrame(true);
+        for (String name : config.stringPropertyNames()) {
+            if (System.getProperty(name) == null) {
+                System.setProperty(name, config.getProperty(name));
+            }
+        }
+        System.out.println("[STARTUP] loaded " + config.size() + " settings from " + path);
+    }
+
+    /**
+     * Returns the result of a startup task, rethrowing what it failed with.
+     */
+    private static <T> T await(Future<T> task) throws Exception {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw (Exception) e.getCause();
+        }
+    }
+
+    /**
+     * Prints the broadcast, stream and bound broadcast returned by the API.
+     */
+    private static void printProvisioned(LiveProvisioner.Provisioned provisioned, LiveProvisioner provisioner) {
+        LiveBroadcast returnedBroadcast = provisioned.getBroadcast();
+        LiveStream returnedStream = provisioned.getStream();
+
+        // Print information from the API response.
+        System.out.println("\n================== Returned Broadcast ==================\n");
+        System.out.println("  - Id: " + returnedBroadcast.getId());
+        System.out.println("  - Title: " + returnedBroadcast.getSnippet().getTitle());
+        System.out.println("  - Description: " + returnedBroadcast.getSnippet().getDescription());
+        System.out.println("  - Published At: " + returnedBroadcast.getSnippet().getPublishedAt());
+        System.out.println(
+                "  - Scheduled Start Time: " + returnedBroadcast.getSnippet().getScheduledStartTime());
+        System.out.println(
+                "  - Scheduled End Time: " + returnedBroadcast.getSnippet().getScheduledEndTime());
+
+        // Print information from the API response.
+        System.out.println("\n================== Returned Stream ==================\n");
+        System.out.println("  - Id: " + returnedStream.getId());
+        System.out.println("  - Title: " + returnedStream.getSnippet().getTitle());
+        System.out.println("  - Description: " + returnedStream.getSnippet().getDescription());
+        System.out.println("  - Published At: " + returnedStream.getSnippet().getPublishedAt());
+        System.out.println("  - Ingestion Address: " + returnedStream.getCdn().getIngestionInfo().getIngestionAddress());
+
+        // Print information from the bind response.
+        returnedBroadcast = provisioned.getBoundBroadcast();
+        System.out.println("\n================== Returned Bound Broadcast ==================\n");
+        System.out.println("  - Broadcast Id: " + returnedBroadcast.getId());
+        System.out.println(
+                "  - Bound Stream Id: " + returnedBroadcast.getContentDetails().getBoundStreamId());
+        System.out.println("  - Provisioned in " + provisioned.getElapsedMillis() + " ms, "
+                + provisioner.getRetries() + " retries");
+    }
+
+    /**
+     * Reports how long after the JVM was launched the encoder was ready, the stream was
+     * provisioned and the first packet was written.
+     */
+    private static void printStartup(long launchMillis, long encoderReadyMillis, long provisionedMillis,
+            long firstPacketNanos) {
+        if (firstPacketNanos == 0) {
+            System.out.println("[STARTUP] no packet was written");
+            return;
         }
-        outFrame.setQuality(0);
-        coder.encodeVideo(packet, outFrame, 0);
-        outFrame.delete();
-        if (packet.isComplete()) {
-        	packet.setStreamIndex(0);
-            container.writePacket(packet);
-            System.out.println("[ENCODER Packet Completed] writing packet of size " + packet.getSize() + " for elapsed time " + ((timeStamp - lastTimeStamp) / 1000));
-            lastTimeStamp = timeStamp;
-            arrayList.add(packet);
+        long firstPacketMillis = System.currentTimeMillis()
+                - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - firstPacketNanos);
+        System.out.println("[STARTUP] encoder ready after " + (encoderReadyMillis - launchMillis)
+                + " ms, stream provisioned after " + (provisionedMillis - launchMillis)
+                + " ms, first packet written after " + (firstPacketMillis - launchMillis) + " ms");
+    }
+
+    /**
+     * Captures and converts each frame once and encodes it into one rendition per CDN format.
+     * The rendition matching {@code primaryFormat} goes to the stream created by {@link #main};
+     * every other one gets a broadcast and stream of its own, provisioned in one batch.
+     */
+    private static void streamLadder(LiveProvisioner provisioner, String title, String primaryFormat,
+            LiveStream primaryStream, String[] formats) throws Exception {
+        int framesToEncode = framesToEncode();
+        IRational frameRate = IRational.make(24, 1);
+
+        List<EncodingProfile> profiles = new ArrayList<EncodingProfile>();
+        EncodingProfile largest = null;
+        for (String format : formats) {
+            List<EncodingProfile> rungs = EncodingProfile.ladder(format.trim());
+            EncodingProfile profile = rungs.get(rungs.size() - 1);
+            profiles.add(profile);
+            if (largest == null || profile.getHeight() > largest.getHeight()) {
+                largest = profile;
+            }
+        }
+
+        List<LiveBroadcast> broadcasts = new ArrayList<LiveBroadcast>();
+        List<LiveStream> streams = new ArrayList<LiveStream>();
+        for (EncodingProfile profile : profiles) {
+            if (!profile.getName().equals(primaryFormat)) {
+                broadcasts.add(newRenditionBroadcast(title + " " + profile.getName()));
+                streams.add(newRenditionStream(title + " " + profile.getName(), profile.getName()));
+            }
         }
-        System.out.println("[ENCODER] encoded image " + i + " in " + (System.currentTimeMillis() - now));
-        i++;
+        Map<String, LiveStream> renditionStreams = new HashMap<String, LiveStream>();
+        renditionStreams.put(primaryFormat, primaryStream);
+        for (LiveProvisioner.Provisioned provisioned : provisioner.provisionAll(broadcasts, streams)) {
+            if (provisioned.getFailure() != null) {
+                throw provisioned.getFailure();
+            }
+            String format = provisioned.getStream().getCdn().getFormat();
+            renditionStreams.put(format, provisioned.getStream());
+            System.out.println("  - Rendition " + format + ": broadcast " + provisioned.getBroadcast().getId()
+                    + ", stream " + provisioned.getStream().getId());
+        }
+
+        // Capture at the size of the largest rendition so no rendition is upscaled.
+        FrameSource source = newFrameSource(new Rectangle(0, 0, largest.getWidth(), largest.getHeight()));
+        source.open();
+        FramePool framePool = new FramePool(source.getWidth(), source.getHeight());
+        ColorConverter converter = Boolean.getBoolean("stream.xugglerConverter")
+                ? new XugglerColorConverter()
+                : new ParallelColorConverter(source.getWidth(), source.getHeight());
+        TileChangeDetector detector = newChangeDetector(source, converter);
+        WatermarkOverlay watermark = newWatermark(source);
+        RenditionLadder ladder = new RenditionLadder(framePool);
+        List<StreamSession> sessions = new ArrayList<StreamSession>();
+        List<StreamMetrics> renditionMetrics = new ArrayList<StreamMetrics>();
+        StreamMetrics metrics = new StreamMetrics("ladder");
+        metrics.register();
+        metrics.startReporting(5, TimeUnit.SECONDS);
         try {
-            Thread.sleep(Math.max((long) (1000 / frameRate.getDouble()) - (System.currentTimeMillis() - now), 0));
-//        	Thread.sleep(500);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+            for (EncodingProfile profile : profiles) {
+                LiveStream stream = renditionStreams.get(profile.getName());
+                IngestionInfo ingestion = stream.getCdn().getIngestionInfo();
+                String output = System.getProperty("stream.output");
+                OutputSink sink = output != null
+                        ? ContainerSink.file(output.replaceFirst("(\\.[^.]*)?$", "-" + profile.getName() + "$1"))
+                        : ContainerSink.rtmp(ingestion.getIngestionAddress() + "/" + ingestion.getStreamName());
+                StreamSession session = new StreamSession.Builder(sink)
+                        .setSize(profile.getWidth(), profile.getHeight())
+                        .setFrameRate(frameRate)
+                        .setBitRate(profile.getDefaultBitRate())
+                        .setNumPicturesInGroupOfPictures(5)
+                        .build();
+                session.open();
+                sessions.add(session);
+                StreamMetrics sessionMetrics = new StreamMetrics(ingestion.getStreamName());
+                sessionMetrics.register();
+                renditionMetrics.add(sessionMetrics);
+                ladder.add(profile.getName(), session, 4, sessionMetrics);
+            }
+
+            StreamPipeline.Builder pipelineBuilder = new StreamPipeline.Builder()
+                    .setFrameRate(frameRate)
+                    .setTimeBase(sessions.get(0).getCoder().getTimeBase())
+                    .setMaxFrames(framesToEncode)
+                    .setFramePool(framePool)
+                    .setMetrics(metrics)
+                    .reserveFrames(ladder.getQueuedFrameCapacity())
+                    .source("capture", new CaptureStage(source, metrics))
+                    .stage("convert", new ConvertStage(converter, detector, metrics), 4, DropPolicy.DROP_OLDEST);
+            if (watermark != null) {
+                // blended once at capture size, before the renditions are scaled from it
+                pipelineBuilder.stage("watermark", watermark, 4, DropPolicy.DROP_OLDEST);
+            }
+            StreamPipeline pipeline = pipelineBuilder
+                    .stage("renditions", ladder, 4, DropPolicy.DROP_OLDEST)
+                    .build();
+            pipeline.start();
+            pipeline.awaitTermination();
+            ladder.awaitIdle(5, TimeUnit.SECONDS);
+            System.out.println(metrics.summary());
+            for (StreamMetrics sessionMetrics : renditionMetrics) {
+                System.out.println(sessionMetrics.summary());
+            }
+            System.out.print(ladder.summary());
+        } finally {
+            ladder.close();
+            for (StreamMetrics sessionMetrics : renditionMetrics) {
+                sessionMetrics.close();
+            }
+            metrics.close();
+            source.close();
+            converter.close();
+            for (StreamSession session : sessions) {
+                session.close();
+            }
+            framePool.close();
+        }
+    }
+
+    /**
+     * Returns a source capturing the given area of the screen, or decoding -Dstream.file scaled to
+     * its size.
+     */
+    private static FrameSource newFrameSource(Rectangle area) {
+        String inputFile = System.getProperty("stream.file");
+        if (inputFile != null) {
+            return new FileFrameSource(inputFile, area.width, area.height);
+        }
+        return new RobotFrameSource(area);
+    }
+
+    /**
+     * Returns the number of frames to stream, set by -Dstream.frames or {@code stream.frames} in the
+     * config file.
+     */
+    private static int framesToEncode() {
+        return Integer.getInteger("stream.frames", 280);
+    }
+
+    /**
+     * Returns a detector that lets the converter skip unchanged parts of the screen, or null if the
+     * converter cannot make use of one or -Dstream.changeDetection=false turned it off.
+     */
+    private static TileChangeDetector newChangeDetector(FrameSource source, ColorConverter converter) {
+        if (!(converter instanceof ParallelColorConverter)
+                || "false".equals(System.getProperty("stream.changeDetection"))) {
+            return null;
+        }
+        return new TileChangeDetector(source.getWidth(), source.getHeight());
+    }
+
+    /**
+     * Returns the watermark selected by -Dstream.watermark, or null. The property names an image on
+     * the class path, or is {@code true} for the one shipped with the samples;
+     * -Dstream.watermarkOpacity sets its opacity.
+     */
+    private static WatermarkOverlay newWatermark(FrameSource source) throws IOException {
+        String resource = System.getProperty("stream.watermark");
+        if (resource == null || "false".equals(resource)) {
+            return null;
+        }
+        if ("true".equals(resource)) {
+            resource = WatermarkOverlay.DEFAULT_RESOURCE;
         }
+        return new WatermarkOverlay.Builder(WatermarkOverlay.readImage(resource), source.getWidth(), source.getHeight())
+                .setOpacity(Float.parseFloat(System.getProperty("stream.watermarkOpacity", "0.6")))
+                .build();
+    }
+
+    /**
+     * Creates the broadcast for one rendition of a ladder, scheduled like the main broadcast.
+     */
+    private static LiveBroadcast newRenditionBroadcast(String title) {
+        LiveBroadcastSnippet broadcastSnippet = new LiveBroadcastSnippet();
+        broadcastSnippet.setTitle(title);
+        broadcastSnippet.setScheduledStartTime(new DateTime("2015-06-15T04:40:00.000Z"));
+        broadcastSnippet.setScheduledEndTime(new DateTime("2015-06-16T00:00:00.000Z"));
+        LiveBroadcastStatus status = new LiveBroadcastStatus();
+        status.setPrivacyStatus("public");
+        LiveBroadcast broadcast = new LiveBroadcast();
+        broadcast.setKind("youtube#liveBroadcast");
+        broadcast.setSnippet(broadcastSnippet);
+        broadcast.setStatus(status);
+        return broadcast;
+    }
+
+    /**
+     * Creates the RTMP stream for one rendition of a ladder.
+     */
+    private static LiveStream newRenditionStream(String title, String format) {
+        LiveStreamSnippet streamSnippet = new LiveStreamSnippet();
+        streamSnippet.setTitle(title);
+        CdnSettings cdnSettings = new CdnSettings();
+        cdnSettings.setFormat(format);
+        cdnSettings.setIngestionType("rtmp");
+        LiveStream stream = new LiveStream();
+        stream.setKind("youtube#liveStream");
+        stream.setSnippet(streamSnippet);
+        stream.setCdn(cdnSettings);
+        return stream;
     }
-      int retval = container.writeTrailer();
-      if (retval < 0)
-          throw new RuntimeException("Could not write trailer to output file");
-	return arrayList;
-	}
 
 	/*
      * Prompt the user to enter a title for a broadcast.
@@ -0,0 +1,343 @@
+package com.google.api.services.samples.youtube.cmdline.live;
+
+import com.google.api.client.auth.oauth2.Credential;
+import com.google.api.client.auth.oauth2.StoredCredential;
+import com.google.api.client.auth.oauth2.TokenResponseException;
+import com.google.api.client.extensions.java6.auth.oauth2.AuthorizationCodeInstalledApp;
+import com.google.api.client.extensions.jetty.auth.oauth2.LocalServerReceiver;
+import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
+import com.google.api.client.googleapis.auth.oauth2.GoogleClientSecrets;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.util.store.DataStore;
+import com.google.api.client.util.store.DataStoreFactory;
+import com.google.api.client.util.store.FileDataStoreFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Authorizes the samples and keeps their credentials fresh.
+ *
+ * <p>Client secrets are read once, when the first credential is needed. Each credential is kept in
+ * memory under the name of its datastore, so later calls to {@link #authorize} return it without
+ * touching the datastore or starting the local receiver again.</p>
+ *
+ * <p>A credential with a refresh token is refreshed on a background thread
+ * {@linkplain Builder#setRefreshMargin a margin} before its access token expires. A
+ * {@link Credential} only refreshes inline when its token has under a minute left, so API calls
+ * made through a cached credential never wait on the token endpoint. A failed refresh is retried
+ * after {@linkplain Builder#setRetryDelay a delay}; one the token endpoint rejects outright, such as
+ * a revoked grant, drops the credential from the cache so the next {@link #authorize} starts
+ * over.</p>
+ */
+public class CredentialManager {
+
+    /**
+     * Resource holding the OAuth client ID and secret.
+     */
+    public static final String CLIENT_SECRETS = "/resources/client_secrets.json";
+
+    /**
+     * Directory under the user's home directory where OAuth tokens are stored.
+     */
+    private static final String CREDENTIALS_DIRECTORY = ".oauth-credentials";
+
+    private static CredentialManager defaultInstance;
+
+    private final HttpTransport transport;
+
+    private final JsonFactory jsonFactory;
+
+    private final String clientSecretsResource;
+
+    private final DataStoreFactory dataStoreFactory;
+
+    private final GenericUrl tokenServerUrl;
+
+    private final int receiverPort;
+
+    private final long refreshMarginMillis;
+
+    private final long retryDelayMillis;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final Map<String, Credential> credentials = new ConcurrentHashMap<String, Credential>();
+
+    private final AtomicLong refreshes = new AtomicLong();
+
+    private final AtomicLong refreshFailures = new AtomicLong();
+
+    private GoogleClientSecrets clientSecrets;
+
+    private CredentialManager(Builder builder) {
+        this.transport = builder.transport;
+        this.jsonFactory = builder.jsonFactory;
+        this.clientSecretsResource = builder.clientSecretsResource;
+        this.dataStoreFactory = builder.dataStoreFactory;
+        this.tokenServerUrl = builder.tokenServerUrl;
+        this.receiverPort = builder.receiverPort;
+        this.refreshMarginMillis = builder.refreshMarginMillis;
+        this.retryDelayMillis = builder.retryDelayMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "credential-refresh");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Returns the manager used by {@link Auth}, storing tokens under
+     * {@code ~/.oauth-credentials}.
+     */
+    public static synchronized CredentialManager getDefault() throws IOException {
+        if (defaultInstance == null) {
+            defaultInstance = new Builder(Auth.HTTP_TRANSPORT, Auth.JSON_FACTORY)
+                    .setDataStoreFactory(new FileDataStoreFactory(
+                            new File(System.getProperty("user.home") + "/" + CREDENTIALS_DIRECTORY)))
+                    .build();
+        }
+        return defaultInstance;
+    }
+
+    /**
+     * Returns the credential cached for the datastore, or loads or obtains one: from the datastore
+     * if it holds a usable token, otherwise by sending the user through the browser flow.
+     *
+     * @param scopes              scopes to request if the user has to authorize
+     * @param credentialDatastore name of the datastore the tokens are kept in
+     */
+    public Credential authorize(List<String> scopes, String credentialDatastore) throws IOException {
+        Credential credential = credentials.get(credentialDatastore);
+        if (credential != null) {
+            return credential;
+        }
+        synchronized (this) {
+            credential = credentials.get(credentialDatastore);
+            if (credential != null) {
+                return credential;
+            }
+            GoogleAuthorizationCodeFlow.Builder flowBuilder = new GoogleAuthorizationCodeFlow.Builder(
+                    transport, jsonFactory, getClientSecrets(), scopes);
+            // Offline access returns a refresh token, without which nothing can be refreshed. The
+            // browser flow only runs when none is stored, so force the consent screen that issues one.
+            flowBuilder.setAccessType("offline").setApprovalPrompt("force");
+            DataStore<StoredCredential> datastore = dataStoreFactory.getDataStore(credentialDatastore);
+            flowBuilder.setCredentialDataStore(datastore);
+            if (tokenServerUrl != null) {
+                flowBuilder.setTokenServerUrl(tokenServerUrl);
+            }
+            GoogleAuthorizationCodeFlow flow = flowBuilder.build();
+
+            credential = flow.loadCredential("user");
+            if (credential == null || credential.getRefreshToken() == null) {
+                LocalServerReceiver receiver = new LocalServerReceiver.Builder().setPort(receiverPort).build();
+                credential = new AuthorizationCodeInstalledApp(flow, receiver).authorize("user");
+            }
+            credentials.put(credentialDatastore, credential);
+            scheduleRefresh(credentialDatastore, credential);
+            return credential;
+        }
+    }
+
+    /**
+     * Returns the number of background refreshes that succeeded.
+     */
+    public long getRefreshes() {
+        return refreshes.get();
+    }
+
+    /**
+     * Returns the number of background refreshes that failed.
+     */
+    public long getRefreshFailures() {
+        return refreshFailures.get();
+    }
+
+    /**
+     * Stops refreshing and forgets the cached credentials. Tokens already stored stay stored.
+     */
+    public void close() {
+        scheduler.shutdownNow();
+        credentials.clear();
+    }
+
+    private synchronized GoogleClientSecrets getClientSecrets() throws IOException {
+        if (clientSecrets != null) {
+            return clientSecrets;
+        }
+        InputStream in = CredentialManager.class.getResourceAsStream(clientSecretsResource);
+        if (in == null) {
+            throw new IOException("Missing " + clientSecretsResource);
+        }
+        try {
+            clientSecrets = GoogleClientSecrets.load(jsonFactory, new InputStreamReader(in, "UTF-8"));
+        } finally {
+            in.close();
+        }
+
+        // Checks that the defaults have been replaced (Default = "Enter X here").
+        if (clientSecrets.getDetails().getClientId().startsWith("Enter")
+                || clientSecrets.getDetails().getClientSecret().startsWith("Enter ")) {
+            System.out.println(
+                    "Enter Client ID and Secret from https://code.google.com/apis/console/?api=youtube"
+                            + "into src/main/resources/client_secrets.json");
+            System.exit(1);
+        }
+        return clientSecrets;
+    }
+
+    private void scheduleRefresh(String credentialDatastore, Credential credential) {
+        if (credential.getRefreshToken() == null) {
+            System.out.println("[AUTH] " + credentialDatastore + " has no refresh token, not refreshing");
+            return;
+        }
+        Long expiration = credential.getExpirationTimeMilliseconds();
+        long delay = expiration == null ? 0
+                : Math.max(0, expiration - System.currentTimeMillis() - refreshMarginMillis);
+        schedule(credentialDatastore, credential, delay);
+    }
+
+    private void schedule(final String credentialDatastore, final Credential credential, long delayMillis) {
+        if (scheduler.isShutdown()) {
+            return;
+        }
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                refresh(credentialDatastore, credential);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Refreshes a cached credential and schedules the next refresh. The datastore is updated by the
+     * refresh listener the flow installed on the credential.
+     */
+    void refresh(String credentialDatastore, Credential credential) {
+        if (credentials.get(credentialDatastore) != credential) {
+            return;
+        }
+        try {
+            if (credential.refreshToken()) {
+                refreshes.incrementAndGet();
+                scheduleRefresh(credentialDatastore, credential);
+                return;
+            }
+            refreshFailures.incrementAndGet();
+            System.err.println("[AUTH] refresh of " + credentialDatastore + " returned no token");
+        } catch (TokenResponseException e) {
+            refreshFailures.incrementAndGet();
+            if (e.getStatusCode() >= 400 && e.getStatusCode() < 500) {
+                System.err.println("[AUTH] " + credentialDatastore + " was rejected ("
+                        + (e.getDetails() != null ? e.getDetails().getError() : e.getStatusCode())
+                        + "), it has to be authorized again");
+                credentials.remove(credentialDatastore);
+                return;
+            }
+            System.err.println("[AUTH] refresh of " + credentialDatastore + " failed: " + e.getStatusCode());
+        } catch (IOException e) {
+            refreshFailures.incrementAndGet();
+            System.err.println("[AUTH] refresh of " + credentialDatastore + " failed: " + e.getMessage());
+        }
+        schedule(credentialDatastore, credential, retryDelayMillis);
+    }
+
+    public static class Builder {
+
+        private final HttpTransport transport;
+
+        private final JsonFactory jsonFactory;
+
+        private String clientSecretsResource = CLIENT_SECRETS;
+
+        private DataStoreFactory dataStoreFactory;
+
+        private GenericUrl tokenServerUrl;
+
+        private int receiverPort = 8080;
+
+        private long refreshMarginMillis = TimeUnit.MINUTES.toMillis(5);
+
+        private long retryDelayMillis = TimeUnit.SECONDS.toMillis(30);
+
+        public Builder(HttpTransport transport, JsonFactory jsonFactory) {
+            this.transport = transport;
+            this.jsonFactory = jsonFactory;
+        }
+
+        /**
+         * Sets the class path resource the client secrets are read from. Defaults to
+         * {@link #CLIENT_SECRETS}.
+         */
+        public Builder setClientSecretsResource(String clientSecretsResource) {
+            this.clientSecretsResource = clientSecretsResource;
+            return this;
+        }
+
+        /**
+         * Sets where tokens are persisted, one datastore per name given to {@link #authorize}.
+         */
+        public Builder setDataStoreFactory(DataStoreFactory dataStoreFactory) {
+            this.dataStoreFactory = dataStoreFactory;
+            return this;
+        }
+
+        /**
+         * Sends token requests somewhere other than Google's token endpoint, e.g. a
+         * {@link LocalTokenServer}.
+         */
+        public Builder setTokenServerUrl(String tokenServerUrl) {
+            this.tokenServerUrl = new GenericUrl(tokenServerUrl);
+            return this;
+        }
+
+        /**
+         * Sets the port the browser flow's redirect is received on. Defaults to 8080.
+         */
+        public Builder setReceiverPort(int receiverPort) {
+            this.receiverPort = receiverPort;
+            return this;
+        }
+
+        /**
+         * Sets how long before expiry access tokens are refreshed. Defaults to five minutes,
+         * comfortably more than the minute before expiry at which a credential would refresh
+         * inline.
+         */
+        public Builder setRefreshMargin(long refreshMargin, TimeUnit unit) {
+            this.refreshMarginMillis = unit.toMillis(refreshMargin);
+            return this;
+        }
+
+        /**
+         * Sets how long to wait before retrying a failed refresh. Defaults to 30 seconds.
+         */
+        public Builder setRetryDelay(long retryDelay, TimeUnit unit) {
+            this.retryDelayMillis = unit.toMillis(retryDelay);
+            return this;
+        }
+
+        public CredentialManager build() {
+            if (dataStoreFactory == null) {
+                throw new IllegalStateException("a data store factory is required");
+            }
+            return new CredentialManager(this);
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package com.google.api.services.samples.youtube.cmdline.live;
+
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.googleapis.services.AbstractGoogleClientRequest;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.util.BackOff;
+import com.google.api.client.util.ExponentialBackOff;
+import com.google.api.client.util.Sleeper;
+import com.google.api.services.youtube.YouTube;
+import com.google.api.services.youtube.model.LiveBroadcast;
+import com.google.api.services.youtube.model.LiveStream;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Inserts broadcasts and streams and binds them together.
+ *
+ * <p>A broadcast insert and a stream insert do not depend on each other, so both are issued at
+ * once and the bind follows as soon as the two have returned, which takes provisioning from three
+ * round trips down to two. {@link #provisionAll} does the same for many pairs, with at most
+ * {@link Builder#setConcurrency concurrency} requests in flight; no task ever waits on another, so
+ * a small pool cannot deadlock.</p>
+ *
+ * <p>Requests that fail with a rate-limit error, {@code 429} or a {@code 5xx} status, or that
+ * could not connect, are retried after an exponential backoff with random jitter. The daily
+ * {@code quotaExceeded} error is not retried since it only clears when the quota resets. A retried
+ * insert that had in fact reached the server leaves a duplicate behind, which is the usual price of
+ * retrying a non-idempotent call.</p>
+ */
+public class LiveProvisioner {
+
+    /**
+     * 403 reasons returned when requests are sent faster than the project or user is allowed to.
+     */
+    private static final List<String> RATE_LIMIT_REASONS =
+            Arrays.asList("rateLimitExceeded", "userRateLimitExceeded");
+
+    private final YouTube youtube;
+
+    private final ExecutorService executor;
+
+    private final boolean ownsExecutor;
+
+    private final int maxAttempts;
+
+    private final int initialBackoffMillis;
+
+    private final int maxBackoffMillis;
+
+    private final Sleeper sleeper;
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong retries = new AtomicLong();
+
+    private LiveProvisioner(Builder builder) {
+        this.youtube = builder.youtube;
+        this.ownsExecutor = builder.executor == null;
+        this.executor = ownsExecutor
+                ? Executors.newFixedThreadPool(builder.concurrency, new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "provisioner");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                })
+                : builder.executor;
+        this.maxAttempts = builder.maxAttempts;
+        this.initialBackoffMillis = builder.initialBackoffMillis;
+        this.maxBackoffMillis = builder.maxBackoffMillis;
+        this.sleeper = builder.sleeper;
+    }
+
+    /**
+     * Inserts a broadcast and a stream concurrently and binds them.
+     *
+     * @throws IOException the first request that failed after its retries
+     */
+    public Provisioned provision(LiveBroadcast broadcast, LiveStream stream) throws IOException {
+        Provisioned provisioned = provisionAll(Collections.singletonList(broadcast),
+                Collections.singletonList(stream)).get(0);
+        if (provisioned.getFailure() != null) {
+            throw provisioned.getFailure();
+        }
+        return provisioned;
+    }
+
+    /**
+     * Provisions {@code broadcasts.get(i)} with {@code streams.get(i)} for every {@code i}. A pair
+     * that fails does not stop the others; its result carries the failure instead.
+     *
+     * @return one result per pair, in order
+     */
+    public List<Provisioned> provisionAll(List<LiveBroadcast> broadcasts, List<LiveStream> streams)
+            throws IOException {
+        if (broadcasts.size() != streams.size()) {
+            throw new IllegalArgumentException(broadcasts.size() + " broadcasts but " + streams.size() + " streams");
+        }
+        int count = broadcasts.size();
+        long[] started = new long[count];
+        List<Future<LiveBroadcast>> broadcastInserts = new ArrayList<Future<LiveBroadcast>>(count);
+        List<Future<LiveStream>> streamInserts = new ArrayList<Future<LiveStream>>(count);
+        for (int i = 0; i < count; i++) {
+            started[i] = System.nanoTime();
+            broadcastInserts.add(submit(youtube.liveBroadcasts().insert("snippet,status", broadcasts.get(i))));
+            streamInserts.add(submit(youtube.liveStreams().insert("snippet,cdn", streams.get(i))));
+        }
+
+        List<Provisioned> results = new ArrayList<Provisioned>(count);
+        List<Future<LiveBroadcast>> binds = new ArrayList<Future<LiveBroadcast>>(count);
+        for (int i = 0; i < count; i++) {
+            Provisioned provisioned = new Provisioned();
+            results.add(provisioned);
+            try {
+                provisioned.broadcast = await(broadcastInserts.get(i));
+            } catch (IOException e) {
+                provisioned.failure = e;
+            }
+            try {
+                provisioned.stream = await(streamInserts.get(i));
+            } catch (IOException e) {
+                if (provisioned.failure == null) {
+                    provisioned.failure = e;
+                }
+            }
+            if (provisioned.failure != null) {
+                binds.add(null);
+                continue;
+            }
+            YouTube.LiveBroadcasts.Bind bind =
+                    youtube.liveBroadcasts().bind(provisioned.broadcast.getId(), "id,contentDetails");
+            bind.setStreamId(provisioned.stream.getId());
+            binds.add(submit(bind));
+        }
+        for (int i = 0; i < count; i++) {
+            Provisioned provisioned = results.get(i);
+            if (binds.get(i) != null) {
+                try {
+                    provisioned.boundBroadcast = await(binds.get(i));
+                } catch (IOException e) {
+                    provisioned.failure = e;
+                }
+            }
+            provisioned.elapsedNanos = System.nanoTime() - started[i];
+        }
+        return results;
+    }
+
+    /**
+     * Returns the number of requests sent, retries included.
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Returns the number of requests that were retried after a failure.
+     */
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * Stops the request pool if the provisioner created it.
+     */
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    private <T> Future<T> submit(final AbstractGoogleClientRequest<T> request) {
+        return executor.submit(new Callable<T>() {
+            @Override
+            public T call() throws IOException {
+                return execute(request);
+            }
+        });
+    }
+
+    /**
+     * Executes a request, retrying it while it fails with a retryable error and attempts and
+     * backoff time remain.
+     */
+    <T> T execute(AbstractGoogleClientRequest<T> request) throws IOException {
+        ExponentialBackOff backOff = new ExponentialBackOff.Builder()
+                .setInitialIntervalMillis(initialBackoffMillis)
+                .setMaxIntervalMillis(maxBackoffMillis)
+                .setRandomizationFactor(0.5)
+                .setMultiplier(2)
+                .build();
+        for (int attempt = 1; ; attempt++) {
+            requests.incrementAndGet();
+            try {
+                return request.execute();
+            } catch (IOException e) {
+                if (attempt >= maxAttempts || !isRetryable(e)) {
+                    throw e;
+                }
+                long delay = backOff.nextBackOffMillis();
+                if (delay == BackOff.STOP) {
+                    throw e;
+                }
+                retries.incrementAndGet();
+                System.out.println("[PROVISION] " + request.getClass().getEnclosingClass().getSimpleName()
+                        + "." + request.getClass().getSimpleName() + " failed ("
+                        + describe(e) + "), retrying in " + delay + " ms");
+                try {
+                    sleeper.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted while backing off");
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true for errors that may succeed when the request is sent again.
+     */
+    static boolean isRetryable(IOException e) {
+        if (e instanceof ConnectException) {
+            return true;
+        }
+        if (!(e instanceof HttpResponseException)) {
+            return false;
+        }
+        int status = ((HttpResponseException) e).getStatusCode();
+        if (status >= 500 || status == 429) {
+            return true;
+        }
+        if (status == 403 && e instanceof GoogleJsonResponseException) {
+            GoogleJsonError details = ((GoogleJsonResponseException) e).getDetails();
+            if (details != null && details.getErrors() != null) {
+                for (GoogleJsonError.ErrorInfo error : details.getErrors()) {
+                    if (RATE_LIMIT_REASONS.contains(error.getReason())) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String describe(IOException e) {
+        if (e instanceof HttpResponseException) {
+            return String.valueOf(((HttpResponseException) e).getStatusCode());
+        }
+        return e.getClass().getSimpleName();
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while provisioning");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Outcome of provisioning one broadcast and stream.
+     */
+    public static class Provisioned {
+
+        private LiveBroadcast broadcast;
+
+        private LiveStream stream;
+
+        private LiveBroadcast boundBroadcast;
+
+        private IOException failure;
+
+        private long elapsedNanos;
+
+        /**
+         * Returns the inserted broadcast, or null if its insert failed.
+         */
+        public LiveBroadcast getBroadcast() {
+            return broadcast;
+        }
+
+        /**
+         * Returns the inserted stream, or null if its insert failed.
+         */
+        public LiveStream getStream() {
+            return stream;
+        }
+
+        /**
+         * Returns the bind response, with the broadcast's {@code id} and {@code contentDetails}.
+         */
+        public LiveBroadcast getBoundBroadcast() {
+            return boundBroadcast;
+        }
+
+        /**
+         * Returns the first failed request, or null if the pair was bound.
+         */
+        public IOException getFailure() {
+            return failure;
+        }
+
+        public long getElapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        }
+    }
+
+    public static class Builder {
+
+        private final YouTube youtube;
+
+        private ExecutorService executor;
+
+        private int concurrency = 4;
+
+        private int maxAttempts = 5;
+
+        private int initialBackoffMillis = 500;
+
+        private int maxBackoffMillis = 16000;
+
+        private Sleeper sleeper = Sleeper.DEFAULT;
+
+        public Builder(YouTube youtube) {
+            this.youtube = youtube;
+        }
+
+        /**
+         * Sets how many requests may be in flight at once. Defaults to 4, one below the five
+         * keep-alive connections per host {@code HttpURLConnection} pools by default, so
+         * connections are reused rather than opened per request.
+         */
+        public Builder setConcurrency(int concurrency) {
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        /**
+         * Runs requests on a shared pool, which is not shut down by {@link #close()}. Overrides
+         * the concurrency setting.
+         */
+        public Builder setExecutor(ExecutorService executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Sets how many times a request is sent before its failure is reported. Defaults to 5.
+         */
+        public Builder setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * Sets the first and the largest backoff between attempts; each backoff doubles the
+         * previous one and is then randomised by +/-50%. Defaults to 0.5 s and 16 s.
+         */
+        public Builder setBackoff(int initialBackoffMillis, int maxBackoffMillis) {
+            this.initialBackoffMillis = initialBackoffMillis;
+            this.maxBackoffMillis = maxBackoffMillis;
+            return this;
+        }
+
+        public Builder setSleeper(Sleeper sleeper) {
+            this.sleeper = sleeper;
+            return this;
+        }
+
+        public LiveProvisioner build() {
+            return new LiveProvisioner(this);
+        }
+    }
+}
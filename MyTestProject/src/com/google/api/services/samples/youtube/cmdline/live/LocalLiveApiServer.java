@@ -0,0 +1,514 @@
+package com.google.api.services.samples.youtube.cmdline.live;
+
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.json.GenericJson;
+import com.google.api.client.util.DateTime;
+import com.google.api.services.youtube.model.CdnSettings;
+import com.google.api.services.youtube.model.IngestionInfo;
+import com.google.api.services.youtube.model.LiveBroadcast;
+import com.google.api.services.youtube.model.LiveBroadcastContentDetails;
+import com.google.api.services.youtube.model.LiveBroadcastListResponse;
+import com.google.api.services.youtube.model.LiveBroadcastStatus;
+import com.google.api.services.youtube.model.LiveStream;
+import com.google.api.services.youtube.model.LiveStreamConfigurationIssue;
+import com.google.api.services.youtube.model.LiveStreamHealthStatus;
+import com.google.api.services.youtube.model.LiveStreamListResponse;
+import com.google.api.services.youtube.model.LiveStreamStatus;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * In-process stand-in for the parts of the YouTube Live Streaming API the samples use, so
+ * provisioning can be exercised and load-tested without network access or credentials.
+ *
+ * <p>Point a client at it with {@code YouTube.Builder#setRootUrl(server.getRootUrl())}. It keeps
+ * broadcasts and streams in memory and answers {@code liveBroadcasts.insert},
+ * {@code liveStreams.insert} and {@code liveBroadcasts.bind} with the same JSON shapes as the real
+ * service. Every response can be delayed by a fixed latency, and errors can be injected, either
+ * for the next few requests or at random, in the service's own error format.</p>
+ *
+ * <p>{@code liveBroadcasts.list} and {@code liveStreams.list} look items up by id and return only
+ * the requested parts, or a bare {@code 304} when {@code If-None-Match} carries the current ETag.
+ * The {@code fields} parameter is accepted but not applied. Stream health and broadcast life
+ * cycle are changed through {@link #setStreamHealth} and {@link #setLifeCycleStatus}, standing in
+ * for the ingestion servers and the broadcaster.</p>
+ *
+ * <p>Run {@link #main} to keep one listening, e.g. for
+ * {@code -Dyoutube.rootUrl=http://127.0.0.1:8089/}.</p>
+ */
+public class LocalLiveApiServer {
+
+    private static final String SERVICE_PATH = "/youtube/v3/";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    private final Map<String, LiveBroadcast> broadcasts = new ConcurrentHashMap<String, LiveBroadcast>();
+
+    private final Map<String, LiveStream> streams = new ConcurrentHashMap<String, LiveStream>();
+
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong notModified = new AtomicLong();
+
+    private final AtomicInteger pendingFailures = new AtomicInteger();
+
+    private final Random random = new Random();
+
+    private volatile long latencyMillis;
+
+    private volatile String ingestionAddress = "rtmp://127.0.0.1:1935/live2";
+
+    private volatile double failureRate;
+
+    private volatile int failureStatus = 503;
+
+    private volatile String failureReason = "backendError";
+
+    /**
+     * Creates a server on the loopback interface.
+     *
+     * @param port port to listen on, 0 for any free port
+     */
+    public LocalLiveApiServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port), 0);
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "local-live-api");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        server.setExecutor(executor);
+        server.createContext(SERVICE_PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    dispatch(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+    }
+
+    public void start() {
+        server.start();
+        System.out.println("[LOCAL API] listening on " + getRootUrl());
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Returns the root URL to give to the client, ending in a slash.
+     */
+    public String getRootUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    /**
+     * Delays every response by the given time, to stand in for the round trip to the service.
+     */
+    public void setLatency(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Sets the ingestion address handed out with new streams, e.g. that of a
+     * {@code LoopbackRtmpServer}.
+     */
+    public void setIngestionAddress(String ingestionAddress) {
+        this.ingestionAddress = ingestionAddress;
+    }
+
+    /**
+     * Makes the next {@code count} requests fail with the given status and error reason, e.g.
+     * {@code 403} and {@code rateLimitExceeded}.
+     */
+    public void failNext(int count, int status, String reason) {
+        failureStatus = status;
+        failureReason = reason;
+        pendingFailures.set(count);
+    }
+
+    /**
+     * Makes each request fail with the given probability, with the status and reason last given
+     * to {@link #failNext} (503 {@code backendError} by default).
+     */
+    public void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    /**
+     * Returns the number of requests received, failed ones included.
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public int getBroadcastCount() {
+        return broadcasts.size();
+    }
+
+    public int getStreamCount() {
+        return streams.size();
+    }
+
+    /**
+     * Returns the number of list requests answered with {@code 304 Not Modified}.
+     */
+    public long getNotModified() {
+        return notModified.get();
+    }
+
+    /**
+     * Sets a stream's status and health, e.g. {@code active} and {@code bad} with a
+     * {@code bitrateHigh} issue, and gives it a new ETag. Issues are reported as warnings.
+     */
+    public void setStreamHealth(String streamId, String streamStatus, String healthStatus, String... issueTypes) {
+        LiveStream stream = streams.get(streamId);
+        if (stream == null) {
+            throw new IllegalArgumentException("No stream " + streamId);
+        }
+        List<LiveStreamConfigurationIssue> issues = new ArrayList<LiveStreamConfigurationIssue>();
+        for (String type : issueTypes) {
+            LiveStreamConfigurationIssue issue = new LiveStreamConfigurationIssue();
+            issue.setType(type);
+            issue.setSeverity("warning");
+            issue.setReason(type);
+            issue.setDescription("Reported by the local stand-in");
+            issues.add(issue);
+        }
+        LiveStreamHealthStatus health = new LiveStreamHealthStatus();
+        health.setStatus(healthStatus);
+        health.setConfigurationIssues(issues);
+        health.setLastUpdateTimeSeconds(BigInteger.valueOf(System.currentTimeMillis() / 1000));
+        synchronized (stream) {
+            stream.getStatus().setStreamStatus(streamStatus);
+            stream.getStatus().setHealthStatus(health);
+            stream.setEtag(newEtag());
+        }
+    }
+
+    /**
+     * Moves a broadcast to another life cycle state, e.g. {@code live} or {@code complete}, and
+     * gives it a new ETag.
+     */
+    public void setLifeCycleStatus(String broadcastId, String lifeCycleStatus) {
+        LiveBroadcast broadcast = broadcasts.get(broadcastId);
+        if (broadcast == null) {
+            throw new IllegalArgumentException("No broadcast " + broadcastId);
+        }
+        synchronized (broadcast) {
+            broadcast.getStatus().setLifeCycleStatus(lifeCycleStatus);
+            broadcast.setEtag(newEtag());
+        }
+    }
+
+    public LiveBroadcast getBroadcast(String id) {
+        return broadcasts.get(id);
+    }
+
+    public LiveStream getStream(String id) {
+        return streams.get(id);
+    }
+
+    private void dispatch(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        if (shouldFail()) {
+            sendError(exchange, failureStatus, failureReason, "Injected failure");
+            return;
+        }
+
+        String resource = exchange.getRequestURI().getPath().substring(SERVICE_PATH.length());
+        String method = exchange.getRequestMethod();
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        if ("POST".equals(method) && "liveBroadcasts".equals(resource)) {
+            insertBroadcast(exchange);
+        } else if ("POST".equals(method) && "liveStreams".equals(resource)) {
+            insertStream(exchange);
+        } else if ("POST".equals(method) && "liveBroadcasts/bind".equals(resource)) {
+            bind(exchange, query);
+        } else if ("GET".equals(method) && "liveBroadcasts".equals(resource)) {
+            listBroadcasts(exchange, query);
+        } else if ("GET".equals(method) && "liveStreams".equals(resource)) {
+            listStreams(exchange, query);
+        } else {
+            sendError(exchange, 404, "notFound", method + " " + resource + " is not supported");
+        }
+    }
+
+    private boolean shouldFail() {
+        int pending;
+        while ((pending = pendingFailures.get()) > 0) {
+            if (pendingFailures.compareAndSet(pending, pending - 1)) {
+                return true;
+            }
+        }
+        if (failureRate <= 0) {
+            return false;
+        }
+        synchronized (random) {
+            return random.nextDouble() < failureRate;
+        }
+    }
+
+    private void insertBroadcast(HttpExchange exchange) throws IOException {
+        LiveBroadcast broadcast = readBody(exchange, LiveBroadcast.class);
+        broadcast.setId("broadcast-" + nextId.incrementAndGet());
+        broadcast.setEtag(newEtag());
+        broadcast.getSnippet().setPublishedAt(new DateTime(System.currentTimeMillis()));
+        if (broadcast.getStatus() == null) {
+            broadcast.setStatus(new LiveBroadcastStatus());
+        }
+        broadcast.getStatus().setLifeCycleStatus("created");
+        broadcast.setContentDetails(new LiveBroadcastContentDetails());
+        broadcasts.put(broadcast.getId(), broadcast);
+        send(exchange, 200, broadcast);
+    }
+
+    private void insertStream(HttpExchange exchange) throws IOException {
+        LiveStream stream = readBody(exchange, LiveStream.class);
+        String id = "stream-" + nextId.incrementAndGet();
+        stream.setId(id);
+        stream.setEtag(newEtag());
+        stream.getSnippet().setPublishedAt(new DateTime(System.currentTimeMillis()));
+        if (stream.getCdn() == null) {
+            stream.setCdn(new CdnSettings());
+        }
+        IngestionInfo ingestion = new IngestionInfo();
+        ingestion.setIngestionAddress(ingestionAddress);
+        ingestion.setStreamName(id);
+        stream.getCdn().setIngestionInfo(ingestion);
+        LiveStreamStatus status = new LiveStreamStatus();
+        status.setStreamStatus("ready");
+        stream.setStatus(status);
+        streams.put(id, stream);
+        send(exchange, 200, stream);
+    }
+
+    private void bind(HttpExchange exchange, Map<String, String> query) throws IOException {
+        LiveBroadcast broadcast = broadcasts.get(String.valueOf(query.get("id")));
+        if (broadcast == null) {
+            sendError(exchange, 404, "liveBroadcastNotFound", "Broadcast not found");
+            return;
+        }
+        String streamId = query.get("streamId");
+        if (streamId != null && !streams.containsKey(streamId)) {
+            sendError(exchange, 404, "liveStreamNotFound", "Stream not found");
+            return;
+        }
+        LiveBroadcast bound;
+        synchronized (broadcast) {
+            broadcast.getContentDetails().setBoundStreamId(streamId);
+            broadcast.setEtag(newEtag());
+            bound = new LiveBroadcast();
+            bound.setId(broadcast.getId());
+            bound.setEtag(broadcast.getEtag());
+            bound.setKind(broadcast.getKind());
+            bound.setContentDetails(broadcast.getContentDetails().clone());
+        }
+        send(exchange, 200, bound);
+    }
+
+    private void listBroadcasts(HttpExchange exchange, Map<String, String> query) throws IOException {
+        String part = String.valueOf(query.get("part"));
+        List<LiveBroadcast> items = new ArrayList<LiveBroadcast>();
+        StringBuilder etags = new StringBuilder(part);
+        for (String id : ids(query)) {
+            LiveBroadcast broadcast = broadcasts.get(id);
+            if (broadcast == null) {
+                continue;
+            }
+            LiveBroadcast item = new LiveBroadcast();
+            synchronized (broadcast) {
+                item.setId(broadcast.getId());
+                item.setEtag(broadcast.getEtag());
+                item.setKind(broadcast.getKind());
+                if (part.contains("snippet")) {
+                    item.setSnippet(broadcast.getSnippet().clone());
+                }
+                if (part.contains("status")) {
+                    item.setStatus(broadcast.getStatus().clone());
+                }
+                if (part.contains("contentDetails")) {
+                    item.setContentDetails(broadcast.getContentDetails().clone());
+                }
+            }
+            items.add(item);
+            etags.append(item.getEtag());
+        }
+        LiveBroadcastListResponse response = new LiveBroadcastListResponse();
+        response.setKind("youtube#liveBroadcastListResponse");
+        response.setEtag(listEtag(etags));
+        response.setItems(items);
+        sendList(exchange, response.getEtag(), response);
+    }
+
+    private void listStreams(HttpExchange exchange, Map<String, String> query) throws IOException {
+        String part = String.valueOf(query.get("part"));
+        List<LiveStream> items = new ArrayList<LiveStream>();
+        StringBuilder etags = new StringBuilder(part);
+        for (String id : ids(query)) {
+            LiveStream stream = streams.get(id);
+            if (stream == null) {
+                continue;
+            }
+            LiveStream item = new LiveStream();
+            synchronized (stream) {
+                item.setId(stream.getId());
+                item.setEtag(stream.getEtag());
+                item.setKind(stream.getKind());
+                if (part.contains("snippet")) {
+                    item.setSnippet(stream.getSnippet().clone());
+                }
+                if (part.contains("cdn")) {
+                    item.setCdn(stream.getCdn().clone());
+                }
+                if (part.contains("status")) {
+                    item.setStatus(stream.getStatus().clone());
+                }
+            }
+            items.add(item);
+            etags.append(item.getEtag());
+        }
+        LiveStreamListResponse response = new LiveStreamListResponse();
+        response.setKind("youtube#liveStreamListResponse");
+        response.setEtag(listEtag(etags));
+        response.setItems(items);
+        sendList(exchange, response.getEtag(), response);
+    }
+
+    private static List<String> ids(Map<String, String> query) {
+        String ids = query.get("id");
+        return ids == null || ids.isEmpty() ? Collections.<String>emptyList() : Arrays.asList(ids.split(","));
+    }
+
+    /**
+     * Returns an ETag that changes whenever the requested parts or any listed item's ETag do.
+     */
+    private static String listEtag(CharSequence etags) {
+        return "\"" + Integer.toHexString(etags.toString().hashCode()) + "\"";
+    }
+
+    /**
+     * Sends a list response, or only {@code 304 Not Modified} if the client already has it.
+     */
+    private void sendList(HttpExchange exchange, String etag, Object body) throws IOException {
+        exchange.getResponseHeaders().set("ETag", etag);
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            notModified.incrementAndGet();
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        send(exchange, 200, body);
+    }
+
+    private String newEtag() {
+        return "\"" + Long.toHexString(System.nanoTime()) + "\"";
+    }
+
+    private static <T> T readBody(HttpExchange exchange, Class<T> type) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        // the client gzips request bodies unless told otherwise
+        if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            in = new GZIPInputStream(in);
+        }
+        return Auth.JSON_FACTORY.fromInputStream(in, UTF_8, type);
+    }
+
+    private static void send(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = Auth.JSON_FACTORY.toByteArray(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String reason, String message)
+            throws IOException {
+        GoogleJsonError.ErrorInfo info = new GoogleJsonError.ErrorInfo();
+        info.setDomain("youtube.liveStreaming");
+        info.setReason(reason);
+        info.setMessage(message);
+        GoogleJsonError error = new GoogleJsonError();
+        error.setCode(status);
+        error.setMessage(message);
+        error.setErrors(Collections.singletonList(info));
+        GenericJson body = new GenericJson();
+        body.set("error", error);
+        send(exchange, status, body);
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) throws IOException {
+        Map<String, String> query = new HashMap<String, String>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals < 0) {
+                query.put(URLDecoder.decode(pair, "UTF-8"), "");
+            } else {
+                query.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+                        URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+            }
+        }
+        return query;
+    }
+
+    /**
+     * Runs a server until the process is killed.
+     *
+     * @param args optional port (default 8089) and latency in milliseconds
+     */
+    public static void main(String[] args) throws IOException {
+        LocalLiveApiServer server = new LocalLiveApiServer(args.length > 0 ? Integer.parseInt(args[0]) : 8089);
+        if (args.length > 1) {
+            server.setLatency(Long.parseLong(args[1]));
+        }
+        server.start();
+    }
+}
@@ -0,0 +1,203 @@
+package com.google.api.services.samples.youtube.cmdline.live;
+
+import com.google.api.client.auth.oauth2.TokenErrorResponse;
+import com.google.api.client.auth.oauth2.TokenResponse;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for the OAuth 2.0 token endpoint, so credential refresh can be exercised
+ * without network access.
+ *
+ * <p>Give its {@link #getTokenServerUrl() URL} to
+ * {@link CredentialManager.Builder#setTokenServerUrl}. It accepts the {@code refresh_token} and
+ * {@code authorization_code} grants for any client, issues access tokens that expire after a
+ * configurable time, and can be told to fail or to reject the refresh token as revoked.</p>
+ */
+public class LocalTokenServer {
+
+    private static final String PATH = "/token";
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    private final AtomicInteger nextToken = new AtomicInteger();
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicInteger pendingFailures = new AtomicInteger();
+
+    private volatile long expiresInSeconds = 3600;
+
+    private volatile long latencyMillis;
+
+    private volatile boolean revoked;
+
+    /**
+     * Creates a server on the loopback interface.
+     *
+     * @param port port to listen on, 0 for any free port
+     */
+    public LocalTokenServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port), 0);
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "local-token");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        server.setExecutor(executor);
+        server.createContext(PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    issue(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public String getTokenServerUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + PATH;
+    }
+
+    /**
+     * Sets the lifetime of the access tokens issued from now on. Defaults to an hour.
+     */
+    public void setExpiresInSeconds(long expiresInSeconds) {
+        this.expiresInSeconds = expiresInSeconds;
+    }
+
+    /**
+     * Delays every response, to stand in for the round trip to the real endpoint.
+     */
+    public void setLatency(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Makes the next {@code count} requests fail with {@code 503}.
+     */
+    public void failNext(int count) {
+        pendingFailures.set(count);
+    }
+
+    /**
+     * Rejects every refresh token with {@code invalid_grant}, as for a revoked grant.
+     */
+    public void setRevoked(boolean revoked) {
+        this.revoked = revoked;
+    }
+
+    /**
+     * Returns the number of token requests received.
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    private void issue(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        int pending;
+        while ((pending = pendingFailures.get()) > 0) {
+            if (pendingFailures.compareAndSet(pending, pending - 1)) {
+                sendError(exchange, 503, "temporarily_unavailable");
+                return;
+            }
+        }
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            sendError(exchange, 405, "invalid_request");
+            return;
+        }
+
+        Map<String, String> form = parseForm(exchange.getRequestBody());
+        String grantType = form.get("grant_type");
+        TokenResponse token = new TokenResponse();
+        if ("refresh_token".equals(grantType)) {
+            if (revoked || form.get("refresh_token") == null) {
+                sendError(exchange, 400, "invalid_grant");
+                return;
+            }
+        } else if ("authorization_code".equals(grantType)) {
+            token.setRefreshToken("local-refresh-" + nextToken.incrementAndGet());
+        } else {
+            sendError(exchange, 400, "unsupported_grant_type");
+            return;
+        }
+        token.setAccessToken("local-access-" + nextToken.incrementAndGet());
+        token.setTokenType("Bearer");
+        token.setExpiresInSeconds(expiresInSeconds);
+        send(exchange, 200, token);
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String error) throws IOException {
+        TokenErrorResponse response = new TokenErrorResponse();
+        response.setError(error);
+        send(exchange, status, response);
+    }
+
+    private static void send(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = Auth.JSON_FACTORY.toByteArray(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    private static Map<String, String> parseForm(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            body.write(buffer, 0, read);
+        }
+        Map<String, String> form = new HashMap<String, String>();
+        for (String pair : body.toString("UTF-8").split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                form.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+                        URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+            }
+        }
+        return form;
+    }
+}
@@ -0,0 +1,478 @@
+package com.google.api.services.samples.youtube.cmdline.live;
+
+import com.google.api.client.googleapis.services.AbstractGoogleClientRequest;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.services.samples.youtube.cmdline.live.stream.AdaptiveController;
+import com.google.api.services.samples.youtube.cmdline.live.stream.StreamSession;
+import com.google.api.services.youtube.YouTube;
+import com.google.api.services.youtube.model.LiveBroadcastListResponse;
+import com.google.api.services.youtube.model.LiveBroadcastStatus;
+import com.google.api.services.youtube.model.LiveStreamConfigurationIssue;
+import com.google.api.services.youtube.model.LiveStreamHealthStatus;
+import com.google.api.services.youtube.model.LiveStreamListResponse;
+import com.google.api.services.youtube.model.LiveStreamStatus;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a bound stream and its broadcast while they are live and feeds what the ingestion
+ * servers report back into the encoder.
+ *
+ * <p>Each poll lists only the {@code status} part of the stream and of the broadcast, with
+ * {@code fields} masks that leave just the health and the life cycle, and sends the ETag of the
+ * previous response as {@code If-None-Match}, so an unchanged resource comes back as a bare
+ * {@code 304}. Polls start at the minimum interval. While the stream is active, healthy and
+ * unchanged the interval doubles up to the maximum; a change or a health problem brings it back
+ * to the minimum, and a failed poll doubles it like a backoff.</p>
+ *
+ * <p>Health issues are acted on, each kind of action at most once per cooldown:</p>
+ * <ul>
+ * <li>GOP issues such as {@code gopSizeLong} or {@code openGop} make the encoder emit a
+ * keyframe.</li>
+ * <li>{@code bitrateHigh} and {@code videoIngestionStarved} lower the bit rate through the
+ * {@link AdaptiveController}, or the session if there is none.</li>
+ * <li>{@code noData}, or a stream in {@code error}, while packets are being sent reopens the
+ * connection.</li>
+ * </ul>
+ *
+ * <p>When the broadcast is {@code complete} or {@code revoked} the monitor stops polling and runs
+ * its {@linkplain Builder#setOnBroadcastEnded callback}.</p>
+ */
+public class StreamHealthMonitor {
+
+    static final String STREAM_FIELDS =
+            "etag,items(status(streamStatus,healthStatus(status,configurationIssues(type,severity))))";
+
+    static final String BROADCAST_FIELDS = "etag,items(status(lifeCycleStatus))";
+
+    private static final List<String> KEY_FRAME_ISSUES =
+            Arrays.asList("gopSizeLong", "gopSizeOver", "gopMismatch", "openGop");
+
+    private static final List<String> BIT_RATE_ISSUES =
+            Arrays.asList("bitrateHigh", "videoBitrateMismatch", "videoIngestionStarved");
+
+    private static final List<String> ENDED = Arrays.asList("complete", "revoked");
+
+    /**
+     * What the monitor can do about a health issue.
+     */
+    public enum Action {
+        KEY_FRAME, RECONNECT, LOWER_BIT_RATE
+    }
+
+    private final YouTube youtube;
+
+    private final String broadcastId;
+
+    private final String streamId;
+
+    private final StreamSession session;
+
+    private final AdaptiveController controller;
+
+    private final Runnable onBroadcastEnded;
+
+    private final long minIntervalMillis;
+
+    private final long maxIntervalMillis;
+
+    private final long cooldownNanos;
+
+    private final Map<Action, Long> lastTaken = new EnumMap<Action, Long>(Action.class);
+
+    private final Map<Action, Long> taken = new EnumMap<Action, Long>(Action.class);
+
+    private String streamEtag;
+
+    private String broadcastEtag;
+
+    private String streamStatus;
+
+    private String healthStatus;
+
+    private List<String> issues = Collections.emptyList();
+
+    private String lifeCycleStatus;
+
+    private boolean ended;
+
+    private long intervalMillis;
+
+    private long polls;
+
+    private long notModified;
+
+    private long failures;
+
+    private ScheduledExecutorService executor;
+
+    private StreamHealthMonitor(Builder builder) {
+        this.youtube = builder.youtube;
+        this.broadcastId = builder.broadcastId;
+        this.streamId = builder.streamId;
+        this.session = builder.session;
+        this.controller = builder.controller;
+        this.onBroadcastEnded = builder.onBroadcastEnded;
+        this.minIntervalMillis = builder.minIntervalMillis;
+        this.maxIntervalMillis = builder.maxIntervalMillis;
+        this.cooldownNanos = TimeUnit.MILLISECONDS.toNanos(builder.cooldownMillis);
+        this.intervalMillis = minIntervalMillis;
+        for (Action action : Action.values()) {
+            taken.put(action, 0L);
+        }
+    }
+
+    /**
+     * Starts polling on a background thread, right away.
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "health-" + streamId);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long delay;
+                try {
+                    delay = poll();
+                } catch (RuntimeException e) {
+                    System.err.println("[HEALTH] poll failed: " + e);
+                    delay = maxIntervalMillis;
+                }
+                synchronized (StreamHealthMonitor.this) {
+                    if (executor != null && !ended) {
+                        executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+                    }
+                }
+            }
+        });
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Polls the stream and the broadcast once and acts on the stream's health.
+     *
+     * @return milliseconds until the next poll
+     */
+    synchronized long poll() {
+        polls++;
+        boolean changed;
+        try {
+            changed = pollStream();
+            changed |= pollBroadcast();
+        } catch (IOException e) {
+            failures++;
+            System.err.println("[HEALTH] poll failed: " + describe(e));
+            intervalMillis = Math.min(maxIntervalMillis, intervalMillis * 2);
+            return intervalMillis;
+        }
+        if (ended) {
+            return intervalMillis;
+        }
+        boolean healthy = "active".equals(streamStatus) && "good".equals(healthStatus) && issues.isEmpty();
+        if (!healthy) {
+            act();
+        }
+        intervalMillis = changed || !healthy ? minIntervalMillis : Math.min(maxIntervalMillis, intervalMillis * 2);
+        return intervalMillis;
+    }
+
+    /**
+     * Fetches the stream's status if it changed.
+     *
+     * @return true if it changed
+     */
+    private boolean pollStream() throws IOException {
+        YouTube.LiveStreams.List request = youtube.liveStreams().list("status");
+        request.setId(streamId);
+        request.setFields(STREAM_FIELDS);
+        LiveStreamListResponse response = executeIfChanged(request, streamEtag);
+        if (response == null) {
+            return false;
+        }
+        streamEtag = response.getEtag();
+        if (response.getItems() == null || response.getItems().isEmpty()) {
+            throw new IOException("stream " + streamId + " not found");
+        }
+        LiveStreamStatus status = response.getItems().get(0).getStatus();
+        LiveStreamHealthStatus health = status != null ? status.getHealthStatus() : null;
+        streamStatus = status != null ? status.getStreamStatus() : null;
+        healthStatus = health != null ? health.getStatus() : null;
+        issues = new ArrayList<String>();
+        if (health != null && health.getConfigurationIssues() != null) {
+            for (LiveStreamConfigurationIssue issue : health.getConfigurationIssues()) {
+                if (!"info".equals(issue.getSeverity())) {
+                    issues.add(issue.getType());
+                }
+            }
+        }
+        System.out.println("[HEALTH] stream " + streamStatus + ", health " + healthStatus
+                + (issues.isEmpty() ? "" : ", issues " + issues));
+        return true;
+    }
+
+    /**
+     * Fetches the broadcast's life cycle if it changed, and stops once the broadcast is over.
+     *
+     * @return true if it changed
+     */
+    private boolean pollBroadcast() throws IOException {
+        YouTube.LiveBroadcasts.List request = youtube.liveBroadcasts().list("status");
+        request.setId(broadcastId);
+        request.setFields(BROADCAST_FIELDS);
+        LiveBroadcastListResponse response = executeIfChanged(request, broadcastEtag);
+        if (response == null) {
+            return false;
+        }
+        broadcastEtag = response.getEtag();
+        if (response.getItems() == null || response.getItems().isEmpty()) {
+            throw new IOException("broadcast " + broadcastId + " not found");
+        }
+        LiveBroadcastStatus status = response.getItems().get(0).getStatus();
+        String newLifeCycleStatus = status != null ? status.getLifeCycleStatus() : null;
+        if (newLifeCycleStatus != null && !newLifeCycleStatus.equals(lifeCycleStatus)) {
+            System.out.println("[HEALTH] broadcast " + newLifeCycleStatus);
+        }
+        lifeCycleStatus = newLifeCycleStatus;
+        if (ENDED.contains(lifeCycleStatus) && !ended) {
+            ended = true;
+            if (onBroadcastEnded != null) {
+                onBroadcastEnded.run();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Executes a request with the ETag of the previous response.
+     *
+     * @return the response, or null if the resource did not change
+     */
+    private <T> T executeIfChanged(AbstractGoogleClientRequest<T> request, String etag) throws IOException {
+        if (etag != null) {
+            request.getRequestHeaders().setIfNoneMatch(etag);
+        }
+        try {
+            return request.execute();
+        } catch (HttpResponseException e) {
+            if (e.getStatusCode() == 304) {
+                notModified++;
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private void act() {
+        for (String issue : issues) {
+            if (KEY_FRAME_ISSUES.contains(issue)) {
+                take(Action.KEY_FRAME, issue);
+            } else if (BIT_RATE_ISSUES.contains(issue)) {
+                take(Action.LOWER_BIT_RATE, issue);
+            }
+        }
+        boolean sending = session != null && session.getFirstPacketNanos() != 0;
+        if (sending && "noData".equals(healthStatus)) {
+            take(Action.RECONNECT, "noData");
+        } else if (sending && "error".equals(streamStatus)) {
+            take(Action.RECONNECT, "stream error");
+        }
+    }
+
+    private void take(Action action, String reason) {
+        long now = System.nanoTime();
+        Long last = lastTaken.get(action);
+        if (last != null && now - last < cooldownNanos) {
+            return;
+        }
+        lastTaken.put(action, now);
+        taken.put(action, taken.get(action) + 1);
+        System.out.println("[HEALTH] " + reason + ": " + action);
+        if (session == null) {
+            return;
+        }
+        switch (action) {
+            case KEY_FRAME:
+                session.requestKeyFrame();
+                break;
+            case RECONNECT:
+                session.requestReconnect();
+                break;
+            case LOWER_BIT_RATE:
+                if (controller != null) {
+                    controller.reportCongestion("ingestion reports " + reason);
+                } else {
+                    session.reconfigure(session.getWidth(), session.getHeight(), session.getBitRate() * 3 / 4);
+                }
+                break;
+        }
+    }
+
+    private static String describe(IOException e) {
+        if (e instanceof HttpResponseException) {
+            return String.valueOf(((HttpResponseException) e).getStatusCode());
+        }
+        return e.getClass().getSimpleName() + ": " + e.getMessage();
+    }
+
+    public synchronized String getStreamStatus() {
+        return streamStatus;
+    }
+
+    public synchronized String getHealthStatus() {
+        return healthStatus;
+    }
+
+    /**
+     * Returns the types of the warnings and errors in the last health status.
+     */
+    public synchronized List<String> getIssues() {
+        return Collections.unmodifiableList(issues);
+    }
+
+    public synchronized String getLifeCycleStatus() {
+        return lifeCycleStatus;
+    }
+
+    /**
+     * Returns true once the broadcast is complete or revoked.
+     */
+    public synchronized boolean isBroadcastEnded() {
+        return ended;
+    }
+
+    public synchronized long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public synchronized long getPolls() {
+        return polls;
+    }
+
+    /**
+     * Returns the number of list requests answered with {@code 304 Not Modified}.
+     */
+    public synchronized long getNotModified() {
+        return notModified;
+    }
+
+    public synchronized long getFailures() {
+        return failures;
+    }
+
+    /**
+     * Returns how many times the action was taken.
+     */
+    public synchronized long getActions(Action action) {
+        return taken.get(action);
+    }
+
+    public synchronized String summary() {
+        return "[HEALTH] " + polls + " polls, " + notModified + " requests not modified, " + failures + " failed; "
+                + taken.get(Action.KEY_FRAME) + " keyframes forced, " + taken.get(Action.RECONNECT) + " reconnects, "
+                + taken.get(Action.LOWER_BIT_RATE) + " bit rate cuts; stream " + streamStatus + ", health "
+                + healthStatus + ", broadcast " + lifeCycleStatus;
+    }
+
+    public static class Builder {
+
+        private final YouTube youtube;
+
+        private final String broadcastId;
+
+        private final String streamId;
+
+        private StreamSession session;
+
+        private AdaptiveController controller;
+
+        private Runnable onBroadcastEnded;
+
+        private long minIntervalMillis = 5000;
+
+        private long maxIntervalMillis = 60000;
+
+        private long cooldownMillis = 30000;
+
+        /**
+         * @param broadcastId broadcast whose life cycle is watched
+         * @param streamId    stream bound to it, whose health is watched
+         */
+        public Builder(YouTube youtube, String broadcastId, String streamId) {
+            this.youtube = youtube;
+            this.broadcastId = broadcastId;
+            this.streamId = streamId;
+        }
+
+        /**
+         * Sets the session health issues are fed back into. Without one the monitor only reports.
+         */
+        public Builder setSession(StreamSession session) {
+            this.session = session;
+            return this;
+        }
+
+        /**
+         * Lowers the bit rate through the controller, so it stays within the session's ladder.
+         */
+        public Builder setController(AdaptiveController controller) {
+            this.controller = controller;
+            return this;
+        }
+
+        /**
+         * Runs once the broadcast is complete or revoked, e.g. to stop the pipeline.
+         */
+        public Builder setOnBroadcastEnded(Runnable onBroadcastEnded) {
+            this.onBroadcastEnded = onBroadcastEnded;
+            return this;
+        }
+
+        /**
+         * Sets the interval between polls while something is changing or wrong, and the longest
+         * one while all is well. Defaults to 5 s and 60 s.
+         */
+        public Builder setInterval(long minIntervalMillis, long maxIntervalMillis) {
+            this.minIntervalMillis = minIntervalMillis;
+            this.maxIntervalMillis = maxIntervalMillis;
+            return this;
+        }
+
+        /**
+         * Sets the time to leave the encoder after an action before taking the same kind again,
+         * since the ingestion servers take a while to report the effect. Defaults to 30 s.
+         */
+        public Builder setActionCooldown(long cooldownMillis) {
+            this.cooldownMillis = cooldownMillis;
+            return this;
+        }
+
+        public StreamHealthMonitor build() {
+            return new StreamHealthMonitor(this);
+        }
+    }
+}
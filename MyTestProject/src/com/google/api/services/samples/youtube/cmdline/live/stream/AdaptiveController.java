@@ -0,0 +1,340 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adapts the bit rate, frame rate and picture size of a {@link StreamSession} to what the CPU
+ * and the uplink can sustain.
+ *
+ * <p>Once per interval the controller looks at the encode and write times recorded in the
+ * {@link StreamMetrics} during that interval, the queue depths in front of the encode and mux
+ * stages and the number of dropped frames:</p>
+ * <ul>
+ * <li>Slow writes or a backlog in front of the sink mean the uplink is saturated: the bit rate is
+ * lowered, and once it reaches the bottom of the current rung the stream moves one rung down the
+ * ladder.</li>
+ * <li>Slow encoding, a backlog in front of the encoder or dropped frames mean the CPU cannot keep
+ * up: the frame rate is lowered, and once it reaches the minimum the stream moves one rung
+ * down.</li>
+ * <li>After several healthy intervals in a row the controller undoes one step at a time: frame
+ * rate first, then bit rate, then picture size.</li>
+ * </ul>
+ *
+ * <p>Size and bit rate changes go through {@link StreamSession#reconfigure}, so they take effect
+ * at a keyframe and never above the top rung, which is the CDN format of the stream. Bit rate steps
+ * within a rung keep the connection to the ingestion server; only moving to another rung reopens
+ * it.</p>
+ */
+public class AdaptiveController {
+
+    /**
+     * Encode time, as a fraction of the frame interval, above which the encoder is overloaded.
+     */
+    private static final double ENCODE_HIGH = 0.8;
+
+    private static final double ENCODE_LOW = 0.5;
+
+    /**
+     * Write time, as a fraction of the frame interval, above which the uplink is saturated.
+     */
+    private static final double WRITE_HIGH = 0.5;
+
+    private static final double WRITE_LOW = 0.2;
+
+    private static final int ENCODE_BACKLOG = 3;
+
+    private static final int MUX_BACKLOG = 8;
+
+    private static final double STEP_DOWN = 0.75;
+
+    private static final double STEP_UP = 1.15;
+
+    private final StreamSession session;
+
+    private final StreamMetrics metrics;
+
+    private final StreamPipeline pipeline;
+
+    private final List<EncodingProfile> ladder;
+
+    private final double minFrameRate;
+
+    private final double maxFrameRate;
+
+    private final long intervalMillis;
+
+    private final int upgradeAfter;
+
+    private final int holdAfterSwitch;
+
+    private int rung;
+
+    private int bitRate;
+
+    private double frameRate;
+
+    private int healthyIntervals;
+
+    private int holdIntervals;
+
+    private long lastEncodeCount;
+
+    private long lastEncodeSum;
+
+    private long lastWriteCount;
+
+    private long lastWriteSum;
+
+    private long lastDropped;
+
+    private ScheduledExecutorService executor;
+
+    private AdaptiveController(Builder builder) {
+        this.session = builder.session;
+        this.metrics = builder.metrics;
+        this.pipeline = builder.pipeline;
+        this.ladder = new ArrayList<EncodingProfile>(builder.ladder);
+        this.minFrameRate = builder.minFrameRate;
+        this.maxFrameRate = builder.maxFrameRate;
+        this.intervalMillis = builder.intervalMillis;
+        this.upgradeAfter = builder.upgradeAfter;
+        this.holdAfterSwitch = builder.holdAfterSwitch;
+        this.rung = ladder.size() - 1;
+        this.bitRate = session.getBitRate();
+        this.frameRate = maxFrameRate;
+    }
+
+    /**
+     * Starts evaluating on a background thread.
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "adaptive-" + metrics.getName());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    evaluate();
+                } catch (RuntimeException e) {
+                    System.err.println("[ADAPT] evaluation failed: " + e.getMessage());
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    public EncodingProfile getCurrentProfile() {
+        return ladder.get(rung);
+    }
+
+    public int getBitRate() {
+        return bitRate;
+    }
+
+    public double getFrameRate() {
+        return frameRate;
+    }
+
+    /**
+     * Takes one decision based on what happened since the previous call.
+     */
+    synchronized void evaluate() {
+        Histogram encode = metrics.getEncodeLatency();
+        Histogram write = metrics.getWriteLatency();
+        double encodeNanos = windowMean(encode.getCount() - lastEncodeCount, encode.getSum() - lastEncodeSum);
+        double writeNanos = windowMean(write.getCount() - lastWriteCount, write.getSum() - lastWriteSum);
+        lastEncodeCount = encode.getCount();
+        lastEncodeSum = encode.getSum();
+        lastWriteCount = write.getCount();
+        lastWriteSum = write.getSum();
+        long dropped = metrics.getFramesDropped() - lastDropped;
+        lastDropped = metrics.getFramesDropped();
+        int encodeDepth = pipeline != null ? pipeline.getQueueDepth("encode") : 0;
+        int muxDepth = pipeline != null ? pipeline.getQueueDepth("mux") : 0;
+
+        if (holdIntervals > 0) {
+            // let the new encoder settle before judging it
+            holdIntervals--;
+            return;
+        }
+        double frameNanos = TimeUnit.SECONDS.toNanos(1) / frameRate;
+        double encodeLoad = encodeNanos / frameNanos;
+        double writeLoad = writeNanos / frameNanos;
+        if (writeLoad > WRITE_HIGH || muxDepth >= MUX_BACKLOG) {
+            healthyIntervals = 0;
+            lowerBitRate("uplink saturated");
+        } else if (encodeLoad > ENCODE_HIGH || encodeDepth >= ENCODE_BACKLOG || dropped > 0) {
+            healthyIntervals = 0;
+            lowerFrameRate();
+        } else if (encodeLoad < ENCODE_LOW && writeLoad < WRITE_LOW && muxDepth == 0) {
+            if (++healthyIntervals >= upgradeAfter) {
+                healthyIntervals = 0;
+                raise();
+            }
+        } else {
+            healthyIntervals = 0;
+        }
+    }
+
+    /**
+     * Lowers the bit rate one step on a report from outside the pipeline, e.g. the health status
+     * of the ingestion server, and starts counting healthy intervals again.
+     */
+    public synchronized void reportCongestion(String reason) {
+        healthyIntervals = 0;
+        lowerBitRate(reason);
+    }
+
+    private void lowerBitRate(String reason) {
+        EncodingProfile current = ladder.get(rung);
+        int target = (int) (bitRate * STEP_DOWN);
+        if (target >= current.getMinBitRate()) {
+            apply(rung, target, reason);
+        } else if (rung > 0) {
+            EncodingProfile lower = ladder.get(rung - 1);
+            apply(rung - 1, Math.max(lower.getMinBitRate(), Math.min(lower.getMaxBitRate(), target)), reason);
+        } else if (bitRate > current.getMinBitRate()) {
+            apply(rung, current.getMinBitRate(), reason);
+        }
+    }
+
+    private void lowerFrameRate() {
+        if (frameRate > minFrameRate) {
+            setFrameRate(Math.max(minFrameRate, frameRate * STEP_DOWN), "encoder overloaded");
+        } else if (rung > 0) {
+            EncodingProfile lower = ladder.get(rung - 1);
+            apply(rung - 1, Math.min(lower.getMaxBitRate(), bitRate), "encoder overloaded");
+        }
+    }
+
+    private void raise() {
+        EncodingProfile current = ladder.get(rung);
+        if (frameRate < maxFrameRate) {
+            setFrameRate(Math.min(maxFrameRate, frameRate / STEP_DOWN), "headroom");
+        } else if (bitRate < current.getMaxBitRate()) {
+            apply(rung, Math.min(current.getMaxBitRate(), (int) (bitRate * STEP_UP)), "headroom");
+        } else if (rung < ladder.size() - 1) {
+            apply(rung + 1, ladder.get(rung + 1).getMinBitRate(), "headroom");
+        }
+    }
+
+    private void setFrameRate(double newFrameRate, String reason) {
+        System.out.println("[ADAPT] " + reason + ": frame rate " + Math.round(frameRate) + " -> "
+                + Math.round(newFrameRate) + " fps");
+        frameRate = newFrameRate;
+        session.setMaxFrameRate(frameRate >= maxFrameRate ? 0 : frameRate);
+    }
+
+    private void apply(int newRung, int newBitRate, String reason) {
+        EncodingProfile profile = ladder.get(newRung);
+        System.out.println("[ADAPT] " + reason + ": " + ladder.get(rung).getName() + " at " + bitRate / 1000
+                + " kbit/s -> " + profile.getName() + " at " + newBitRate / 1000 + " kbit/s");
+        rung = newRung;
+        bitRate = newBitRate;
+        session.reconfigure(profile.getWidth(), profile.getHeight(), newBitRate);
+        holdIntervals = holdAfterSwitch;
+    }
+
+    private static double windowMean(long count, long sum) {
+        return count <= 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Collects the settings of an {@link AdaptiveController}.
+     */
+    public static class Builder {
+
+        private final StreamSession session;
+
+        private final StreamMetrics metrics;
+
+        private final List<EncodingProfile> ladder;
+
+        private StreamPipeline pipeline;
+
+        private double minFrameRate = 10;
+
+        private double maxFrameRate = 24;
+
+        private long intervalMillis = 1000;
+
+        private int upgradeAfter = 10;
+
+        private int holdAfterSwitch = 3;
+
+        /**
+         * @param session an opened session, currently encoding at the top rung of the ladder
+         * @param metrics metrics the pipeline stages record into
+         * @param ladder  rungs the stream may use, lowest first; the last one is the target format
+         */
+        public Builder(StreamSession session, StreamMetrics metrics, List<EncodingProfile> ladder) {
+            if (ladder.isEmpty()) {
+                throw new IllegalArgumentException("the ladder needs at least one rung");
+            }
+            this.session = session;
+            this.metrics = metrics;
+            this.ladder = ladder;
+        }
+
+        /**
+         * Sets the pipeline whose queue depths are watched. Without one only latencies and drops
+         * are used.
+         */
+        public Builder setPipeline(StreamPipeline pipeline) {
+            this.pipeline = pipeline;
+            return this;
+        }
+
+        /**
+         * Sets the range the frame rate may move in; the maximum is the rate of the source.
+         * Defaults to 10 to 24 fps.
+         */
+        public Builder setFrameRateRange(double minFrameRate, double maxFrameRate) {
+            this.minFrameRate = minFrameRate;
+            this.maxFrameRate = maxFrameRate;
+            return this;
+        }
+
+        /**
+         * Sets how often a decision is taken. Defaults to one second.
+         */
+        public Builder setInterval(long intervalMillis) {
+            this.intervalMillis = intervalMillis;
+            return this;
+        }
+
+        /**
+         * Sets how many healthy intervals in a row are needed before stepping back up, and how
+         * many intervals are ignored after the encoder was switched. Defaults to 10 and 3.
+         */
+        public Builder setHysteresis(int upgradeAfter, int holdAfterSwitch) {
+            this.upgradeAfter = upgradeAfter;
+            this.holdAfterSwitch = holdAfterSwitch;
+            return this;
+        }
+
+        public AdaptiveController build() {
+            return new AdaptiveController(this);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import java.io.IOException;
+
+/**
+ * Source stage of the pipeline: reads the next picture from a {@link FrameSource} into a pooled
+ * frame. The pipeline has already stamped the frame by the time it gets here. Needs frames from
+ * a {@link FramePool} sized like the source.
+ */
+public class CaptureStage implements PipelineStage {
+
+    private final FrameSource source;
+
+    private final StreamMetrics metrics;
+
+    /**
+     * @param source an opened frame source
+     */
+    public CaptureStage(FrameSource source) {
+        this(source, null);
+    }
+
+    /**
+     * @param source  an opened frame source
+     * @param metrics receives the capture time of every frame, may be null
+     */
+    public CaptureStage(FrameSource source, StreamMetrics metrics) {
+        this.source = source;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean process(Frame frame) throws IOException {
+        long start = System.nanoTime();
+        if (!source.read(frame)) {
+            return false;
+        }
+        if (metrics != null) {
+            metrics.recordCapture(System.nanoTime() - start);
+        }
+        return true;
+    }
+}
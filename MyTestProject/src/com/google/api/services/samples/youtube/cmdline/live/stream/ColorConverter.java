@@ -0,0 +1,17 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+/**
+ * Turns the BGR raster of a frame into the YUV420P picture the encoder consumes.
+ */
+public interface ColorConverter {
+
+    /**
+     * Converts {@link Frame#getPixels()} into {@link Frame#getPicture()}, reusing both.
+     */
+    void convert(Frame frame);
+
+    /**
+     * Releases any native objects or threads held by the converter.
+     */
+    void close();
+}
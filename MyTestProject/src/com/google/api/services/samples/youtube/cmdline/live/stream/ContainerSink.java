@@ -0,0 +1,101 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import com.xuggle.xuggler.IContainer;
+import com.xuggle.xuggler.IContainerFormat;
+import com.xuggle.xuggler.IPacket;
+import com.xuggle.xuggler.IStream;
+import com.xuggle.xuggler.IStreamCoder;
+
+import java.io.IOException;
+
+/**
+ * Writes packets through a Xuggler {@link IContainer}, either to a live RTMP ingestion address or
+ * to a local file.
+ */
+public class ContainerSink implements OutputSink {
+
+    private final String url;
+
+    private final String format;
+
+    private IContainer container;
+
+    /**
+     * Owns the container and its format, which are freed together when the sink is closed.
+     */
+    private final NativeResources.Scope natives = NativeResources.openScope("ContainerSink");
+
+    /**
+     * @param url    address or path opened by the container
+     * @param format short name of the output format, e.g. {@code flv} or {@code mp4}
+     */
+    public ContainerSink(String url, String format) {
+        this.url = url;
+        this.format = format;
+    }
+
+    /**
+     * Creates a sink publishing FLV to an RTMP address such as the ingestion address of a stream
+     * followed by its stream name.
+     */
+    public static ContainerSink rtmp(String url) {
+        return new ContainerSink(url, "flv");
+    }
+
+    /**
+     * Creates a sink writing a local file. The format is taken from the extension and defaults to
+     * FLV.
+     */
+    public static ContainerSink file(String path) {
+        return new ContainerSink(path, path.toLowerCase().endsWith(".mp4") ? "mp4" : "flv");
+    }
+
+    @Override
+    public void open(IStreamCoder coder) throws IOException {
+        container = natives.add(IContainer.make());
+        IContainerFormat containerFormat = natives.add(IContainerFormat.make());
+        containerFormat.setOutputFormat(format, url, null);
+        container.setInputBufferLength(0);
+        if (container.open(url, IContainer.Type.WRITE, containerFormat) < 0) {
+            natives.close();
+            container = null;
+            throw new IOException("Could not open output container for " + url);
+        }
+        IStream stream = container.addNewStream(coder);
+        if (stream == null) {
+            natives.close();
+            container = null;
+            throw new IOException("Could not add video stream to " + url);
+        }
+        if (container.writeHeader() < 0) {
+            natives.close();
+            container = null;
+            throw new IOException("Could not write header for " + url);
+        }
+    }
+
+    @Override
+    public void write(IPacket packet) throws IOException {
+        packet.setStreamIndex(0);
+        if (container.writePacket(packet) < 0) {
+            throw new IOException("Could not write packet to " + url);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (container == null) {
+            return;
+        }
+        if (container.writeTrailer() < 0) {
+            System.err.println("[SINK] Could not write trailer to " + url);
+        }
+        natives.close();
+        container = null;
+    }
+
+    @Override
+    public String getName() {
+        return url;
+    }
+}
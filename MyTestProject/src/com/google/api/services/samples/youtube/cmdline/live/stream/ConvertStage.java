@@ -0,0 +1,72 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import com.xuggle.xuggler.IVideoPicture;
+
+/**
+ * Converts the captured BGR raster of a frame into the YUV420P picture for the encoder. Frames
+ * whose source already filled the YUV420P picture are passed through.
+ *
+ * <p>With a {@link TileChangeDetector}, each frame is first compared with the previous one so the
+ * converter can skip the tiles that did not change.</p>
+ */
+public class ConvertStage implements PipelineStage {
+
+    private final ColorConverter converter;
+
+    private final TileChangeDetector detector;
+
+    private final StreamMetrics metrics;
+
+    /**
+     * Creates a stage converting through Xuggler's native resampler.
+     */
+    public ConvertStage() {
+        this(new XugglerColorConverter());
+    }
+
+    public ConvertStage(ColorConverter converter) {
+        this(converter, null);
+    }
+
+    /**
+     * @param metrics receives the conversion time of every converted frame, may be null
+     */
+    public ConvertStage(ColorConverter converter, StreamMetrics metrics) {
+        this(converter, null, metrics);
+    }
+
+    /**
+     * @param detector marks the changed tiles of each frame before conversion, may be null
+     * @param metrics  receives the conversion time and changed fraction of every converted frame,
+     *                 may be null
+     */
+    public ConvertStage(ColorConverter converter, TileChangeDetector detector, StreamMetrics metrics) {
+        this.converter = converter;
+        this.detector = detector;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean process(Frame frame) {
+        IVideoPicture picture = frame.getPicture();
+        if (!frame.isConverted()) {
+            long start = System.nanoTime();
+            if (detector != null) {
+                detector.detect(frame);
+            }
+            converter.convert(frame);
+            frame.setConverted(true);
+            if (metrics != null) {
+                metrics.recordConvert(System.nanoTime() - start);
+                if (detector != null) {
+                    metrics.recordDirtyRatio(frame.getDirtyRatio());
+                }
+            }
+        }
+        picture.setPts(frame.getTimeStamp());
+        //make first frame keyframe
+        picture.setKeyFrame(frame.getSequence() == 0);
+        picture.setQuality(0);
+        return true;
+    }
+}
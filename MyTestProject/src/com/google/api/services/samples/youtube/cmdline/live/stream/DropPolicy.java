@@ -0,0 +1,24 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+/**
+ * What a {@link StreamPipeline} stage does with a frame when the queue of the next stage is full.
+ */
+public enum DropPolicy {
+
+    /**
+     * Wait until the next stage has room. Use this for queues carrying encoded packets, since
+     * dropping a packet corrupts every frame that references it.
+     */
+    BLOCK,
+
+    /**
+     * Discard the frame that could not be queued and keep the queued ones.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Evict the oldest queued frame to make room, so the next stage always sees the freshest
+     * picture.
+     */
+    DROP_OLDEST
+}
@@ -0,0 +1,40 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import java.io.IOException;
+
+/**
+ * Encodes the picture of a frame into the frame's pooled packet. Frames are only passed on once
+ * the coder has completed a packet.
+ */
+public class EncodeStage implements PipelineStage {
+
+    private final StreamSession session;
+
+    private final StreamMetrics metrics;
+
+    /**
+     * @param session an opened session
+     */
+    public EncodeStage(StreamSession session) {
+        this(session, null);
+    }
+
+    /**
+     * @param session an opened session
+     * @param metrics receives the encode time of every frame, may be null
+     */
+    public EncodeStage(StreamSession session, StreamMetrics metrics) {
+        this.session = session;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean process(Frame frame) throws IOException {
+        long start = System.nanoTime();
+        boolean complete = session.encode(frame.getPicture(), frame.getPacket());
+        if (metrics != null) {
+            metrics.recordEncode(System.nanoTime() - start);
+        }
+        return complete;
+    }
+}
@@ -0,0 +1,101 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One rung of an encoding ladder: a picture size and the bit rate range the encoder may use at
+ * that size.
+ *
+ * <p>The standard rungs follow the formats accepted in {@code CdnSettings.format} for RTMP
+ * ingestion, with YouTube's recommended bit rate range for each.</p>
+ */
+public class EncodingProfile {
+
+    private static final List<EncodingProfile> STANDARD = Collections.unmodifiableList(Arrays.asList(
+            new EncodingProfile("144p", 256, 144, 80000, 300000),
+            new EncodingProfile("240p", 426, 240, 300000, 700000),
+            new EncodingProfile("360p", 640, 360, 400000, 1000000),
+            new EncodingProfile("480p", 854, 480, 500000, 2000000),
+            new EncodingProfile("720p", 1280, 720, 1500000, 4000000),
+            new EncodingProfile("1080p", 1920, 1080, 3000000, 6000000)));
+
+    private final String name;
+
+    private final int width;
+
+    private final int height;
+
+    private final int minBitRate;
+
+    private final int maxBitRate;
+
+    public EncodingProfile(String name, int width, int height, int minBitRate, int maxBitRate) {
+        this.name = name;
+        this.width = width;
+        this.height = height;
+        this.minBitRate = minBitRate;
+        this.maxBitRate = maxBitRate;
+    }
+
+    /**
+     * Returns the standard rungs up to and including the given CDN format, lowest first.
+     *
+     * @param format a {@code CdnSettings} format such as {@code 240p}
+     * @throws IllegalArgumentException if the format is not a known rung
+     */
+    public static List<EncodingProfile> ladder(String format) {
+        List<EncodingProfile> rungs = new ArrayList<EncodingProfile>();
+        for (EncodingProfile profile : STANDARD) {
+            rungs.add(profile);
+            if (profile.name.equals(format)) {
+                return rungs;
+            }
+        }
+        throw new IllegalArgumentException("unknown CDN format: " + format);
+    }
+
+    /**
+     * Returns the same rung with its width adjusted to the aspect ratio of the source, rounded to
+     * an even number as YUV420P requires.
+     */
+    public EncodingProfile withAspectOf(int sourceWidth, int sourceHeight) {
+        int scaledWidth = (int) Math.round((double) height * sourceWidth / sourceHeight) & ~1;
+        return new EncodingProfile(name, scaledWidth, height, minBitRate, maxBitRate);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getMinBitRate() {
+        return minBitRate;
+    }
+
+    public int getMaxBitRate() {
+        return maxBitRate;
+    }
+
+    /**
+     * Returns the bit rate a stream starts at before anything is known about the uplink: the
+     * middle of the range, from where the adaptive controller steps down or up.
+     */
+    public int getDefaultBitRate() {
+        return (minBitRate + maxBitRate) / 2;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + width + "x" + height + ", " + minBitRate / 1000 + "-" + maxBitRate / 1000 + " kbit/s)";
+    }
+}
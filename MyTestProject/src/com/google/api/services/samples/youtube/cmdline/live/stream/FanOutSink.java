@@ -0,0 +1,406 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import com.xuggle.xuggler.IPacket;
+import com.xuggle.xuggler.IStreamCoder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Delivers every packet of one encoder to several sinks, e.g. the primary and backup ingestion
+ * addresses of a stream.
+ *
+ * <p>Each target has its own thread and bounded queue. {@link #write} only copies the packet into
+ * a pooled packet per target and queues it, so it never waits for a target. Each target gets its
+ * own copy because muxers may rewrite packet time stamps in place. When a target's queue is full
+ * the packet is dropped for that target, along with everything up to the next keyframe, so what it
+ * does receive stays decodable. A target whose write fails is reopened on its own thread with
+ * exponential backoff while the others carry on.</p>
+ *
+ * <p>Because failures are handled per target, {@link #write} never throws; {@link #open} fails
+ * only if no target could be opened.</p>
+ */
+public class FanOutSink implements OutputSink {
+
+    private static final long IDLE_PARK_NANOS = 200000L;
+
+    private static final long MIN_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private static final long CLOSE_TIMEOUT_MILLIS = 2000;
+
+    private final List<SinkWorker> workers = new ArrayList<SinkWorker>();
+
+    private final int queueCapacity;
+
+    private volatile IStreamCoder coder;
+
+    private volatile Runnable keyFrameRequester;
+
+    /**
+     * @param queueCapacity packets each target may fall behind before it starts dropping
+     */
+    public FanOutSink(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Adds a target. All targets must be added before the sink is opened.
+     */
+    public FanOutSink add(OutputSink target) {
+        workers.add(new SinkWorker(target, queueCapacity));
+        return this;
+    }
+
+    /**
+     * Sets what to call when a reconnected target needs a keyframe to start from, usually
+     * {@link StreamSession#requestKeyFrame()}.
+     */
+    public void setKeyFrameRequester(Runnable keyFrameRequester) {
+        this.keyFrameRequester = keyFrameRequester;
+    }
+
+    @Override
+    public void open(IStreamCoder coder) throws IOException {
+        this.coder = coder;
+        int opened = 0;
+        for (SinkWorker worker : workers) {
+            if (worker.connect()) {
+                opened++;
+            }
+        }
+        if (opened == 0) {
+            throw new IOException("Could not open any of " + getName());
+        }
+        for (SinkWorker worker : workers) {
+            worker.start();
+        }
+    }
+
+    @Override
+    public void write(IPacket packet) {
+        for (SinkWorker worker : workers) {
+            worker.enqueue(packet);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (SinkWorker worker : workers) {
+            worker.running = false;
+        }
+        for (SinkWorker worker : workers) {
+            worker.stop();
+        }
+    }
+
+    @Override
+    public String getName() {
+        StringBuilder name = new StringBuilder("fan-out[");
+        for (int i = 0; i < workers.size(); i++) {
+            if (i > 0) {
+                name.append(", ");
+            }
+            name.append(workers.get(i).target.getName());
+        }
+        return name.append(']').toString();
+    }
+
+    /**
+     * Returns the per-target state, in the order the targets were added.
+     */
+    public List<SinkWorker> getWorkers() {
+        return Collections.unmodifiableList(workers);
+    }
+
+    /**
+     * Returns one line per target with its lag and loss.
+     */
+    public String summary() {
+        StringBuilder summary = new StringBuilder();
+        for (SinkWorker worker : workers) {
+            summary.append("[FANOUT] ").append(worker.target.getName())
+                    .append(worker.connected ? "" : " (disconnected)")
+                    .append(": ").append(worker.written.get()).append(" written, ")
+                    .append(worker.dropped.get()).append(" dropped, ")
+                    .append(worker.reconnects.get()).append(" reconnects, queue ")
+                    .append(worker.queue.size()).append(", lag us ")
+                    .append(worker.lag.snapshot(1000)).append('\n');
+        }
+        return summary.toString();
+    }
+
+    private void requestKeyFrame() {
+        Runnable requester = keyFrameRequester;
+        if (requester != null) {
+            requester.run();
+        }
+    }
+
+    /**
+     * Queue, thread and statistics of one target.
+     */
+    public class SinkWorker implements Runnable {
+
+        private final OutputSink target;
+
+        private final FrameQueue<QueuedPacket> queue;
+
+        private final FrameQueue<QueuedPacket> free;
+
+        /**
+         * Time from queueing a packet to having written it, in nanoseconds.
+         */
+        private final Histogram lag = new Histogram();
+
+        private final AtomicLong written = new AtomicLong();
+
+        private final AtomicLong dropped = new AtomicLong();
+
+        private final AtomicLong reconnects = new AtomicLong();
+
+        private volatile boolean running;
+
+        private volatile boolean connected;
+
+        /**
+         * Set by the producer after a drop; cleared by the next keyframe.
+         */
+        private boolean skipUntilKeyFrame;
+
+        /**
+         * Set by the worker after (re)connecting; cleared by the next keyframe it writes.
+         */
+        private boolean awaitingKeyFrame = true;
+
+        private long backoffNanos = MIN_BACKOFF_NANOS;
+
+        private long nextAttemptNanos;
+
+        private Thread thread;
+
+        SinkWorker(OutputSink target, int capacity) {
+            this.target = target;
+            this.queue = new FrameQueue<QueuedPacket>(capacity);
+            // one more than the queue holds, for the packet being written
+            this.free = new FrameQueue<QueuedPacket>(queue.capacity() + 1);
+            for (int i = 0; i < queue.capacity() + 1; i++) {
+                free.offer(new QueuedPacket());
+            }
+        }
+
+        public OutputSink getTarget() {
+            return target;
+        }
+
+        public boolean isConnected() {
+            return connected;
+        }
+
+        public int getQueueDepth() {
+            return queue.size();
+        }
+
+        public Histogram getLag() {
+            return lag;
+        }
+
+        public long getWrittenPackets() {
+            return written.get();
+        }
+
+        public long getDroppedPackets() {
+            return dropped.get();
+        }
+
+        public long getReconnects() {
+            return reconnects.get();
+        }
+
+        void start() {
+            if (thread != null) {
+                // the previous thread did not drain in time: let it finish before starting another
+                try {
+                    thread.join(CLOSE_TIMEOUT_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (thread.isAlive()) {
+                    System.err.println("[FANOUT] " + target.getName() + " is still closing, not restarted");
+                    return;
+                }
+            }
+            running = true;
+            thread = new Thread(this, "sink-" + target.getName());
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void stop() {
+            if (thread != null) {
+                try {
+                    thread.join(CLOSE_TIMEOUT_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (thread.isAlive()) {
+                    System.err.println("[FANOUT] " + target.getName() + " did not drain in time");
+                    thread.interrupt();
+                    return;
+                }
+                thread = null;
+            }
+            disconnect();
+            QueuedPacket entry;
+            while ((entry = queue.poll()) != null) {
+                free.offer(entry);
+            }
+            // free the payloads but keep the entries, the sink may be opened again
+            for (int i = free.size(); i > 0; i--) {
+                entry = free.poll();
+                entry.delete();
+                free.offer(entry);
+            }
+        }
+
+        /**
+         * Called on the encoding thread.
+         */
+        void enqueue(IPacket packet) {
+            boolean keyFrame = packet.isKeyPacket();
+            if (skipUntilKeyFrame && !keyFrame) {
+                dropped.incrementAndGet();
+                return;
+            }
+            QueuedPacket entry = free.poll();
+            if (entry == null) {
+                drop();
+                return;
+            }
+            entry.load(packet);
+            entry.queuedNanos = System.nanoTime();
+            if (!queue.offer(entry)) {
+                free.offer(entry);
+                drop();
+                return;
+            }
+            skipUntilKeyFrame = false;
+        }
+
+        private void drop() {
+            dropped.incrementAndGet();
+            skipUntilKeyFrame = true;
+        }
+
+        @Override
+        public void run() {
+            while (running || !queue.isEmpty()) {
+                QueuedPacket entry = queue.poll();
+                if (entry == null) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    continue;
+                }
+                try {
+                    deliver(entry);
+                } finally {
+                    free.offer(entry);
+                }
+            }
+        }
+
+        private void deliver(QueuedPacket entry) {
+            if (!connected && !reconnect()) {
+                dropped.incrementAndGet();
+                return;
+            }
+            if (awaitingKeyFrame) {
+                if (!entry.packet.isKeyPacket()) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                awaitingKeyFrame = false;
+            }
+            try {
+                target.write(entry.packet);
+                written.incrementAndGet();
+                lag.record(System.nanoTime() - entry.queuedNanos);
+            } catch (IOException e) {
+                System.err.println("[FANOUT] " + target.getName() + ": " + e.getMessage() + ", reconnecting");
+                disconnect();
+                nextAttemptNanos = System.nanoTime();
+            }
+        }
+
+        /**
+         * Opens the target unless a previous attempt failed too recently.
+         */
+        private boolean reconnect() {
+            if (System.nanoTime() - nextAttemptNanos < 0) {
+                return false;
+            }
+            if (!connect()) {
+                return false;
+            }
+            reconnects.incrementAndGet();
+            requestKeyFrame();
+            return true;
+        }
+
+        /**
+         * Synchronized with {@link #disconnect()}, as the target is opened by {@link #open} on the
+         * encoding thread and reopened and closed by the worker thread.
+         */
+        synchronized boolean connect() {
+            try {
+                target.open(coder);
+                connected = true;
+                awaitingKeyFrame = true;
+                backoffNanos = MIN_BACKOFF_NANOS;
+                return true;
+            } catch (IOException e) {
+                System.err.println("[FANOUT] could not open " + target.getName() + ": " + e.getMessage());
+                target.close();
+                nextAttemptNanos = System.nanoTime() + backoffNanos;
+                backoffNanos = Math.min(MAX_BACKOFF_NANOS, backoffNanos * 2);
+                return false;
+            }
+        }
+
+        private synchronized void disconnect() {
+            if (connected) {
+                target.close();
+                connected = false;
+            }
+        }
+    }
+
+    /**
+     * Pooled copy of a packet waiting in a target's queue.
+     */
+    private static class QueuedPacket {
+
+        IPacket packet;
+
+        long queuedNanos;
+
+        void load(IPacket source) {
+            int size = source.getSize();
+            if (packet == null || packet.getData().getBufferSize() < size) {
+                delete();
+                packet = NativeResources.track(IPacket.make(Math.max(size, 16 * 1024)), "FanOutSink");
+            }
+            PacketPool.copy(source, packet);
+        }
+
+        void delete() {
+            NativeResources.release(packet);
+            packet = null;
+        }
+    }
+}
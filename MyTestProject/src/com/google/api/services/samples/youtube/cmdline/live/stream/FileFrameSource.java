@@ -0,0 +1,137 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import com.xuggle.xuggler.ICodec;
+import com.xuggle.xuggler.IContainer;
+import com.xuggle.xuggler.IPacket;
+import com.xuggle.xuggler.IPixelFormat;
+import com.xuggle.xuggler.IStreamCoder;
+import com.xuggle.xuggler.IVideoPicture;
+import com.xuggle.xuggler.IVideoResampler;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * Decodes the video track of a media file, e.g. {@code resources/sample-video.mp4}.
+ *
+ * <p>Decoded pictures are already in a YUV pixel format, so they are resampled straight into the
+ * encoder picture of the frame at the pool's size and the BGR conversion is skipped.</p>
+ *
+ * <p>The file is read through a {@link MappedFileHandler}. Files whose H.264 video can be sent as
+ * it is are better streamed with a {@link FileRemuxer}.</p>
+ */
+public class FileFrameSource implements FrameSource {
+
+    private final String path;
+
+    private final int width;
+
+    private final int height;
+
+    private IContainer container;
+
+    private IStreamCoder decoder;
+
+    private int streamIndex = -1;
+
+    private IPacket packet;
+
+    private IVideoPicture decoded;
+
+    private IVideoResampler resampler;
+
+    /**
+     * Owns the container, decoder, packet, picture and resampler, which are freed together.
+     */
+    private final NativeResources.Scope natives = NativeResources.openScope("FileFrameSource");
+
+    /**
+     * @param path   file to read
+     * @param width  width of the produced frames
+     * @param height height of the produced frames
+     */
+    public FileFrameSource(String path, int width, int height) {
+        this.path = path;
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    public void open() throws IOException {
+        container = natives.add(IContainer.make());
+        if (container.open(MappedFileHandler.url(path), IContainer.Type.READ, null) < 0) {
+            close();
+            throw new IOException("Could not open " + path);
+        }
+        for (int i = 0; i < container.getNumStreams(); i++) {
+            IStreamCoder coder = container.getStream(i).getStreamCoder();
+            if (coder.getCodecType() == ICodec.Type.CODEC_TYPE_VIDEO) {
+                decoder = natives.add(coder);
+                streamIndex = i;
+                break;
+            }
+            coder.delete();
+        }
+        if (decoder == null) {
+            close();
+            throw new IOException("No video stream in " + path);
+        }
+        if (decoder.open() < 0) {
+            close();
+            throw new IOException("Could not open decoder for " + path);
+        }
+        packet = natives.add(IPacket.make());
+        decoded = natives.add(IVideoPicture.make(decoder.getPixelType(), decoder.getWidth(), decoder.getHeight()));
+        resampler = natives.add(IVideoResampler.make(width, height, IPixelFormat.Type.YUV420P,
+                decoder.getWidth(), decoder.getHeight(), decoder.getPixelType()));
+        if (resampler == null) {
+            close();
+            throw new IOException("Could not create resampler for " + path);
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public boolean read(Frame frame) throws IOException {
+        while (container.readNextPacket(packet) >= 0) {
+            if (packet.getStreamIndex() != streamIndex) {
+                continue;
+            }
+            int offset = 0;
+            while (offset < packet.getSize()) {
+                int bytesDecoded = decoder.decodeVideo(decoded, packet, offset);
+                if (bytesDecoded < 0) {
+                    throw new IOException("Could not decode video in " + path);
+                }
+                offset += bytesDecoded;
+            }
+            if (decoded.isComplete()) {
+                if (resampler.resample(frame.getPicture(), decoded) < 0) {
+                    throw new IOException("Could not resample video in " + path);
+                }
+                frame.setConverted(true);
+                return true;
+            }
+        }
+        throw new EOFException(path);
+    }
+
+    @Override
+    public void close() {
+        natives.close();
+        resampler = null;
+        decoded = null;
+        packet = null;
+        decoder = null;
+        container = null;
+    }
+}
@@ -0,0 +1,213 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import com.xuggle.xuggler.Global;
+import com.xuggle.xuggler.ICodec;
+import com.xuggle.xuggler.IContainer;
+import com.xuggle.xuggler.IPacket;
+import com.xuggle.xuggler.IPixelFormat;
+import com.xuggle.xuggler.IRational;
+import com.xuggle.xuggler.IStreamCoder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Streams the video track of a media file as it is. When the file already holds H.264 that an FLV
+ * sink can carry, its packets are copied from the input container into the sink without being
+ * decoded and encoded again, and sent in real time by their decoding time stamps.
+ *
+ * <p>The file is read through a {@link MappedFileHandler}. Only the video track is copied, since a
+ * sink carries a single stream. Check {@link #canStreamCopy()} after {@link #open()}; a file that
+ * cannot be copied has to go through {@link FileFrameSource} and a {@link StreamSession}
+ * instead.</p>
+ */
+public class FileRemuxer {
+
+    private static final IRational NANOSECONDS = IRational.make(1, 1000000000);
+
+    private final String path;
+
+    private final boolean realTime;
+
+    private IContainer container;
+
+    private IStreamCoder decoder;
+
+    private int streamIndex = -1;
+
+    private IRational timeBase;
+
+    private String incompatibility;
+
+    private long packetsWritten;
+
+    private long bytesWritten;
+
+    private long maxLatenessNanos;
+
+    private long elapsedNanos;
+
+    /**
+     * Owns the container and the decoder describing the video track.
+     */
+    private final NativeResources.Scope natives = NativeResources.openScope("FileRemuxer");
+
+    /**
+     * Creates a remuxer sending packets in real time.
+     */
+    public FileRemuxer(String path) {
+        this(path, true);
+    }
+
+    /**
+     * @param realTime false to copy the packets as fast as the sink takes them
+     */
+    public FileRemuxer(String path, boolean realTime) {
+        this.path = path;
+        this.realTime = realTime;
+    }
+
+    /**
+     * Opens the file and checks whether its video track can be copied.
+     *
+     * @throws IOException if the file cannot be read or has no video track
+     */
+    public void open() throws IOException {
+        container = natives.add(IContainer.make());
+        if (container.open(MappedFileHandler.url(path), IContainer.Type.READ, null) < 0) {
+            close();
+            throw new IOException("Could not open " + path);
+        }
+        for (int i = 0; i < container.getNumStreams(); i++) {
+            IStreamCoder coder = container.getStream(i).getStreamCoder();
+            if (coder.getCodecType() == ICodec.Type.CODEC_TYPE_VIDEO) {
+                decoder = natives.add(coder);
+                streamIndex = i;
+                timeBase = container.getStream(i).getTimeBase();
+                break;
+            }
+            coder.delete();
+        }
+        if (decoder == null) {
+            close();
+            throw new IOException("No video stream in " + path);
+        }
+        if (decoder.getCodecID() != ICodec.ID.CODEC_ID_H264) {
+            incompatibility = "video is " + decoder.getCodecID() + ", not H.264";
+        } else if (decoder.getPixelType() != IPixelFormat.Type.YUV420P) {
+            incompatibility = "pixel format is " + decoder.getPixelType() + ", not YUV420P";
+        } else if (decoder.getExtraDataSize() <= 0) {
+            // an Annex B stream, e.g. from MPEG-TS, has its parameter sets in band, while FLV
+            // needs them up front
+            incompatibility = "no H.264 decoder configuration record";
+        }
+    }
+
+    /**
+     * Returns true if the video track can be sent without transcoding.
+     */
+    public boolean canStreamCopy() {
+        return incompatibility == null;
+    }
+
+    /**
+     * Returns why the video track cannot be copied, or null if it can.
+     */
+    public String getIncompatibility() {
+        return incompatibility;
+    }
+
+    public int getWidth() {
+        return decoder.getWidth();
+    }
+
+    public int getHeight() {
+        return decoder.getHeight();
+    }
+
+    /**
+     * Opens the sink, copies every packet of the video track into it and closes it again.
+     *
+     * @throws IOException if the track cannot be copied or the sink failed
+     */
+    public void run(OutputSink sink) throws IOException {
+        if (!canStreamCopy()) {
+            throw new IOException("Cannot copy " + path + ": " + incompatibility);
+        }
+        // a copy of the input's codec settings, with the codec tag cleared so the muxer picks its own
+        IStreamCoder coder = NativeResources.track(IStreamCoder.make(IStreamCoder.Direction.ENCODING, decoder),
+                "FileRemuxer");
+        coder.setCodecTag(0);
+        IPacket packet = NativeResources.track(IPacket.make(), "FileRemuxer");
+        sink.open(coder);
+        try {
+            long start = System.nanoTime();
+            long firstDts = Global.NO_PTS;
+            while (container.readNextPacket(packet) >= 0) {
+                if (packet.getStreamIndex() != streamIndex) {
+                    continue;
+                }
+                long dts = packet.getDts() != Global.NO_PTS ? packet.getDts() : packet.getPts();
+                if (realTime && dts != Global.NO_PTS) {
+                    if (firstDts == Global.NO_PTS) {
+                        firstDts = dts;
+                    }
+                    awaitDts(start, dts - firstDts);
+                }
+                sink.write(packet);
+                packetsWritten++;
+                bytesWritten += packet.getSize();
+            }
+            elapsedNanos = System.nanoTime() - start;
+        } finally {
+            sink.close();
+            NativeResources.release(packet);
+            NativeResources.release(coder);
+        }
+    }
+
+    /**
+     * Waits until the given time since the first packet has passed, in the track's time base.
+     */
+    private void awaitDts(long startNanos, long dts) {
+        // rescaled with a wide intermediate, so neither precision nor range is lost on long files
+        long due = startNanos + NANOSECONDS.rescale(dts, timeBase);
+        long wait = due - System.nanoTime();
+        if (wait < 0) {
+            maxLatenessNanos = Math.max(maxLatenessNanos, -wait);
+            return;
+        }
+        while (wait > 0) {
+            LockSupport.parkNanos(wait);
+            wait = due - System.nanoTime();
+        }
+    }
+
+    public long getPacketsWritten() {
+        return packetsWritten;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Returns the most any packet was sent behind its decoding time stamp, in nanoseconds.
+     */
+    public long getMaxLatenessNanos() {
+        return maxLatenessNanos;
+    }
+
+    public String summary() {
+        return "[REMUX] " + path + ": copied " + packetsWritten + " packets, " + bytesWritten / 1024 + " kB in "
+                + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + " ms, at most "
+                + TimeUnit.NANOSECONDS.toMillis(maxLatenessNanos) + " ms late";
+    }
+
+    public void close() {
+        natives.close();
+        decoder = null;
+        container = null;
+    }
+}
@@ -0,0 +1,274 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import com.xuggle.xuggler.IPacket;
+import com.xuggle.xuggler.IVideoPicture;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Mutable holder that carries one video frame through the stages of a {@link StreamPipeline}.
+ * Holders are recycled by the pipeline once the last stage is done with them.
+ *
+ * <p>Frames handed out by a sized {@link FramePool} own a capture image, a BGR24 staging picture,
+ * the encoder picture and a packet. These stay attached across recycling, so the steady-state
+ * frame path reuses them instead of allocating.</p>
+ *
+ * <p>A frame can be shared by several consumers, e.g. the renditions of a {@link RenditionLadder}.
+ * Each extra consumer {@linkplain #retain() retains} it, and it goes back to its pool when the
+ * last reference is released through {@link FramePool#release}.</p>
+ */
+public class Frame {
+
+    /**
+     * Position of the frame in capture order, starting at 0.
+     */
+    private long sequence;
+
+    /**
+     * Presentation time stamp in microseconds since the first captured frame.
+     */
+    private long timeStamp;
+
+    /**
+     * {@link System#nanoTime()} at which the frame was captured.
+     */
+    private long captureNanos;
+
+    private BufferedImage image;
+
+    /**
+     * Backing array of {@link #image}, in BGR byte order.
+     */
+    private byte[] pixels;
+
+    /**
+     * View of {@link #pixels}, wrapped on first use and kept as long as the array.
+     */
+    private ByteBuffer pixelBuffer;
+
+    /**
+     * Cached graphics context of {@link #image}.
+     */
+    private Graphics2D graphics;
+
+    /**
+     * BGR24 picture the captured pixels are staged in before colour conversion.
+     */
+    private IVideoPicture sourcePicture;
+
+    private IVideoPicture picture;
+
+    /**
+     * Set when the source wrote {@link #picture} directly and no colour conversion is needed.
+     */
+    private boolean converted;
+
+    private IPacket packet;
+
+    /**
+     * Per-tile change flags set by a {@link TileChangeDetector}; kept across recycling.
+     */
+    private boolean[] dirtyTiles;
+
+    /**
+     * Number of set {@link #dirtyTiles}, or -1 when the frame was not checked for changes.
+     */
+    private int dirtyTileCount = -1;
+
+    private final AtomicInteger references = new AtomicInteger();
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public long getTimeStamp() {
+        return timeStamp;
+    }
+
+    public void setTimeStamp(long timeStamp) {
+        this.timeStamp = timeStamp;
+    }
+
+    public long getCaptureNanos() {
+        return captureNanos;
+    }
+
+    public void setCaptureNanos(long captureNanos) {
+        this.captureNanos = captureNanos;
+    }
+
+    /**
+     * Captured image in {@link BufferedImage#TYPE_3BYTE_BGR} layout.
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    public void setImage(BufferedImage image) {
+        this.image = image;
+    }
+
+    public byte[] getPixels() {
+        return pixels;
+    }
+
+    public void setPixels(byte[] pixels) {
+        this.pixels = pixels;
+        this.pixelBuffer = null;
+    }
+
+    /**
+     * Returns {@link #getPixels()} as a big-endian buffer, wrapped once per array rather than once
+     * per frame.
+     */
+    public ByteBuffer getPixelBuffer() {
+        if (pixelBuffer == null && pixels != null) {
+            pixelBuffer = ByteBuffer.wrap(pixels);
+        }
+        return pixelBuffer;
+    }
+
+    public Graphics2D getGraphics() {
+        return graphics;
+    }
+
+    public void setGraphics(Graphics2D graphics) {
+        this.graphics = graphics;
+    }
+
+    public IVideoPicture getSourcePicture() {
+        return sourcePicture;
+    }
+
+    public void setSourcePicture(IVideoPicture sourcePicture) {
+        this.sourcePicture = sourcePicture;
+    }
+
+    /**
+     * Picture converted to the pixel format of the encoder.
+     */
+    public IVideoPicture getPicture() {
+        return picture;
+    }
+
+    public void setPicture(IVideoPicture picture) {
+        this.picture = picture;
+    }
+
+    public boolean isConverted() {
+        return converted;
+    }
+
+    public void setConverted(boolean converted) {
+        this.converted = converted;
+    }
+
+    /**
+     * Encoded packet, set once the encoder has completed one.
+     */
+    public IPacket getPacket() {
+        return packet;
+    }
+
+    public void setPacket(IPacket packet) {
+        this.packet = packet;
+    }
+
+    /**
+     * Returns which tiles changed since the previous frame, row by row. Only meaningful while
+     * {@link #getDirtyTileCount()} is not negative.
+     */
+    public boolean[] getDirtyTiles() {
+        return dirtyTiles;
+    }
+
+    public void setDirtyTiles(boolean[] dirtyTiles, int dirtyTileCount) {
+        this.dirtyTiles = dirtyTiles;
+        this.dirtyTileCount = dirtyTileCount;
+    }
+
+    /**
+     * Returns the number of tiles that changed since the previous frame, or -1 if the frame was not
+     * checked, in which case all of it has to be treated as changed.
+     */
+    public int getDirtyTileCount() {
+        return dirtyTileCount;
+    }
+
+    /**
+     * Returns the fraction of the frame that changed since the previous one, 1 if unknown.
+     */
+    public double getDirtyRatio() {
+        return dirtyTileCount < 0 || dirtyTiles.length == 0 ? 1 : (double) dirtyTileCount / dirtyTiles.length;
+    }
+
+    /**
+     * Adds a reference, to be dropped with {@link FramePool#release}.
+     */
+    public void retain() {
+        references.incrementAndGet();
+    }
+
+    /**
+     * Sets the reference count of a frame just taken from the pool.
+     */
+    void acquired() {
+        references.set(1);
+    }
+
+    /**
+     * Drops a reference.
+     *
+     * @return true if it was the last one
+     */
+    boolean releaseReference() {
+        return references.decrementAndGet() == 0;
+    }
+
+    /**
+     * Resets the per-frame state so the holder can be reused. Pooled images, pictures and the
+     * packet stay attached.
+     */
+    void recycle() {
+        if (packet != null) {
+            packet.reset();
+        }
+        sequence = 0;
+        timeStamp = 0;
+        captureNanos = 0;
+        converted = false;
+        dirtyTileCount = -1;
+    }
+
+    /**
+     * Frees the native objects attached to this frame.
+     */
+    void delete() {
+        if (graphics != null) {
+            graphics.dispose();
+            graphics = null;
+        }
+        if (sourcePicture != null) {
+            NativeResources.release(sourcePicture);
+            sourcePicture = null;
+        }
+        if (picture != null) {
+            NativeResources.release(picture);
+            picture = null;
+        }
+        if (packet != null) {
+            NativeResources.release(packet);
+            packet = null;
+        }
+        image = null;
+        pixels = null;
+        pixelBuffer = null;
+    }
+}
@@ -0,0 +1,119 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import com.xuggle.xuggler.IPacket;
+import com.xuggle.xuggler.IPixelFormat;
+import com.xuggle.xuggler.IVideoPicture;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+/**
+ * Fixed set of {@link Frame}s shared by the stages of a {@link StreamPipeline}.
+ *
+ * <p>All frames are allocated up front together with their capture image, staging and encoder
+ * pictures and packet, and are handed back to the pool instead of being freed. Once the pipeline
+ * is running the frame path does not allocate on the Java heap or in native memory.</p>
+ */
+public class FramePool {
+
+    private final int width;
+
+    private final int height;
+
+    private FrameQueue<Frame> free;
+
+    private Frame[] frames;
+
+    /**
+     * Creates a pool of empty frames whose contents are managed by the stages themselves.
+     */
+    public FramePool() {
+        this(0, 0);
+    }
+
+    /**
+     * Creates a pool of frames backed by images and pictures of the given size.
+     */
+    public FramePool(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Allocates the frames of the pool. Called once by the pipeline that owns the pool.
+     *
+     * @param count number of frames that can be in flight at once
+     */
+    synchronized void allocate(int count) {
+        if (frames != null) {
+            throw new IllegalStateException("frame pool is already in use");
+        }
+        free = new FrameQueue<Frame>(count);
+        frames = new Frame[count];
+        for (int i = 0; i < count; i++) {
+            frames[i] = newFrame();
+            free.offer(frames[i]);
+        }
+    }
+
+    /**
+     * Takes a frame from the pool.
+     *
+     * @return a frame, or null if all frames are in flight
+     */
+    public Frame acquire() {
+        Frame frame = free.poll();
+        if (frame != null) {
+            frame.acquired();
+        }
+        return frame;
+    }
+
+    /**
+     * Drops one reference to a frame and returns it to the pool once nobody holds it anymore.
+     */
+    public void release(Frame frame) {
+        if (frame.releaseReference()) {
+            frame.recycle();
+            free.offer(frame);
+        }
+    }
+
+    /**
+     * Frees the native pictures and packets of every frame. The pool must not be used afterwards.
+     */
+    public synchronized void close() {
+        if (frames == null) {
+            return;
+        }
+        for (Frame frame : frames) {
+            frame.delete();
+        }
+        frames = null;
+    }
+
+    private Frame newFrame() {
+        Frame frame = new Frame();
+        if (width <= 0 || height <= 0) {
+            return frame;
+        }
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        frame.setImage(image);
+        frame.setPixels(((DataBufferByte) image.getRaster().getDataBuffer()).getData());
+        frame.setGraphics(image.createGraphics());
+        frame.setSourcePicture(NativeResources.track(IVideoPicture.make(IPixelFormat.Type.BGR24, width, height),
+                "FramePool"));
+        frame.setPicture(NativeResources.track(IVideoPicture.make(IPixelFormat.Type.YUV420P, width, height),
+                "FramePool"));
+        frame.setPacket(NativeResources.track(IPacket.make(), "FramePool"));
+        return frame;
+    }
+}
@@ -0,0 +1,117 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free hand-off queue used between the stages of a {@link StreamPipeline}.
+ *
+ * <p>Every slot carries a sequence number so that producers and consumers only ever contend on a
+ * single compare-and-set of the enqueue or dequeue cursor. Any number of threads may offer and
+ * poll concurrently, which lets a producer evict the oldest element itself when the
+ * {@link DropPolicy#DROP_OLDEST} policy is in effect.</p>
+ *
+ * @param <E> type of the queued elements
+ */
+public class FrameQueue<E> {
+
+    private final AtomicReferenceArray<E> elements;
+
+    private final AtomicLongArray sequences;
+
+    private final int mask;
+
+    private final AtomicLong enqueuePosition = new AtomicLong();
+
+    private final AtomicLong dequeuePosition = new AtomicLong();
+
+    /**
+     * Creates a queue holding at least {@code capacity} elements. The capacity is rounded up to
+     * the next power of two.
+     *
+     * @param capacity minimum number of elements the queue can hold
+     */
+    public FrameQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        elements = new AtomicReferenceArray<E>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Adds an element without waiting.
+     *
+     * @return false if the queue is full
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+        while (true) {
+            long position = enqueuePosition.get();
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (enqueuePosition.compareAndSet(position, position + 1)) {
+                    elements.set(index, element);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Removes the oldest element without waiting.
+     *
+     * @return the element, or null if the queue is empty
+     */
+    public E poll() {
+        while (true) {
+            long position = dequeuePosition.get();
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (dequeuePosition.compareAndSet(position, position + 1)) {
+                    E element = elements.get(index);
+                    elements.set(index, null);
+                    sequences.set(index, position + mask + 1);
+                    return element;
+                }
+            } else if (difference < 0) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Returns an estimate of the number of queued elements.
+     */
+    public int size() {
+        long size = enqueuePosition.get() - dequeuePosition.get();
+        if (size < 0) {
+            return 0;
+        }
+        return (int) Math.min(size, capacity());
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
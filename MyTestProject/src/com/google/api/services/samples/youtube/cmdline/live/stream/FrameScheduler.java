@@ -0,0 +1,173 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import com.xuggle.xuggler.IRational;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces a frame source against absolute deadlines on the {@link System#nanoTime()} clock.
+ *
+ * <p>Frame slot {@code n} is due at {@code start + n / frameRate}. Every deadline is computed
+ * from the start time rather than from the previous wake-up, so oversleeping once does not push
+ * back every later frame and the long-term rate cannot drift. The scheduler parks until shortly
+ * before a deadline and spins for the rest, which keeps wake-ups well inside the OS sleep
+ * granularity.</p>
+ *
+ * <p>Time stamps are derived from the slot number, not from a clock: slot {@code n} gets the
+ * presentation time {@code n / frameRate} rounded to the encoder's time base, so they are
+ * monotonic, evenly spaced and unaffected by wall-clock adjustments.</p>
+ *
+ * <p>Not thread-safe; meant to be driven by the source thread.</p>
+ */
+public class FrameScheduler {
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    /**
+     * How long before a deadline parking stops and spinning starts.
+     */
+    private static final long SPIN_NANOS = 1000000L;
+
+    private static final IRational MICROSECONDS = IRational.make(1, 1000000);
+
+    private final int rateNumerator;
+
+    private final int rateDenominator;
+
+    /**
+     * Duration of one frame, i.e. the inverse of the frame rate.
+     */
+    private final IRational frameDuration;
+
+    private final IRational timeBase;
+
+    private final PacingPolicy policy;
+
+    private final Histogram jitter = new Histogram();
+
+    private StreamMetrics metrics;
+
+    private long startNanos;
+
+    private long nextSlot;
+
+    private long skippedFrames;
+
+    private boolean started;
+
+    /**
+     * @param frameRate frames per second
+     * @param timeBase  time base of the encoder; time stamps are whole multiples of it
+     * @param policy    what to do about missed deadlines
+     */
+    public FrameScheduler(IRational frameRate, IRational timeBase, PacingPolicy policy) {
+        this.rateNumerator = frameRate.getNumerator();
+        this.rateDenominator = frameRate.getDenominator();
+        this.frameDuration = IRational.make(rateDenominator, rateNumerator);
+        this.timeBase = timeBase;
+        this.policy = policy;
+    }
+
+    /**
+     * Also records pacing jitter and skipped frames in the given metrics.
+     */
+    public void setMetrics(StreamMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Makes slot 0 due now. Called implicitly by the first {@link #awaitNextSlot()}.
+     */
+    public void start() {
+        startNanos = System.nanoTime();
+        nextSlot = 0;
+        started = true;
+    }
+
+    /**
+     * Waits until the next frame slot is due and returns it.
+     *
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public long awaitNextSlot() throws InterruptedException {
+        if (!started) {
+            start();
+        }
+        long slot = nextSlot;
+        long deadline = deadlineOf(slot);
+        long now = System.nanoTime();
+        while (now < deadline) {
+            long remaining = deadline - now;
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            } else {
+                Thread.yield();
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            now = System.nanoTime();
+        }
+        if (policy == PacingPolicy.SKIP) {
+            long due = slotAt(now - startNanos);
+            if (due > slot) {
+                skippedFrames += due - slot;
+                if (metrics != null) {
+                    metrics.recordSkipped(due - slot);
+                }
+                slot = due;
+                deadline = deadlineOf(slot);
+            }
+        }
+        long late = now - deadline;
+        jitter.record(late);
+        if (metrics != null) {
+            metrics.recordPacing(late);
+        }
+        nextSlot = slot + 1;
+        return slot;
+    }
+
+    /**
+     * Returns the presentation time of a slot in microseconds, the unit of Xuggler picture time
+     * stamps. The value is a whole number of encoder time base units.
+     */
+    public long getTimeStamp(long slot) {
+        long pts = timeBase.rescale(slot, frameDuration);
+        return MICROSECONDS.rescale(pts, timeBase);
+    }
+
+    /**
+     * Returns how late, in nanoseconds, the scheduler handed out its slots.
+     */
+    public Histogram getJitter() {
+        return jitter;
+    }
+
+    /**
+     * Returns the number of slots passed over under {@link PacingPolicy#SKIP}.
+     */
+    public long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    /**
+     * {@code start + slot * rateDenominator / rateNumerator} seconds, split so the intermediate
+     * products cannot overflow.
+     */
+    private long deadlineOf(long slot) {
+        long wholeCycles = slot / rateNumerator;
+        long remainder = slot % rateNumerator;
+        return startNanos + wholeCycles * rateDenominator * NANOS_PER_SECOND
+                + remainder * rateDenominator * NANOS_PER_SECOND / rateNumerator;
+    }
+
+    /**
+     * Returns the latest slot whose deadline is at or before {@code elapsed} nanoseconds.
+     */
+    private long slotAt(long elapsed) {
+        long seconds = elapsed / NANOS_PER_SECOND;
+        long nanos = elapsed % NANOS_PER_SECOND;
+        return (seconds * rateNumerator + nanos * rateNumerator / NANOS_PER_SECOND) / rateDenominator;
+    }
+}
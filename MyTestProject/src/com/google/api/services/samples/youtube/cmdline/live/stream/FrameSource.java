@@ -0,0 +1,45 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import java.io.IOException;
+
+/**
+ * Supplies raw video frames to a {@link StreamPipeline}.
+ *
+ * <p>Implementations write straight into the pooled buffers of the frame they are given: either
+ * the BGR byte raster returned by {@link Frame#getPixels()}, which {@link ConvertStage} turns into
+ * the encoder picture, or the YUV420P encoder picture itself, in which case they mark the frame as
+ * {@linkplain Frame#setConverted converted}. No intermediate image is drawn.</p>
+ */
+public interface FrameSource {
+
+    /**
+     * Acquires the underlying device or file.
+     *
+     * @throws IOException if the source cannot be opened
+     */
+    void open() throws IOException;
+
+    /**
+     * Width of the frames the source produces; the frame pool must use the same size.
+     */
+    int getWidth();
+
+    /**
+     * Height of the frames the source produces; the frame pool must use the same size.
+     */
+    int getHeight();
+
+    /**
+     * Fills the given frame with the next picture.
+     *
+     * @return false if no picture is available right now and the frame should be skipped
+     * @throws java.io.EOFException if the source has no more frames
+     * @throws IOException if reading failed
+     */
+    boolean read(Frame frame) throws IOException;
+
+    /**
+     * Releases the underlying device or file.
+     */
+    void close();
+}
@@ -0,0 +1,193 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values, such as latencies in nanoseconds or sizes in bytes.
+ *
+ * <p>Each power of two is split into {@value #SUB_BUCKETS} linear sub-buckets, so a recorded
+ * value costs a couple of shifts and one atomic increment and is reported within
+ * {@code 1/SUB_BUCKETS} of its true value. Recording never allocates and may be done from any
+ * thread.</p>
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong sum = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one value; negative values are recorded as 0.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                break;
+            }
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getSum() {
+        return sum.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the mean of all recorded values, or 0 if nothing was recorded.
+     */
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * Returns an upper bound of the given percentile, between 0 and 100, of the recorded values.
+     */
+    public long getPercentile(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(n * percentile / 100);
+        if (rank < 1) {
+            rank = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Returns the current state, with every value divided by {@code divisor}, e.g. 1000 to report
+     * nanoseconds as microseconds.
+     */
+    public Snapshot snapshot(long divisor) {
+        return new Snapshot(getCount(), getMean() / divisor, getPercentile(50) / divisor,
+                getPercentile(90) / divisor, getPercentile(99) / divisor, getMax() / divisor);
+    }
+
+    /**
+     * Forgets everything recorded so far. Values recorded concurrently may be partly lost.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Values below {@code SUB_BUCKETS} get a bucket each; above that, the top
+     * {@code SUB_BUCKET_BITS + 1} bits of the value select the bucket.
+     */
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int mantissa = (int) (value >>> exponent) - SUB_BUCKETS;
+        return (exponent + 1) * SUB_BUCKETS + mantissa;
+    }
+
+    /**
+     * Returns the largest value that maps to the given bucket.
+     */
+    static long upperBoundOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS - 1;
+        long mantissa = index % SUB_BUCKETS + SUB_BUCKETS;
+        long upper = ((mantissa + 1) << exponent) - 1;
+        return upper < 0 ? Long.MAX_VALUE : upper;
+    }
+
+    /**
+     * Immutable summary of a histogram, also the JMX representation of one.
+     */
+    public static class Snapshot {
+
+        private final long count;
+
+        private final double mean;
+
+        private final long p50;
+
+        private final long p90;
+
+        private final long p99;
+
+        private final long max;
+
+        @java.beans.ConstructorProperties({"count", "mean", "p50", "p90", "p99", "max"})
+        public Snapshot(long count, double mean, long p50, long p90, long p99, long max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP90() {
+            return p90;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("n=%d mean=%.1f p50=%d p90=%d p99=%d max=%d", count, mean, p50, p90, p99, max);
+        }
+    }
+}
@@ -0,0 +1,513 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal local RTMP receiver that stands in for a YouTube ingestion server.
+ *
+ * <p>It performs the RTMP handshake, answers the {@code connect}, {@code createStream} and
+ * {@code publish} commands a publishing client sends, and then counts and discards the audio,
+ * video and metadata messages it receives. That is enough for {@link ContainerSink#rtmp} to
+ * stream to it, so the full encode and mux path can be exercised without network access.</p>
+ */
+public class LoopbackRtmpServer {
+
+    private static final int HANDSHAKE_SIZE = 1536;
+
+    private static final int MESSAGE_SET_CHUNK_SIZE = 1;
+
+    private static final int MESSAGE_WINDOW_ACK_SIZE = 5;
+
+    private static final int MESSAGE_SET_PEER_BANDWIDTH = 6;
+
+    private static final int MESSAGE_AUDIO = 8;
+
+    private static final int MESSAGE_VIDEO = 9;
+
+    private static final int MESSAGE_DATA_AMF0 = 18;
+
+    private static final int MESSAGE_COMMAND_AMF0 = 20;
+
+    private static final int CONTROL_CHUNK_STREAM = 2;
+
+    private static final int COMMAND_CHUNK_STREAM = 3;
+
+    private static final int OUT_CHUNK_SIZE = 4096;
+
+    private final int requestedPort;
+
+    private ServerSocket serverSocket;
+
+    private Thread acceptThread;
+
+    private final AtomicLong connections = new AtomicLong();
+
+    private final AtomicLong videoMessages = new AtomicLong();
+
+    private final AtomicLong videoKeyFrames = new AtomicLong();
+
+    private final AtomicLong mediaBytes = new AtomicLong();
+
+    /**
+     * @param port port to listen on, or 0 to pick a free one
+     */
+    public LoopbackRtmpServer(int port) {
+        this.requestedPort = port;
+    }
+
+    /**
+     * Binds the loopback port and starts accepting publishers.
+     */
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(requestedPort, 16, InetAddress.getByName("127.0.0.1"));
+        acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptLoop();
+            }
+        }, "rtmp-loopback-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    /**
+     * Stops accepting publishers. Open connections end when their client disconnects.
+     */
+    public void stop() {
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Returns an RTMP address on this server, e.g. {@code rtmp://127.0.0.1:1935/live/test}.
+     */
+    public String getUrl(String application, String streamName) {
+        return "rtmp://127.0.0.1:" + getPort() + "/" + application + "/" + streamName;
+    }
+
+    public long getConnections() {
+        return connections.get();
+    }
+
+    public long getVideoMessages() {
+        return videoMessages.get();
+    }
+
+    public long getVideoKeyFrames() {
+        return videoKeyFrames.get();
+    }
+
+    /**
+     * Returns the number of audio, video and metadata payload bytes received.
+     */
+    public long getMediaBytes() {
+        return mediaBytes.get();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                return;
+            }
+            connections.incrementAndGet();
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        new Connection(socket).run();
+                    } catch (EOFException e) {
+                        // publisher disconnected
+                    } catch (SocketException e) {
+                        // publisher disconnected
+                    } catch (IOException e) {
+                        System.err.println("[RTMP LOOPBACK] " + e.getMessage());
+                    } finally {
+                        try {
+                            socket.close();
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                }
+            }, "rtmp-loopback-" + socket.getPort());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * State of one chunk stream: the last message header seen and the message being assembled.
+     */
+    private static class ChunkStream {
+
+        long timestamp;
+
+        int length;
+
+        int type;
+
+        int streamId;
+
+        boolean extendedTimestamp;
+
+        byte[] message;
+
+        int received;
+    }
+
+    /**
+     * Serves one publishing client.
+     */
+    private class Connection {
+
+        private final DataInputStream in;
+
+        private final OutputStream out;
+
+        private final Map<Integer, ChunkStream> chunkStreams = new HashMap<Integer, ChunkStream>();
+
+        private int inChunkSize = 128;
+
+        Connection(Socket socket) throws IOException {
+            socket.setTcpNoDelay(true);
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+            this.out = new BufferedOutputStream(socket.getOutputStream());
+        }
+
+        void run() throws IOException {
+            handshake();
+            while (true) {
+                readChunk();
+            }
+        }
+
+        private void handshake() throws IOException {
+            int version = in.readUnsignedByte();
+            if (version != 3) {
+                throw new IOException("Unsupported RTMP version " + version);
+            }
+            byte[] c1 = new byte[HANDSHAKE_SIZE];
+            in.readFully(c1);
+
+            byte[] s1 = new byte[HANDSHAKE_SIZE];
+            new Random().nextBytes(s1);
+            for (int i = 0; i < 8; i++) {
+                s1[i] = 0;
+            }
+            out.write(3);
+            out.write(s1);
+            out.write(c1);
+            out.flush();
+
+            in.readFully(new byte[HANDSHAKE_SIZE]);
+        }
+
+        private void readChunk() throws IOException {
+            int first = in.readUnsignedByte();
+            int format = first >> 6;
+            int chunkStreamId = first & 0x3F;
+            if (chunkStreamId == 0) {
+                chunkStreamId = 64 + in.readUnsignedByte();
+            } else if (chunkStreamId == 1) {
+                chunkStreamId = 64 + in.readUnsignedByte() + in.readUnsignedByte() * 256;
+            }
+            ChunkStream stream = chunkStreams.get(chunkStreamId);
+            if (stream == null) {
+                stream = new ChunkStream();
+                chunkStreams.put(chunkStreamId, stream);
+            }
+
+            if (format < 3) {
+                long timestamp = readUnsigned24();
+                if (format < 2) {
+                    stream.length = readUnsigned24();
+                    stream.type = in.readUnsignedByte();
+                    if (format == 0) {
+                        stream.streamId = Integer.reverseBytes(in.readInt());
+                    }
+                }
+                stream.extendedTimestamp = timestamp == 0xFFFFFF;
+                if (stream.extendedTimestamp) {
+                    timestamp = in.readInt() & 0xFFFFFFFFL;
+                }
+                stream.timestamp = format == 0 ? timestamp : stream.timestamp + timestamp;
+            } else if (stream.extendedTimestamp) {
+                in.readInt();
+            }
+
+            if (stream.message == null || stream.received == 0) {
+                if (stream.message == null || stream.message.length < stream.length) {
+                    stream.message = new byte[Math.max(stream.length, 256)];
+                }
+                stream.received = 0;
+            }
+            int count = Math.min(inChunkSize, stream.length - stream.received);
+            in.readFully(stream.message, stream.received, count);
+            stream.received += count;
+            if (stream.received >= stream.length) {
+                stream.received = 0;
+                handleMessage(stream);
+            }
+        }
+
+        private void handleMessage(ChunkStream stream) throws IOException {
+            byte[] message = stream.message;
+            switch (stream.type) {
+                case MESSAGE_SET_CHUNK_SIZE:
+                    inChunkSize = ((message[0] & 0x7F) << 24) | ((message[1] & 0xFF) << 16)
+                            | ((message[2] & 0xFF) << 8) | (message[3] & 0xFF);
+                    break;
+                case MESSAGE_VIDEO:
+                    videoMessages.incrementAndGet();
+                    if (stream.length > 0 && (message[0] & 0xF0) == 0x10) {
+                        videoKeyFrames.incrementAndGet();
+                    }
+                    mediaBytes.addAndGet(stream.length);
+                    break;
+                case MESSAGE_AUDIO:
+                case MESSAGE_DATA_AMF0:
+                    mediaBytes.addAndGet(stream.length);
+                    break;
+                case MESSAGE_COMMAND_AMF0:
+                    handleCommand(message, stream.length, stream.streamId);
+                    break;
+                default:
+                    // acknowledgements, user control and aggregate messages need no answer
+                    break;
+            }
+        }
+
+        private void handleCommand(byte[] message, int length, int streamId) throws IOException {
+            Amf0Reader reader = new Amf0Reader(message, length);
+            String name = reader.readString();
+            double transactionId = reader.readNumber();
+            if ("connect".equals(name)) {
+                sendControl(MESSAGE_WINDOW_ACK_SIZE, new byte[] {0x00, 0x26, 0x25, (byte) 0xA0});
+                sendControl(MESSAGE_SET_PEER_BANDWIDTH, new byte[] {0x00, 0x26, 0x25, (byte) 0xA0, 0x02});
+                sendControl(MESSAGE_SET_CHUNK_SIZE, new byte[] {0x00, 0x00, 0x10, 0x00});
+
+                Map<String, Object> properties = new LinkedHashMap<String, Object>();
+                properties.put("fmsVer", "FMS/3,0,1,123");
+                properties.put("capabilities", 31.0);
+                Amf0Writer writer = new Amf0Writer();
+                writer.writeString("_result");
+                writer.writeNumber(transactionId);
+                writer.writeObject(properties);
+                writer.writeObject(status("NetConnection.Connect.Success", "Connection succeeded."));
+                sendCommand(0, writer.toByteArray());
+            } else if ("createStream".equals(name)) {
+                Amf0Writer writer = new Amf0Writer();
+                writer.writeString("_result");
+                writer.writeNumber(transactionId);
+                writer.writeNull();
+                writer.writeNumber(1);
+                sendCommand(0, writer.toByteArray());
+            } else if ("publish".equals(name)) {
+                Amf0Writer writer = new Amf0Writer();
+                writer.writeString("onStatus");
+                writer.writeNumber(0);
+                writer.writeNull();
+                writer.writeObject(status("NetStream.Publish.Start", "Publishing started."));
+                sendCommand(streamId, writer.toByteArray());
+            } else if ("releaseStream".equals(name) || "FCPublish".equals(name)) {
+                Amf0Writer writer = new Amf0Writer();
+                writer.writeString("_result");
+                writer.writeNumber(transactionId);
+                writer.writeNull();
+                writer.writeNull();
+                sendCommand(0, writer.toByteArray());
+            }
+        }
+
+        private Map<String, Object> status(String code, String description) {
+            Map<String, Object> info = new LinkedHashMap<String, Object>();
+            info.put("level", "status");
+            info.put("code", code);
+            info.put("description", description);
+            info.put("objectEncoding", 0.0);
+            return info;
+        }
+
+        private void sendControl(int type, byte[] payload) throws IOException {
+            sendMessage(CONTROL_CHUNK_STREAM, type, 0, payload);
+        }
+
+        private void sendCommand(int streamId, byte[] payload) throws IOException {
+            sendMessage(COMMAND_CHUNK_STREAM, MESSAGE_COMMAND_AMF0, streamId, payload);
+        }
+
+        /**
+         * Writes a message with a type 0 chunk header followed by type 3 continuation chunks.
+         */
+        private void sendMessage(int chunkStreamId, int type, int streamId, byte[] payload)
+                throws IOException {
+            out.write(chunkStreamId);
+            writeUnsigned24(0);
+            writeUnsigned24(payload.length);
+            out.write(type);
+            out.write(streamId & 0xFF);
+            out.write((streamId >> 8) & 0xFF);
+            out.write((streamId >> 16) & 0xFF);
+            out.write((streamId >> 24) & 0xFF);
+            int offset = 0;
+            while (true) {
+                int count = Math.min(OUT_CHUNK_SIZE, payload.length - offset);
+                out.write(payload, offset, count);
+                offset += count;
+                if (offset >= payload.length) {
+                    break;
+                }
+                out.write(0xC0 | chunkStreamId);
+            }
+            out.flush();
+        }
+
+        private int readUnsigned24() throws IOException {
+            return (in.readUnsignedByte() << 16) | (in.readUnsignedByte() << 8) | in.readUnsignedByte();
+        }
+
+        private void writeUnsigned24(int value) throws IOException {
+            out.write((value >> 16) & 0xFF);
+            out.write((value >> 8) & 0xFF);
+            out.write(value & 0xFF);
+        }
+    }
+
+    /**
+     * Reads the leading values of an AMF0 command.
+     */
+    private static class Amf0Reader {
+
+        private final byte[] data;
+
+        private final int length;
+
+        private int position;
+
+        Amf0Reader(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+
+        String readString() throws IOException {
+            if (position >= length || data[position] != 0x02) {
+                throw new IOException("Expected an AMF0 string");
+            }
+            int size = ((data[position + 1] & 0xFF) << 8) | (data[position + 2] & 0xFF);
+            String value = new String(data, position + 3, size, "UTF-8");
+            position += 3 + size;
+            return value;
+        }
+
+        double readNumber() throws IOException {
+            if (position >= length || data[position] != 0x00) {
+                throw new IOException("Expected an AMF0 number");
+            }
+            long bits = 0;
+            for (int i = 1; i <= 8; i++) {
+                bits = (bits << 8) | (data[position + i] & 0xFF);
+            }
+            position += 9;
+            return Double.longBitsToDouble(bits);
+        }
+    }
+
+    /**
+     * Encodes the AMF0 values used in command replies.
+     */
+    private static class Amf0Writer {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        void writeString(String value) throws IOException {
+            out.write(0x02);
+            writeUtf(value);
+        }
+
+        void writeNumber(double value) {
+            out.write(0x00);
+            long bits = Double.doubleToLongBits(value);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) (bits >> shift) & 0xFF);
+            }
+        }
+
+        void writeNull() {
+            out.write(0x05);
+        }
+
+        void writeObject(Map<String, Object> properties) throws IOException {
+            out.write(0x03);
+            for (Map.Entry<String, Object> entry : properties.entrySet()) {
+                writeUtf(entry.getKey());
+                Object value = entry.getValue();
+                if (value instanceof Number) {
+                    writeNumber(((Number) value).doubleValue());
+                } else if (value == null) {
+                    writeNull();
+                } else {
+                    writeString(value.toString());
+                }
+            }
+            out.write(0x00);
+            out.write(0x00);
+            out.write(0x09);
+        }
+
+        byte[] toByteArray() {
+            return out.toByteArray();
+        }
+
+        private void writeUtf(String value) throws IOException {
+            byte[] bytes = value.getBytes("UTF-8");
+            out.write((bytes.length >> 8) & 0xFF);
+            out.write(bytes.length & 0xFF);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Runs a receiver in the foreground, e.g. as a local target for {@code CreateBroadcast}.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 1935;
+        LoopbackRtmpServer server = new LoopbackRtmpServer(port);
+        server.start();
+        System.out.println("[RTMP LOOPBACK] listening on " + server.getUrl("live", "<stream name>"));
+        InputStream stdin = System.in;
+        while (stdin.read() >= 0) {
+            System.out.println("[RTMP LOOPBACK] " + server.getConnections() + " connections, "
+                    + server.getVideoMessages() + " video messages, "
+                    + server.getVideoKeyFrames() + " keyframes, " + server.getMediaBytes() + " bytes");
+        }
+        server.stop();
+    }
+}
@@ -0,0 +1,157 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import com.xuggle.xuggler.io.IURLProtocolHandler;
+import com.xuggle.xuggler.io.IURLProtocolHandlerFactory;
+import com.xuggle.xuggler.io.URLProtocolManager;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only Xuggler protocol handler serving a file from memory-mapped regions, so the demuxer's
+ * reads are memory copies and its seeks only move an offset, instead of a system call each.
+ *
+ * <p>Open {@link #url(String)} with an {@link com.xuggle.xuggler.IContainer} to read through it.
+ * Files larger than a region are mapped in consecutive {@value #REGION_SIZE}-byte regions. The
+ * mappings are released when the buffers are collected; there is no way to unmap them
+ * explicitly.</p>
+ */
+public class MappedFileHandler implements IURLProtocolHandler {
+
+    /**
+     * Protocol under which the handler is registered with Xuggler.
+     */
+    public static final String PROTOCOL = "mapped";
+
+    static final int REGION_SIZE = 1 << 30;
+
+    private static boolean registered;
+
+    private final String path;
+
+    private MappedByteBuffer[] regions;
+
+    private long size;
+
+    private long position;
+
+    public MappedFileHandler(String path) {
+        this.path = path;
+    }
+
+    /**
+     * Registers the protocol with Xuggler, if not done yet, and returns the URL under which a
+     * container reads the file through a {@link MappedFileHandler}.
+     */
+    public static synchronized String url(String path) {
+        if (!registered) {
+            URLProtocolManager.getManager().registerFactory(PROTOCOL, new IURLProtocolHandlerFactory() {
+                @Override
+                public IURLProtocolHandler getHandler(String protocol, String url, int flags) {
+                    return new MappedFileHandler(URLProtocolManager.getResourceFromURL(url));
+                }
+            });
+            registered = true;
+        }
+        return PROTOCOL + ":" + path;
+    }
+
+    @Override
+    public int open(String url, int flags) {
+        if (flags != URL_RDONLY_MODE) {
+            System.err.println("[MAPPED] " + path + " can only be opened for reading");
+            return -1;
+        }
+        try {
+            RandomAccessFile file = new RandomAccessFile(path, "r");
+            try {
+                FileChannel channel = file.getChannel();
+                size = channel.size();
+                int count = (int) ((size + REGION_SIZE - 1) / REGION_SIZE);
+                regions = new MappedByteBuffer[count];
+                for (int i = 0; i < count; i++) {
+                    long start = (long) i * REGION_SIZE;
+                    regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_SIZE, size - start));
+                }
+            } finally {
+                // the mappings stay valid after the channel is closed
+                file.close();
+            }
+        } catch (IOException e) {
+            System.err.println("[MAPPED] could not map " + path + ": " + e.getMessage());
+            regions = null;
+            return -1;
+        }
+        position = 0;
+        return 0;
+    }
+
+    /**
+     * Copies up to {@code size} bytes from the current position.
+     *
+     * @return the number of bytes read, 0 at the end of the file
+     */
+    @Override
+    public int read(byte[] buf, int size) {
+        if (regions == null) {
+            return -1;
+        }
+        int read = 0;
+        while (read < size && position < this.size) {
+            MappedByteBuffer region = regions[(int) (position / REGION_SIZE)];
+            int offset = (int) (position % REGION_SIZE);
+            int length = (int) Math.min(size - read, region.capacity() - offset);
+            region.position(offset);
+            region.get(buf, read, length);
+            read += length;
+            position += length;
+        }
+        return read;
+    }
+
+    @Override
+    public int write(byte[] buf, int size) {
+        return -1;
+    }
+
+    @Override
+    public long seek(long offset, int whence) {
+        if (regions == null) {
+            return -1;
+        }
+        long target;
+        switch (whence) {
+            case SEEK_SIZE:
+                return size;
+            case SEEK_SET:
+                target = offset;
+                break;
+            case SEEK_CUR:
+                target = position + offset;
+                break;
+            case SEEK_END:
+                target = size + offset;
+                break;
+            default:
+                return -1;
+        }
+        if (target < 0) {
+            return -1;
+        }
+        position = target;
+        return position;
+    }
+
+    @Override
+    public int close() {
+        regions = null;
+        return 0;
+    }
+
+    @Override
+    public boolean isStreamed(String url, int flags) {
+        return false;
+    }
+}
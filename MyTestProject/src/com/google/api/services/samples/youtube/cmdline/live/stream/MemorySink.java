@@ -0,0 +1,66 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import com.xuggle.xuggler.IPacket;
+import com.xuggle.xuggler.IStreamCoder;
+
+/**
+ * Copies packets into a reused heap buffer and counts them. Measures the encode path without any
+ * container or network cost.
+ */
+public class MemorySink implements OutputSink {
+
+    private byte[] buffer = new byte[64 * 1024];
+
+    private volatile long packets;
+
+    private volatile long keyPackets;
+
+    private volatile long bytes;
+
+    private volatile boolean open;
+
+    @Override
+    public void open(IStreamCoder coder) {
+        open = true;
+    }
+
+    @Override
+    public void write(IPacket packet) {
+        int size = packet.getSize();
+        if (size > buffer.length) {
+            buffer = new byte[Math.max(size, buffer.length * 2)];
+        }
+        packet.get(0, buffer, 0, size);
+        packets++;
+        bytes += size;
+        if (packet.isKeyPacket()) {
+            keyPackets++;
+        }
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+
+    @Override
+    public String getName() {
+        return "memory";
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    public long getPackets() {
+        return packets;
+    }
+
+    public long getKeyPackets() {
+        return keyPackets;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,43 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import com.xuggle.xuggler.IPacket;
+
+import java.io.IOException;
+
+/**
+ * Last stage of the pipeline: writes the encoded packet of a frame to the session's sink.
+ */
+public class MuxStage implements PipelineStage {
+
+    private final StreamSession session;
+
+    private final StreamMetrics metrics;
+
+    /**
+     * @param session an opened session, or a prepared one that will {@link StreamSession#connectAsync connect}
+     */
+    public MuxStage(StreamSession session) {
+        this(session, null);
+    }
+
+    /**
+     * @param session an opened session, or a prepared one that will {@link StreamSession#connectAsync connect}
+     * @param metrics receives the write time, packet size and age of every frame written to the sink,
+     *                may be null
+     */
+    public MuxStage(StreamSession session, StreamMetrics metrics) {
+        this.session = session;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean process(Frame frame) throws IOException {
+        IPacket packet = frame.getPacket();
+        long start = System.nanoTime();
+        // packets held back until the session connects are not counted as written
+        if (session.write(packet) && metrics != null) {
+            metrics.recordWrite(System.nanoTime() - start, packet.getSize(), frame.getCaptureNanos());
+        }
+        return false;
+    }
+}
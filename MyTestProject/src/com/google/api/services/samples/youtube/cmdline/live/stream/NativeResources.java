@@ -0,0 +1,331 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import com.xuggle.ferry.JNIMemoryManager;
+import com.xuggle.ferry.RefCounted;
+import com.xuggle.xuggler.IContainer;
+import com.xuggle.xuggler.IPacket;
+import com.xuggle.xuggler.IStreamCoder;
+import com.xuggle.xuggler.IVideoPicture;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Ownership and accounting of Xuggler's native objects: packets, pictures, coders, containers
+ * and resamplers.
+ *
+ * <p>Every object made through {@link #track} is counted per type, together with the native
+ * bytes it was allocated with, until it is freed through {@link #release}. Freeing goes through
+ * one place, so open coders and containers are always closed before their reference is deleted.
+ * Objects sharing a lifetime, such as the packets, pictures and decoder of a file source, are
+ * made in a {@link Scope} and freed together in reverse order when the scope is closed.</p>
+ *
+ * <p>Anything still live at shutdown is a leak; {@link #leakReport()} lists it by owner. The
+ * counts are published as an MXBean and appended to the periodic {@link StreamMetrics} summary,
+ * so a long-running stream whose native memory is not flat shows it.</p>
+ */
+public final class NativeResources implements NativeResourcesMXBean {
+
+    private static final NativeResources INSTANCE = new NativeResources();
+
+    private static final Map<RefCounted, Entry> live = new IdentityHashMap<RefCounted, Entry>();
+
+    private static final Map<String, Counts> counts = new TreeMap<String, Counts>();
+
+    private static ObjectName objectName;
+
+    private NativeResources() {
+    }
+
+    /**
+     * Starts accounting for a native object made by {@code owner}.
+     *
+     * @return the object, or null if the factory method failed and returned null
+     */
+    public static <T extends RefCounted> T track(T object, String owner) {
+        if (object == null) {
+            return null;
+        }
+        Entry entry = new Entry(object.getClass().getSimpleName(), sizeOf(object), owner);
+        synchronized (live) {
+            if (live.put(object, entry) != null) {
+                return object;
+            }
+            Counts typeCounts = counts.get(entry.type);
+            if (typeCounts == null) {
+                typeCounts = new Counts();
+                counts.put(entry.type, typeCounts);
+            }
+            typeCounts.created++;
+            typeCounts.live++;
+            typeCounts.bytes += entry.bytes;
+            typeCounts.peakLive = Math.max(typeCounts.peakLive, typeCounts.live);
+        }
+        return object;
+    }
+
+    /**
+     * Closes the object if it is an open coder or container and deletes its reference. Objects
+     * that were never tracked are freed all the same; null is ignored.
+     */
+    public static void release(RefCounted object) {
+        if (object == null) {
+            return;
+        }
+        synchronized (live) {
+            Entry entry = live.remove(object);
+            if (entry != null) {
+                Counts typeCounts = counts.get(entry.type);
+                typeCounts.live--;
+                typeCounts.bytes -= entry.bytes;
+            }
+        }
+        if (object instanceof IStreamCoder && ((IStreamCoder) object).isOpen()) {
+            ((IStreamCoder) object).close();
+        } else if (object instanceof IContainer && ((IContainer) object).isOpened()) {
+            ((IContainer) object).close();
+        }
+        object.delete();
+    }
+
+    /**
+     * Native payload an object was allocated with. Coders, containers and resamplers hold
+     * buffers Xuggler does not report, so only their count is known.
+     */
+    private static long sizeOf(RefCounted object) {
+        if (object instanceof IPacket) {
+            IPacket packet = (IPacket) object;
+            return packet.getData() == null ? 0 : packet.getData().getBufferSize();
+        }
+        if (object instanceof IVideoPicture) {
+            return ((IVideoPicture) object).getSize();
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the accounting published on the platform MBean server.
+     */
+    public static NativeResources getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public Map<String, Long> getLiveCounts() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        synchronized (live) {
+            for (Map.Entry<String, Counts> entry : counts.entrySet()) {
+                result.put(entry.getKey(), entry.getValue().live);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getLiveBytes() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        synchronized (live) {
+            for (Map.Entry<String, Counts> entry : counts.entrySet()) {
+                result.put(entry.getKey(), entry.getValue().bytes);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public long getNativeBytes() {
+        long bytes = 0;
+        synchronized (live) {
+            for (Counts typeCounts : counts.values()) {
+                bytes += typeCounts.bytes;
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public long getLiveObjects() {
+        synchronized (live) {
+            return live.size();
+        }
+    }
+
+    @Override
+    public long getCreated() {
+        long created = 0;
+        synchronized (live) {
+            for (Counts typeCounts : counts.values()) {
+                created += typeCounts.created;
+            }
+        }
+        return created;
+    }
+
+    @Override
+    public long getPinnedObjects() {
+        JNIMemoryManager manager = JNIMemoryManager.getMgr();
+        return manager == null ? -1 : manager.getNumPinnedObjects();
+    }
+
+    /**
+     * Publishes the accounting on the platform MBean server, once.
+     */
+    public static synchronized void register() {
+        if (objectName != null) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("com.google.api.services.samples.youtube:type=NativeResources");
+            if (!server.isRegistered(name)) {
+                server.registerMBean(INSTANCE, name);
+            }
+            objectName = name;
+        } catch (JMException e) {
+            System.err.println("[NATIVE] could not register: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the counts of every type on one line, e.g. {@code IPacket 12 live (peak 14, 3 kB), 40 made}.
+     */
+    public static String summary() {
+        StringBuilder summary = new StringBuilder("[NATIVE] ");
+        synchronized (live) {
+            if (counts.isEmpty()) {
+                return summary.append("nothing allocated").toString();
+            }
+            String separator = "";
+            for (Map.Entry<String, Counts> entry : counts.entrySet()) {
+                Counts typeCounts = entry.getValue();
+                summary.append(separator).append(entry.getKey()).append(' ').append(typeCounts.live)
+                        .append(" live (peak ").append(typeCounts.peakLive).append(", ")
+                        .append(typeCounts.bytes / 1024).append(" kB), ")
+                        .append(typeCounts.created).append(" made");
+                separator = "; ";
+            }
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Lists the objects still live by owner and type, or returns null if everything was freed.
+     */
+    public static String leakReport() {
+        Map<String, Integer> leaks = new TreeMap<String, Integer>();
+        synchronized (live) {
+            for (Entry entry : live.values()) {
+                String key = entry.owner + " " + entry.type;
+                Integer count = leaks.get(key);
+                leaks.put(key, count == null ? 1 : count + 1);
+            }
+        }
+        if (leaks.isEmpty()) {
+            return null;
+        }
+        StringBuilder report = new StringBuilder("[NATIVE] not freed:");
+        for (Map.Entry<String, Integer> leak : leaks.entrySet()) {
+            report.append("\n  ").append(leak.getKey()).append(" x").append(leak.getValue());
+        }
+        return report.toString();
+    }
+
+    /**
+     * Opens a scope whose objects are accounted to {@code owner}.
+     */
+    public static Scope openScope(String owner) {
+        return new Scope(owner);
+    }
+
+    /**
+     * Native objects owned together and freed in reverse order of creation by {@link #close()}.
+     * A scope is confined to the thread that uses it.
+     */
+    public static class Scope {
+
+        private final String owner;
+
+        private final Deque<RefCounted> owned = new ArrayDeque<RefCounted>();
+
+        private Scope(String owner) {
+            this.owner = owner;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+
+        /**
+         * Tracks an object and makes this scope its owner.
+         *
+         * @return the object, or null if the factory method failed and returned null
+         */
+        public <T extends RefCounted> T add(T object) {
+            if (object != null) {
+                owned.push(track(object, owner));
+            }
+            return object;
+        }
+
+        /**
+         * Frees one owned object before the scope closes, e.g. to replace it with a larger one.
+         */
+        public void release(RefCounted object) {
+            if (object == null) {
+                return;
+            }
+            for (Iterator<RefCounted> it = owned.iterator(); it.hasNext(); ) {
+                if (it.next() == object) {
+                    it.remove();
+                    break;
+                }
+            }
+            NativeResources.release(object);
+        }
+
+        /**
+         * Frees every object still owned, newest first. The scope can be reused afterwards.
+         */
+        public void close() {
+            RefCounted object;
+            while ((object = owned.poll()) != null) {
+                NativeResources.release(object);
+            }
+        }
+    }
+
+    private static class Entry {
+
+        final String type;
+
+        final long bytes;
+
+        final String owner;
+
+        Entry(String type, long bytes, String owner) {
+            this.type = type;
+            this.bytes = bytes;
+            this.owner = owner;
+        }
+    }
+
+    private static class Counts {
+
+        long created;
+
+        long live;
+
+        long peakLive;
+
+        long bytes;
+    }
+}
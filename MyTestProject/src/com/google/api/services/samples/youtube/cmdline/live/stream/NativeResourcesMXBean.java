@@ -0,0 +1,27 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link NativeResources}. Maps are keyed by Xuggler type, e.g. {@code IPacket}.
+ */
+public interface NativeResourcesMXBean {
+
+    Map<String, Long> getLiveCounts();
+
+    /**
+     * Native bytes the live objects were allocated with. Only packets and pictures report one.
+     */
+    Map<String, Long> getLiveBytes();
+
+    long getNativeBytes();
+
+    long getLiveObjects();
+
+    long getCreated();
+
+    /**
+     * Java references Xuggler's memory manager still holds, tracked or not; -1 if unavailable.
+     */
+    long getPinnedObjects();
+}
@@ -0,0 +1,37 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import com.xuggle.xuggler.IPacket;
+import com.xuggle.xuggler.IStreamCoder;
+
+import java.io.IOException;
+
+/**
+ * Destination for the encoded packets of a {@link StreamSession}.
+ */
+public interface OutputSink {
+
+    /**
+     * Connects the sink and prepares it to receive packets produced by the given encoder.
+     *
+     * @param coder an opened encoder; its stream parameters describe the packets that follow
+     * @throws IOException if the sink cannot be opened
+     */
+    void open(IStreamCoder coder) throws IOException;
+
+    /**
+     * Writes one encoded packet.
+     *
+     * @throws IOException if the packet could not be delivered; the session reopens the sink
+     */
+    void write(IPacket packet) throws IOException;
+
+    /**
+     * Finishes the output and releases the sink. Safe to call on a sink that failed.
+     */
+    void close();
+
+    /**
+     * Human-readable location of the sink, used in log messages.
+     */
+    String getName();
+}
@@ -0,0 +1,19 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+/**
+ * What a {@link FrameScheduler} does when the caller missed one or more frame deadlines.
+ */
+public enum PacingPolicy {
+
+    /**
+     * Hand out the missed frame slots back to back until the schedule is met again. Every slot
+     * becomes a frame, so nothing is lost but frames arrive in a burst.
+     */
+    CATCH_UP,
+
+    /**
+     * Jump to the latest slot whose deadline has passed and count the missed ones as skipped.
+     * Time stamps keep following the wall clock, leaving a gap in the stream.
+     */
+    SKIP
+}
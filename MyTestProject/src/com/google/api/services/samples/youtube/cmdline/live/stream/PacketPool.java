@@ -0,0 +1,107 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import com.xuggle.xuggler.IPacket;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Reusable packets for copies that outlive the packet they were copied from, e.g. encoded
+ * packets held until they can be written in order. Released packets are kept for the next copy,
+ * up to a fixed number, instead of being freed and allocated again for every packet.
+ *
+ * <p>Packets are made and freed through {@link NativeResources}. The pool can be used from
+ * several threads.</p>
+ */
+public class PacketPool {
+
+    /**
+     * Smallest payload a pooled packet is made with, so small packets fit after large ones.
+     */
+    private static final int MIN_CAPACITY = 16 * 1024;
+
+    /**
+     * Array each copying thread stages payloads in, grown to the largest packet it has copied.
+     */
+    private static final ThreadLocal<byte[]> SCRATCH = new ThreadLocal<byte[]>();
+
+    private final String owner;
+
+    private final int maxIdle;
+
+    private final Deque<IPacket> idle = new ArrayDeque<IPacket>();
+
+    private boolean closed;
+
+    /**
+     * @param owner   name the packets are accounted to
+     * @param maxIdle number of released packets kept for reuse
+     */
+    public PacketPool(String owner, int maxIdle) {
+        this.owner = owner;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Returns a pooled packet holding a copy of {@code source}'s payload and time stamps.
+     */
+    public IPacket copy(IPacket source) {
+        IPacket packet;
+        synchronized (this) {
+            packet = idle.poll();
+        }
+        if (packet == null || packet.getData().getBufferSize() < source.getSize()) {
+            NativeResources.release(packet);
+            packet = NativeResources.track(IPacket.make(Math.max(source.getSize(), MIN_CAPACITY)), owner);
+        }
+        copy(source, packet);
+        return packet;
+    }
+
+    /**
+     * Hands a packet from {@link #copy} back to the pool, or frees it once the pool is closed.
+     */
+    public void release(IPacket packet) {
+        packet.reset();
+        synchronized (this) {
+            if (!closed && idle.size() < maxIdle) {
+                idle.push(packet);
+                return;
+            }
+        }
+        NativeResources.release(packet);
+    }
+
+    /**
+     * Frees the idle packets. Packets still out are freed when they are released.
+     */
+    public synchronized void close() {
+        closed = true;
+        IPacket packet;
+        while ((packet = idle.poll()) != null) {
+            NativeResources.release(packet);
+        }
+    }
+
+    /**
+     * Copies payload and time stamps into a packet with at least {@code source}'s size of buffer.
+     * The payload goes through an array kept per thread rather than through new buffer views.
+     */
+    static void copy(IPacket source, IPacket target) {
+        int size = source.getSize();
+        byte[] scratch = SCRATCH.get();
+        if (scratch == null || scratch.length < size) {
+            scratch = new byte[Math.max(size, MIN_CAPACITY)];
+            SCRATCH.set(scratch);
+        }
+        source.get(0, scratch, 0, size);
+        target.put(scratch, 0, 0, size);
+        target.setComplete(true, size);
+        target.setKeyPacket(source.isKeyPacket());
+        target.setPts(source.getPts());
+        target.setDts(source.getDts());
+        target.setDuration(source.getDuration());
+        target.setTimeBase(source.getTimeBase());
+        target.setStreamIndex(source.getStreamIndex());
+    }
+}
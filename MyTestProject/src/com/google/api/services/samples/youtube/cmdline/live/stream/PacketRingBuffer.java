@@ -0,0 +1,293 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import com.xuggle.xuggler.IPacket;
+import com.xuggle.xuggler.IRational;
+
+import java.io.IOException;
+
+/**
+ * Fixed-size history of the most recently written packets, so that a reconnected sink can be
+ * resumed from the last keyframe without re-encoding.
+ *
+ * <p>Packet payloads are copied into one byte array used as a ring; a packet never wraps, so the
+ * space left at the end of the ring when it does not fit is skipped. Time stamps,
+ * flags and positions are kept in parallel primitive arrays indexed by sequence number modulo the
+ * packet capacity. Nothing is allocated per packet, so memory stays flat however long the stream
+ * runs.</p>
+ *
+ * <p>Packets leave the buffer oldest first, when their payload space, their index slot or the
+ * retention period is needed. The packets since the newest keyframe are always kept if they fit at
+ * all. Methods are synchronized; the buffer is meant to be used from the writing thread.</p>
+ */
+public class PacketRingBuffer {
+
+    private static final IRational MICROSECONDS = IRational.make(1, 1000000);
+
+    private final byte[] ring;
+
+    private final int maxPackets;
+
+    private final long retainMicros;
+
+    private final int[] offsets;
+
+    private final int[] sizes;
+
+    private final long[] pts;
+
+    private final long[] dts;
+
+    private final long[] durations;
+
+    private final long[] timeStamps;
+
+    private final boolean[] keyFrames;
+
+    /**
+     * Time base of the stored time stamps, taken from the first packet after {@link #clear()}.
+     */
+    private IRational timeBase;
+
+    /**
+     * Sequence number of the oldest packet still held.
+     */
+    private long head;
+
+    /**
+     * Sequence number the next packet gets.
+     */
+    private long tail;
+
+    /**
+     * Ring position the next payload is written at.
+     */
+    private int writeOffset;
+
+    private long bytes;
+
+    private long lastKeyFrame = -1;
+
+    private IPacket scratch;
+
+    /**
+     * @param capacityBytes payload capacity of the ring
+     * @param maxPackets    maximum number of packets held
+     * @param retainMicros  how much stream time to keep, or 0 to keep as much as fits
+     */
+    public PacketRingBuffer(int capacityBytes, int maxPackets, long retainMicros) {
+        this.ring = new byte[capacityBytes];
+        this.maxPackets = maxPackets;
+        this.retainMicros = retainMicros;
+        this.offsets = new int[maxPackets];
+        this.sizes = new int[maxPackets];
+        this.pts = new long[maxPackets];
+        this.dts = new long[maxPackets];
+        this.durations = new long[maxPackets];
+        this.timeStamps = new long[maxPackets];
+        this.keyFrames = new boolean[maxPackets];
+    }
+
+    /**
+     * Copies a packet into the buffer, evicting old packets as needed. Packets larger than the
+     * whole ring are not stored and break the history until the next keyframe.
+     */
+    public synchronized void append(IPacket packet) {
+        int size = packet.getSize();
+        if (size > ring.length) {
+            System.err.println("[RING] packet of " + size + " bytes exceeds the ring, history dropped");
+            clear();
+            return;
+        }
+        if (timeBase == null) {
+            timeBase = packet.getTimeBase().copy();
+        }
+        int offset = writeOffset;
+        if (offset + size > ring.length) {
+            // the skipped end of the ring holds the oldest packets: they go before anything at 0
+            evictFrom(writeOffset);
+            offset = 0;
+        }
+        long timeStamp = MICROSECONDS.rescale(packet.getDts(), timeBase);
+        evictFor(offset, size, timeStamp);
+        packet.get(0, ring, offset, size);
+
+        int slot = slotOf(tail);
+        offsets[slot] = offset;
+        sizes[slot] = size;
+        pts[slot] = packet.getPts();
+        dts[slot] = packet.getDts();
+        durations[slot] = packet.getDuration();
+        timeStamps[slot] = timeStamp;
+        keyFrames[slot] = packet.isKeyPacket();
+        if (keyFrames[slot]) {
+            lastKeyFrame = tail;
+        }
+        tail++;
+        writeOffset = offset + size;
+        bytes += size;
+    }
+
+    /**
+     * Returns the sequence number of the newest keyframe held, or -1.
+     */
+    public synchronized long getLastKeyFrame() {
+        return lastKeyFrame;
+    }
+
+    /**
+     * Returns the sequence number of the newest keyframe at or before the given stream time in
+     * microseconds, or -1 if the buffer holds none.
+     */
+    public synchronized long findKeyFrame(long timeStampMicros) {
+        // time stamps grow with the sequence number: find the last packet not after the time
+        long low = head;
+        long high = tail - 1;
+        long found = -1;
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            if (timeStamps[slotOf(mid)] <= timeStampMicros) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        for (long seq = found; seq >= head && seq >= 0; seq--) {
+            if (keyFrames[slotOf(seq)]) {
+                return seq;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes every held packet from the given sequence number onwards to a sink.
+     *
+     * @return the number of packets written
+     * @throws IOException if the sink fails; the packets stay in the buffer
+     */
+    public synchronized int replay(long fromSequence, OutputSink sink) throws IOException {
+        if (fromSequence < head || fromSequence >= tail) {
+            return 0;
+        }
+        int written = 0;
+        for (long seq = fromSequence; seq < tail; seq++) {
+            sink.write(load(slotOf(seq)));
+            written++;
+        }
+        return written;
+    }
+
+    /**
+     * Forgets all packets, e.g. when the encoder is replaced and old packets no longer match.
+     */
+    public synchronized void clear() {
+        head = tail;
+        writeOffset = 0;
+        bytes = 0;
+        lastKeyFrame = -1;
+        timeBase = null;
+    }
+
+    public synchronized int size() {
+        return (int) (tail - head);
+    }
+
+    /**
+     * Returns the payload bytes currently held.
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the stream time spanned by the held packets in microseconds.
+     */
+    public synchronized long getDurationMicros() {
+        return tail == head ? 0 : timeStamps[slotOf(tail - 1)] - timeStamps[slotOf(head)];
+    }
+
+    public int getCapacityBytes() {
+        return ring.length;
+    }
+
+    /**
+     * Releases the scratch packet used for replaying. The ring itself is freed with the object.
+     */
+    public synchronized void close() {
+        if (scratch != null) {
+            NativeResources.release(scratch);
+            scratch = null;
+        }
+        clear();
+    }
+
+    /**
+     * Drops the oldest packets held at or after {@code offset}, i.e. those in the end of the ring
+     * that is skipped when the next packet wraps to the start.
+     */
+    private void evictFrom(int offset) {
+        while (head < tail && offsets[slotOf(head)] >= offset) {
+            evictHead();
+        }
+    }
+
+    /**
+     * Drops the oldest packets until {@code [offset, offset + size)} is free, an index slot is
+     * available and the retention period is respected.
+     */
+    private void evictFor(int offset, int size, long timeStamp) {
+        while (head < tail) {
+            int slot = slotOf(head);
+            boolean slotNeeded = tail - head >= maxPackets;
+            boolean expired = retainMicros > 0 && timeStamp - timeStamps[slot] > retainMicros;
+            boolean overlaps = overlaps(offsets[slot], sizes[slot], offset, size);
+            if (!slotNeeded && !expired && !overlaps) {
+                break;
+            }
+            if (expired && !slotNeeded && !overlaps && lastKeyFrame >= 0 && head >= lastKeyFrame) {
+                // never expire the GOP a reconnect would resume from
+                break;
+            }
+            evictHead();
+        }
+    }
+
+    private void evictHead() {
+        bytes -= sizes[slotOf(head)];
+        if (head == lastKeyFrame) {
+            lastKeyFrame = -1;
+        }
+        head++;
+    }
+
+    /**
+     * Returns whether a held payload intersects the region about to be written. Held payloads
+     * are checked oldest first and, once the skipped end of the ring is evicted, lie in write
+     * order after the region, so the first one that does not intersect ends the eviction.
+     */
+    private static boolean overlaps(int heldOffset, int heldSize, int offset, int size) {
+        return heldOffset < offset + size && offset < heldOffset + heldSize;
+    }
+
+    private IPacket load(int slot) {
+        int size = sizes[slot];
+        if (scratch == null || scratch.getData().getBufferSize() < size) {
+            NativeResources.release(scratch);
+            scratch = NativeResources.track(IPacket.make(Math.max(size, 64 * 1024)), "PacketRingBuffer");
+        }
+        scratch.put(ring, offsets[slot], 0, size);
+        scratch.setComplete(true, size);
+        scratch.setKeyPacket(keyFrames[slot]);
+        scratch.setPts(pts[slot]);
+        scratch.setDts(dts[slot]);
+        scratch.setDuration(durations[slot]);
+        scratch.setTimeBase(timeBase);
+        scratch.setStreamIndex(0);
+        return scratch;
+    }
+
+    private int slotOf(long sequence) {
+        return (int) (sequence % maxPackets);
+    }
+}
@@ -0,0 +1,259 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import com.xuggle.xuggler.IPixelFormat;
+import com.xuggle.xuggler.IVideoPicture;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Pure-Java BGR to YUV420P converter that splits each frame into row stripes and converts them in
+ * parallel on a {@link ForkJoinPool}.
+ *
+ * <p>Uses the BT.601 limited-range integer coefficients also used by swscale, so its output is
+ * within rounding distance of {@link XugglerColorConverter}. The Y, U and V planes and the stripe
+ * tasks are allocated once; each frame only re-runs the tasks and copies the planes into the
+ * frame's picture.</p>
+ *
+ * <p>Because the planes persist, a frame checked by a {@link TileChangeDetector} only has its dirty
+ * tiles converted; the others still hold the previous frame's values. Stripes are exactly one tile
+ * row high for this.</p>
+ */
+public class ParallelColorConverter implements ColorConverter {
+
+    /**
+     * Rows per stripe, one row of tiles. Even, so every stripe owns whole chroma rows.
+     */
+    private static final int STRIPE_ROWS = TileChangeDetector.TILE_HEIGHT;
+
+    private final ForkJoinPool pool;
+
+    private final boolean ownsPool;
+
+    private final int width;
+
+    private final int height;
+
+    private final int chromaWidth;
+
+    private final int chromaHeight;
+
+    private final int tileColumns;
+
+    private final byte[] yPlane;
+
+    private final byte[] uPlane;
+
+    private final byte[] vPlane;
+
+    private final Stripe[] stripes;
+
+    private final ConvertAll root = new ConvertAll();
+
+    /**
+     * Source raster of the frame being converted; set before the tasks run.
+     */
+    private byte[] bgr;
+
+    /**
+     * Tiles to convert in the frame being converted, or null for all of them.
+     */
+    private boolean[] dirtyTiles;
+
+    /**
+     * Creates a converter with its own pool, one worker per available processor.
+     */
+    public ParallelColorConverter(int width, int height) {
+        this(width, height, new ForkJoinPool(), true);
+    }
+
+    /**
+     * Creates a converter running on a shared pool, which is not shut down by {@link #close()}.
+     */
+    public ParallelColorConverter(int width, int height, ForkJoinPool pool) {
+        this(width, height, pool, false);
+    }
+
+    private ParallelColorConverter(int width, int height, ForkJoinPool pool, boolean ownsPool) {
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+        this.width = width;
+        this.height = height;
+        this.chromaWidth = (width + 1) / 2;
+        this.chromaHeight = (height + 1) / 2;
+        this.tileColumns = (width + TileChangeDetector.TILE_WIDTH - 1) / TileChangeDetector.TILE_WIDTH;
+        this.yPlane = new byte[width * height];
+        this.uPlane = new byte[chromaWidth * chromaHeight];
+        this.vPlane = new byte[chromaWidth * chromaHeight];
+
+        int count = (height + STRIPE_ROWS - 1) / STRIPE_ROWS;
+        stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe(i, i * STRIPE_ROWS, Math.min(height, (i + 1) * STRIPE_ROWS));
+        }
+    }
+
+    @Override
+    public void convert(Frame frame) {
+        int dirtyTileCount = frame.getDirtyTileCount();
+        if (dirtyTileCount < 0 || frame.getDirtyTiles().length != tileColumns * stripes.length) {
+            convertPlanes(frame.getPixels(), null);
+        } else if (dirtyTileCount > 0) {
+            convertPlanes(frame.getPixels(), frame.getDirtyTiles());
+        }
+        IVideoPicture picture = frame.getPicture();
+        copyPlane(picture, yPlane, width, height, 0, 0);
+        int yLineSize = picture.getDataLineSize(0);
+        int uOffset = yLineSize * height;
+        copyPlane(picture, uPlane, chromaWidth, chromaHeight, 1, uOffset);
+        int vOffset = uOffset + picture.getDataLineSize(1) * chromaHeight;
+        copyPlane(picture, vPlane, chromaWidth, chromaHeight, 2, vOffset);
+        picture.setComplete(true, IPixelFormat.Type.YUV420P, width, height, frame.getTimeStamp());
+    }
+
+    /**
+     * Converts a BGR raster into the internal Y, U and V planes.
+     */
+    void convertPlanes(byte[] bgr) {
+        convertPlanes(bgr, null);
+    }
+
+    /**
+     * Converts the given tiles of a BGR raster into the internal planes, or all of it if
+     * {@code dirtyTiles} is null.
+     */
+    void convertPlanes(byte[] bgr, boolean[] dirtyTiles) {
+        this.bgr = bgr;
+        this.dirtyTiles = dirtyTiles;
+        root.reinitialize();
+        pool.invoke(root);
+        this.bgr = null;
+        this.dirtyTiles = null;
+    }
+
+    byte[] getYPlane() {
+        return yPlane;
+    }
+
+    byte[] getUPlane() {
+        return uPlane;
+    }
+
+    byte[] getVPlane() {
+        return vPlane;
+    }
+
+    @Override
+    public void close() {
+        if (ownsPool) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Copies a tightly packed plane into the picture, honouring the picture's line size.
+     */
+    private static void copyPlane(IVideoPicture picture, byte[] plane, int planeWidth, int planeHeight,
+            int index, int offset) {
+        int lineSize = picture.getDataLineSize(index);
+        if (lineSize == planeWidth) {
+            picture.put(plane, 0, offset, planeWidth * planeHeight);
+            return;
+        }
+        for (int row = 0; row < planeHeight; row++) {
+            picture.put(plane, row * planeWidth, offset + row * lineSize, planeWidth);
+        }
+    }
+
+    /**
+     * Converts rows {@code [firstRow, endRow)} between columns {@code [firstColumn, endColumn)};
+     * {@code firstRow} and {@code firstColumn} are even.
+     */
+    private void convertRows(byte[] bgr, int firstRow, int endRow, int firstColumn, int endColumn) {
+        int stride = width * 3;
+        for (int row = firstRow; row < endRow; row++) {
+            int in = row * stride + firstColumn * 3;
+            int out = row * width + firstColumn;
+            int end = row * width + endColumn;
+            for (; out < end; out++, in += 3) {
+                int b = bgr[in] & 0xFF;
+                int g = bgr[in + 1] & 0xFF;
+                int r = bgr[in + 2] & 0xFF;
+                yPlane[out] = (byte) (((66 * r + 129 * g + 25 * b + 128) >> 8) + 16);
+            }
+        }
+        int lastColumn = width - 1;
+        for (int row = firstRow; row < endRow; row += 2) {
+            int top = row * stride;
+            int bottom = (row + 1 < height ? row + 1 : row) * stride;
+            int out = (row >> 1) * chromaWidth + (firstColumn >> 1);
+            for (int column = firstColumn; column < endColumn; column += 2, out++) {
+                int left = column * 3;
+                int right = (column < lastColumn ? column + 1 : column) * 3;
+                int b = (bgr[top + left] & 0xFF) + (bgr[top + right] & 0xFF)
+                        + (bgr[bottom + left] & 0xFF) + (bgr[bottom + right] & 0xFF);
+                int g = (bgr[top + left + 1] & 0xFF) + (bgr[top + right + 1] & 0xFF)
+                        + (bgr[bottom + left + 1] & 0xFF) + (bgr[bottom + right + 1] & 0xFF);
+                int r = (bgr[top + left + 2] & 0xFF) + (bgr[top + right + 2] & 0xFF)
+                        + (bgr[bottom + left + 2] & 0xFF) + (bgr[bottom + right + 2] & 0xFF);
+                // sums of four samples: scale the rounding term and shift by two more bits
+                uPlane[out] = (byte) (((-38 * r - 74 * g + 112 * b + 512) >> 10) + 128);
+                vPlane[out] = (byte) (((112 * r - 94 * g - 18 * b + 512) >> 10) + 128);
+            }
+        }
+    }
+
+    /**
+     * Forks every stripe and waits for them.
+     */
+    private class ConvertAll extends RecursiveAction {
+
+        @Override
+        protected void compute() {
+            for (Stripe stripe : stripes) {
+                stripe.reinitialize();
+            }
+            ForkJoinTask.invokeAll(stripes);
+        }
+    }
+
+    private class Stripe extends RecursiveAction {
+
+        private final int tileRow;
+
+        private final int firstRow;
+
+        private final int endRow;
+
+        Stripe(int tileRow, int firstRow, int endRow) {
+            this.tileRow = tileRow;
+            this.firstRow = firstRow;
+            this.endRow = endRow;
+        }
+
+        @Override
+        protected void compute() {
+            boolean[] dirty = dirtyTiles;
+            if (dirty == null) {
+                convertRows(bgr, firstRow, endRow, 0, width);
+                return;
+            }
+            // convert each run of adjacent dirty tiles in one pass
+            int base = tileRow * tileColumns;
+            int column = 0;
+            while (column < tileColumns) {
+                if (!dirty[base + column]) {
+                    column++;
+                    continue;
+                }
+                int first = column;
+                while (column < tileColumns && dirty[base + column]) {
+                    column++;
+                }
+                convertRows(bgr, firstRow, endRow, first * TileChangeDetector.TILE_WIDTH,
+                        Math.min(width, column * TileChangeDetector.TILE_WIDTH));
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+/**
+ * One step of a {@link StreamPipeline}. Each stage runs on its own thread and is handed frames
+ * in capture order.
+ */
+public interface PipelineStage {
+
+    /**
+     * Processes a frame in place.
+     *
+     * <p>The first stage of a pipeline acts as its source and may throw
+     * {@link java.io.EOFException} to end the stream; frames already queued are still drained.</p>
+     *
+     * @param frame the frame to process
+     * @return true to hand the frame to the next stage, false to recycle it
+     * @throws Exception if the stage failed; the pipeline is aborted
+     */
+    boolean process(Frame frame) throws Exception;
+}
@@ -0,0 +1,287 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import com.xuggle.xuggler.IPacket;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Last pipeline stage in ladder mode: encodes every converted frame into several renditions,
+ * each with its own {@link StreamSession}, encoder and sink.
+ *
+ * <p>Frames are captured and colour-converted once. This stage then hands the same frame to
+ * every rendition, {@linkplain Frame#retain() retaining} it once per rendition instead of copying
+ * it; each session scales the shared picture to its own size as it encodes. The last rendition to
+ * finish returns the frame to its pool.</p>
+ *
+ * <p>Each rendition has a small queue and is drained by a shared worker pool, one task at a time
+ * per rendition, so frames stay in order and the pool can be smaller than the number of
+ * renditions. A rendition that falls behind drops frames from its own queue before they are
+ * encoded; one that fails is stopped while the others carry on.</p>
+ */
+public class RenditionLadder implements PipelineStage {
+
+    private static final long IDLE_PARK_NANOS = 200000L;
+
+    private final FramePool framePool;
+
+    private final ExecutorService executor;
+
+    private final boolean ownsExecutor;
+
+    private final List<Rendition> renditions = new ArrayList<Rendition>();
+
+    /**
+     * Creates a ladder encoding on its own pool, one thread per available processor.
+     *
+     * @param framePool pool of the pipeline the frames come from
+     */
+    public RenditionLadder(FramePool framePool) {
+        this(framePool, Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "rendition");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }), true);
+    }
+
+    /**
+     * Creates a ladder encoding on a shared pool, which is not shut down by {@link #close()}.
+     */
+    public RenditionLadder(FramePool framePool, ExecutorService executor) {
+        this(framePool, executor, false);
+    }
+
+    private RenditionLadder(FramePool framePool, ExecutorService executor, boolean ownsExecutor) {
+        this.framePool = framePool;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    /**
+     * Adds a rendition. All renditions must be added before the pipeline starts, and no two may
+     * encode at the same size.
+     *
+     * @param name          used in log messages
+     * @param session       an opened session, sized for this rendition
+     * @param queueCapacity frames the rendition may fall behind before dropping
+     * @param metrics       receives encode and write times, may be null
+     */
+    public RenditionLadder add(String name, StreamSession session, int queueCapacity, StreamMetrics metrics) {
+        for (Rendition rendition : renditions) {
+            if (rendition.session.getWidth() == session.getWidth()
+                    && rendition.session.getHeight() == session.getHeight()) {
+                throw new IllegalArgumentException(name + " has the same size as " + rendition.name);
+            }
+        }
+        renditions.add(new Rendition(name, session, queueCapacity, metrics));
+        return this;
+    }
+
+    /**
+     * Returns the number of frames the rendition queues can hold together, to be reserved in the
+     * pipeline with {@link StreamPipeline.Builder#reserveFrames}.
+     */
+    public int getQueuedFrameCapacity() {
+        int capacity = 0;
+        for (Rendition rendition : renditions) {
+            capacity += rendition.queue.capacity();
+        }
+        return capacity;
+    }
+
+    public List<Rendition> getRenditions() {
+        return Collections.unmodifiableList(renditions);
+    }
+
+    @Override
+    public boolean process(Frame frame) throws IOException {
+        int live = 0;
+        for (Rendition rendition : renditions) {
+            if (rendition.failure != null) {
+                continue;
+            }
+            live++;
+            frame.retain();
+            if (rendition.queue.offer(frame)) {
+                rendition.schedule();
+            } else {
+                framePool.release(frame);
+                rendition.dropped.incrementAndGet();
+            }
+        }
+        if (live == 0 && !renditions.isEmpty()) {
+            throw new IOException("every rendition failed", renditions.get(0).failure);
+        }
+        // the pipeline drops its own reference; the renditions hold theirs
+        return false;
+    }
+
+    /**
+     * Waits for the renditions to encode what is queued, up to the given time.
+     *
+     * @return true if every queue drained
+     */
+    public boolean awaitIdle(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Rendition rendition : renditions) {
+            while (!rendition.queue.isEmpty() || rendition.scheduled.get()) {
+                if (System.nanoTime() - deadline > 0) {
+                    return false;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops the pool if the ladder owns it and releases the renditions' packets. The sessions are
+     * left open for their owner to close.
+     */
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(2, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (Rendition rendition : renditions) {
+            Frame frame;
+            while ((frame = rendition.queue.poll()) != null) {
+                framePool.release(frame);
+            }
+            NativeResources.release(rendition.packet);
+        }
+    }
+
+    /**
+     * Returns one line per rendition with its frame counts.
+     */
+    public String summary() {
+        StringBuilder summary = new StringBuilder();
+        for (Rendition rendition : renditions) {
+            summary.append("[LADDER] ").append(rendition.name).append(' ')
+                    .append(rendition.session.getWidth()).append('x').append(rendition.session.getHeight())
+                    .append(": ").append(rendition.encoded.get()).append(" frames encoded, ")
+                    .append(rendition.dropped.get()).append(" dropped")
+                    .append(rendition.failure != null ? ", failed: " + rendition.failure.getMessage() : "")
+                    .append('\n');
+        }
+        return summary.toString();
+    }
+
+    /**
+     * One output of the ladder: a session and the frames waiting for it.
+     */
+    public class Rendition implements Runnable {
+
+        private final String name;
+
+        private final StreamSession session;
+
+        private final FrameQueue<Frame> queue;
+
+        private final StreamMetrics metrics;
+
+        private final IPacket packet = NativeResources.track(IPacket.make(), "RenditionLadder");
+
+        /**
+         * Set while a drain task for this rendition is queued or running.
+         */
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private final AtomicLong encoded = new AtomicLong();
+
+        private final AtomicLong dropped = new AtomicLong();
+
+        private volatile Exception failure;
+
+        Rendition(String name, StreamSession session, int queueCapacity, StreamMetrics metrics) {
+            this.name = name;
+            this.session = session;
+            this.queue = new FrameQueue<Frame>(queueCapacity);
+            this.metrics = metrics;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public StreamSession getSession() {
+            return session;
+        }
+
+        public long getEncodedFrames() {
+            return encoded.get();
+        }
+
+        public long getDroppedFrames() {
+            return dropped.get();
+        }
+
+        public Exception getFailure() {
+            return failure;
+        }
+
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            Frame frame;
+            while ((frame = queue.poll()) != null) {
+                try {
+                    if (failure == null) {
+                        encode(frame);
+                    }
+                } catch (Exception e) {
+                    failure = e;
+                    System.err.println("[LADDER] rendition " + name + " failed: " + e.getMessage());
+                } finally {
+                    framePool.release(frame);
+                }
+            }
+            scheduled.set(false);
+            // a frame queued after the last poll but before the flag was cleared needs a new task
+            if (!queue.isEmpty()) {
+                schedule();
+            }
+        }
+
+        private void encode(Frame frame) throws IOException {
+            packet.reset();
+            long start = System.nanoTime();
+            boolean complete = session.encode(frame.getPicture(), frame.getSequence() == 0, packet);
+            if (metrics != null) {
+                metrics.recordEncode(System.nanoTime() - start);
+            }
+            encoded.incrementAndGet();
+            if (!complete) {
+                return;
+            }
+            start = System.nanoTime();
+            session.write(packet);
+            if (metrics != null) {
+                metrics.recordWrite(System.nanoTime() - start, packet.getSize(), frame.getCaptureNanos());
+            }
+        }
+    }
+}
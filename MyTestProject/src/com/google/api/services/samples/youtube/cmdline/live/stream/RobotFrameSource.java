@@ -0,0 +1,90 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import java.awt.AWTException;
+import java.awt.Rectangle;
+import java.awt.Robot;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.IOException;
+
+/**
+ * Captures a region of the screen with {@link Robot}.
+ *
+ * <p>Screen captures come back as packed {@code int} RGB pixels; they are unpacked into the BGR
+ * raster of the frame with a single loop instead of being redrawn through {@code Graphics}.</p>
+ */
+public class RobotFrameSource implements FrameSource {
+
+    private final Rectangle region;
+
+    private Robot robot;
+
+    /**
+     * @param region area of the screen to capture
+     */
+    public RobotFrameSource(Rectangle region) {
+        this.region = new Rectangle(region);
+    }
+
+    @Override
+    public void open() throws IOException {
+        try {
+            robot = new Robot();
+        } catch (AWTException e) {
+            throw new IOException("Screen capture is not available: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return region.width;
+    }
+
+    @Override
+    public int getHeight() {
+        return region.height;
+    }
+
+    @Override
+    public boolean read(Frame frame) {
+        //grab the screenshot
+        BufferedImage image = robot.createScreenCapture(region);
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        if (buffer instanceof DataBufferInt
+                && image.getSampleModel() instanceof SinglePixelPackedSampleModel
+                && (image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_INT_ARGB)) {
+            int scanline = ((SinglePixelPackedSampleModel) image.getSampleModel()).getScanlineStride();
+            copyToBgr(((DataBufferInt) buffer).getData(), scanline, frame.getPixels(), region.width, region.height);
+        } else {
+            // unusual screen layouts, let Java2D do the conversion
+            frame.getGraphics().drawImage(image, 0, 0, null);
+        }
+        image.flush();
+        return true;
+    }
+
+    @Override
+    public void close() {
+        robot = null;
+    }
+
+    /**
+     * Unpacks {@code 0x00RRGGBB} pixels into a BGR byte raster.
+     */
+    static void copyToBgr(int[] rgb, int scanline, byte[] bgr, int width, int height) {
+        int out = 0;
+        for (int y = 0; y < height; y++) {
+            int in = y * scanline;
+            int end = in + width;
+            for (; in < end; in++) {
+                int pixel = rgb[in];
+                bgr[out] = (byte) pixel;
+                bgr[out + 1] = (byte) (pixel >> 8);
+                bgr[out + 2] = (byte) (pixel >> 16);
+                out += 3;
+            }
+        }
+    }
+}
@@ -0,0 +1,623 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import com.xuggle.xuggler.Global;
+import com.xuggle.xuggler.ICodec;
+import com.xuggle.xuggler.IContainer;
+import com.xuggle.xuggler.IPacket;
+import com.xuggle.xuggler.IPixelFormat;
+import com.xuggle.xuggler.IRational;
+import com.xuggle.xuggler.IStreamCoder;
+import com.xuggle.xuggler.IVideoPicture;
+import com.xuggle.xuggler.IVideoResampler;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transcodes a pre-recorded file on several cores, e.g. ahead of a scheduled broadcast.
+ *
+ * <p>A single encoder works through a file on one core. Here the video track is first scanned,
+ * without decoding, for its keyframes, and cut at them into segments of whole GOPs of at least
+ * {@linkplain Builder#setSegmentDuration a few seconds}. Each segment is decoded and encoded by
+ * its own {@link StreamSession}, with the same preset and settings, on a bounded pool of workers.
+ * Each encoder starts on a keyframe, so the segments can be joined without touching their
+ * contents. The writer concatenates their packets in order into one output. Where the B-frame
+ * delay of one segment makes its decoding time stamps overlap the end of the previous one, the
+ * whole segment is shifted by the overlap, so presentation order within it is kept.</p>
+ *
+ * <p>At most twice as many segments as workers are in flight, so a slow early segment does not
+ * leave the whole file's packets waiting in memory.</p>
+ */
+public class SegmentTranscoder {
+
+    private static final IRational MICROSECONDS = IRational.make(1, 1000000);
+
+    private final String input;
+
+    private final OutputSink sink;
+
+    private final int workers;
+
+    private final double segmentSeconds;
+
+    private final int width;
+
+    private final int height;
+
+    private final IRational frameRate;
+
+    private final int bitRate;
+
+    private final int groupOfPictures;
+
+    private final String preset;
+
+    private int segments;
+
+    private long frames;
+
+    private long segmentNanos;
+
+    private long elapsedNanos;
+
+    private long shiftedSegments;
+
+    /**
+     * Copies of encoded packets, reused from one segment to the next.
+     */
+    private final PacketPool packetPool = new PacketPool("SegmentTranscoder", 512);
+
+    private SegmentTranscoder(Builder builder) {
+        this.input = builder.input;
+        this.sink = builder.sink;
+        this.workers = builder.workers;
+        this.segmentSeconds = builder.segmentSeconds;
+        this.width = builder.width;
+        this.height = builder.height;
+        this.frameRate = builder.frameRate;
+        this.bitRate = builder.bitRate;
+        this.groupOfPictures = builder.groupOfPictures;
+        this.preset = builder.preset;
+    }
+
+    /**
+     * Transcodes {@code input} into {@code output}, on one worker per processor unless a third
+     * argument gives their number.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: SegmentTranscoder <input> <output.flv|output.mp4> [workers]");
+            System.exit(1);
+        }
+        Builder builder = new Builder(args[0], ContainerSink.file(args[1]));
+        if (args.length > 2) {
+            builder.setWorkers(Integer.parseInt(args[2]));
+        }
+        SegmentTranscoder transcoder = builder.build();
+        transcoder.transcode();
+        System.out.println(transcoder.summary());
+    }
+
+    /**
+     * Transcodes the whole file into the sink, which is opened and closed again.
+     *
+     * @throws IOException if the file cannot be read or a segment failed
+     */
+    public void transcode() throws IOException {
+        long start = System.nanoTime();
+        Source probe = new Source(input);
+        List<Long> starts;
+        int outputWidth;
+        int outputHeight;
+        IRational outputFrameRate;
+        try {
+            starts = probe.findSegmentStarts(segmentSeconds);
+            outputWidth = width > 0 ? width : probe.decoder.getWidth() & ~1;
+            outputHeight = height > 0 ? height : probe.decoder.getHeight() & ~1;
+            outputFrameRate = frameRate != null ? frameRate : probe.decoder.getFrameRate();
+            if (outputFrameRate == null || outputFrameRate.getNumerator() <= 0) {
+                outputFrameRate = IRational.make(24, 1);
+            }
+        } finally {
+            probe.close();
+        }
+        if (starts.isEmpty()) {
+            throw new IOException("No keyframes in " + input);
+        }
+        segments = starts.size();
+        long originMicros = starts.get(0);
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+            private int count;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "segment-encoder-" + count++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        // the output encoder is never fed; it only gives the sink the stream header, which is the
+        // same for every encoder with these settings
+        StreamSession output = newSession(sink, outputWidth, outputHeight, outputFrameRate);
+        Deque<Future<Segment>> pending = new ArrayDeque<Future<Segment>>();
+        try {
+            output.open();
+            int next = 0;
+            long lastDts = Global.NO_PTS;
+            for (int written = 0; written < segments; written++) {
+                while (next < segments && pending.size() < workers * 2) {
+                    long end = next + 1 < segments ? starts.get(next + 1) : Long.MAX_VALUE;
+                    pending.add(pool.submit(new SegmentTask(starts.get(next), end, originMicros,
+                            outputWidth, outputHeight, outputFrameRate)));
+                    next++;
+                }
+                Segment segment = await(pending.poll());
+                frames += segment.frames;
+                segmentNanos += segment.nanos;
+                try {
+                    if (shift(segment.packets, lastDts) > 0) {
+                        shiftedSegments++;
+                    }
+                    for (IPacket packet : segment.packets) {
+                        lastDts = packet.getDts();
+                        output.write(packet);
+                    }
+                } finally {
+                    segment.release(packetPool);
+                }
+            }
+        } finally {
+            for (Future<Segment> future : pending) {
+                future.cancel(true);
+            }
+            pool.shutdownNow();
+            output.close();
+            packetPool.close();
+            elapsedNanos = System.nanoTime() - start;
+        }
+    }
+
+    public int getSegments() {
+        return segments;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Returns the time the segments took added up, divided by the elapsed time: how many cores'
+     * worth of work the transcode kept busy.
+     */
+    public double getParallelism() {
+        return elapsedNanos == 0 ? 0 : (double) segmentNanos / elapsedNanos;
+    }
+
+    public String summary() {
+        long millis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        return String.format("[TRANSCODE] %s: %d frames in %d segments on %d workers, %d ms (%.1f fps), "
+                        + "parallelism %.2f, %d segments shifted",
+                input, frames, segments, workers, millis, millis == 0 ? 0 : frames * 1000.0 / millis,
+                getParallelism(), shiftedSegments);
+    }
+
+    private StreamSession newSession(OutputSink target, int sessionWidth, int sessionHeight, IRational sessionFrameRate) {
+        return new StreamSession.Builder(target)
+                .setSize(sessionWidth, sessionHeight)
+                .setFrameRate(sessionFrameRate)
+                .setBitRate(bitRate)
+                .setNumPicturesInGroupOfPictures(groupOfPictures)
+                .setPreset(preset)
+                .setWarmUp(false)
+                .build();
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while transcoding");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Segment failed: " + e.getCause(), e.getCause());
+        }
+    }
+
+    /**
+     * Shifts the time stamps of a segment's packets so its first decoding time stamp comes after
+     * {@code lastDts}. Every packet moves by the same amount, which keeps the distance between its
+     * presentation and decoding time stamps and so the B-frame order.
+     *
+     * @param lastDts decoding time stamp of the previous segment's last packet, or
+     *                {@link Global#NO_PTS} for the first segment
+     * @return the amount added, 0 if the segment already follows on
+     */
+    static long shift(List<IPacket> packets, long lastDts) {
+        if (lastDts == Global.NO_PTS || packets.isEmpty()) {
+            return 0;
+        }
+        long offset = Math.max(0, lastDts + 1 - packets.get(0).getDts());
+        if (offset > 0) {
+            for (IPacket packet : packets) {
+                packet.setDts(packet.getDts() + offset);
+                if (packet.getPts() != Global.NO_PTS) {
+                    packet.setPts(packet.getPts() + offset);
+                }
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * The encoded packets of one segment.
+     */
+    private static class Segment {
+
+        final List<IPacket> packets = new ArrayList<IPacket>();
+
+        long frames;
+
+        long nanos;
+
+        void release(PacketPool pool) {
+            for (IPacket packet : packets) {
+                pool.release(packet);
+            }
+            packets.clear();
+        }
+    }
+
+    /**
+     * Decodes the pictures of one segment, from its keyframe up to the next segment's, and
+     * encodes them with a session of its own.
+     */
+    private class SegmentTask implements Callable<Segment> {
+
+        private final long startMicros;
+
+        private final long endMicros;
+
+        private final long originMicros;
+
+        private final int outputWidth;
+
+        private final int outputHeight;
+
+        private final IRational outputFrameRate;
+
+        SegmentTask(long startMicros, long endMicros, long originMicros, int outputWidth, int outputHeight,
+                IRational outputFrameRate) {
+            this.startMicros = startMicros;
+            this.endMicros = endMicros;
+            this.originMicros = originMicros;
+            this.outputWidth = outputWidth;
+            this.outputHeight = outputHeight;
+            this.outputFrameRate = outputFrameRate;
+        }
+
+        @Override
+        public Segment call() throws IOException {
+            long start = System.nanoTime();
+            final Segment segment = new Segment();
+            OutputSink collector = new OutputSink() {
+                @Override
+                public void open(IStreamCoder coder) {
+                }
+
+                @Override
+                public void write(IPacket packet) {
+                    segment.packets.add(packetPool.copy(packet));
+                }
+
+                @Override
+                public void close() {
+                }
+
+                @Override
+                public String getName() {
+                    return "segment at " + startMicros + " us";
+                }
+            };
+            Source source = new Source(input);
+            StreamSession session = newSession(collector, outputWidth, outputHeight, outputFrameRate);
+            NativeResources.Scope natives = NativeResources.openScope("SegmentTranscoder");
+            IVideoResampler resampler = null;
+            IVideoPicture scaled = null;
+            IPacket encoded = natives.add(IPacket.make());
+            try {
+                session.open();
+                IStreamCoder decoder = source.decoder;
+                if (decoder.getWidth() != outputWidth || decoder.getHeight() != outputHeight
+                        || decoder.getPixelType() != IPixelFormat.Type.YUV420P) {
+                    resampler = natives.add(IVideoResampler.make(outputWidth, outputHeight, IPixelFormat.Type.YUV420P,
+                            decoder.getWidth(), decoder.getHeight(), decoder.getPixelType()));
+                    if (resampler == null) {
+                        throw new IOException("Could not create resampler for " + input);
+                    }
+                    scaled = natives.add(IVideoPicture.make(IPixelFormat.Type.YUV420P, outputWidth, outputHeight));
+                }
+                source.seek(startMicros);
+                IVideoPicture decoded;
+                while ((decoded = source.nextPicture()) != null) {
+                    long pts = decoded.getPts();
+                    if (pts < startMicros) {
+                        continue;
+                    }
+                    if (pts >= endMicros) {
+                        break;
+                    }
+                    IVideoPicture picture = decoded;
+                    if (resampler != null) {
+                        if (resampler.resample(scaled, decoded) < 0) {
+                            throw new IOException("Could not resample video in " + input);
+                        }
+                        picture = scaled;
+                    }
+                    picture.setPts(pts - originMicros);
+                    picture.setQuality(0);
+                    if (session.encode(picture, segment.frames == 0, encoded)) {
+                        session.write(encoded);
+                    }
+                    encoded.reset();
+                    segment.frames++;
+                }
+                session.finish();
+            } catch (IOException e) {
+                segment.release(packetPool);
+                throw e;
+            } finally {
+                natives.close();
+                session.close();
+                source.close();
+            }
+            segment.nanos = System.nanoTime() - start;
+            if (Thread.currentThread().isInterrupted()) {
+                // cancelled while encoding: nobody will take the packets, and the pool frees them
+                segment.release(packetPool);
+            }
+            return segment;
+        }
+    }
+
+    /**
+     * The video track of the input file, opened and decoded by one thread.
+     */
+    private static class Source {
+
+        private final String path;
+
+        private final IContainer container;
+
+        private final IStreamCoder decoder;
+
+        private final IRational timeBase;
+
+        /**
+         * Owns the container, decoder, packet and picture.
+         */
+        private final NativeResources.Scope natives = NativeResources.openScope("SegmentTranscoder source");
+
+        private final IPacket packet = natives.add(IPacket.make());
+
+        private final IVideoPicture picture;
+
+        private int streamIndex = -1;
+
+        private int offset;
+
+        private boolean draining;
+
+        private long lastDrainedPts = Global.NO_PTS;
+
+        Source(String path) throws IOException {
+            this.path = path;
+            container = natives.add(IContainer.make());
+            if (container.open(MappedFileHandler.url(path), IContainer.Type.READ, null) < 0) {
+                natives.close();
+                throw new IOException("Could not open " + path);
+            }
+            IStreamCoder video = null;
+            for (int i = 0; i < container.getNumStreams(); i++) {
+                IStreamCoder coder = container.getStream(i).getStreamCoder();
+                if (coder.getCodecType() == ICodec.Type.CODEC_TYPE_VIDEO) {
+                    video = natives.add(coder);
+                    streamIndex = i;
+                    break;
+                }
+                coder.delete();
+            }
+            if (video == null) {
+                natives.close();
+                throw new IOException("No video stream in " + path);
+            }
+            decoder = video;
+            timeBase = container.getStream(streamIndex).getTimeBase();
+            if (decoder.open() < 0) {
+                natives.close();
+                throw new IOException("Could not open decoder for " + path);
+            }
+            picture = natives.add(IVideoPicture.make(decoder.getPixelType(), decoder.getWidth(), decoder.getHeight()));
+        }
+
+        /**
+         * Reads the whole track without decoding it and returns the presentation times, in
+         * microseconds, of the keyframes that start a segment.
+         */
+        List<Long> findSegmentStarts(double segmentSeconds) {
+            List<Long> starts = new ArrayList<Long>();
+            long segmentMicros = (long) (segmentSeconds * 1000000);
+            long last = 0;
+            while (container.readNextPacket(packet) >= 0) {
+                if (packet.getStreamIndex() != streamIndex || !packet.isKeyPacket()) {
+                    continue;
+                }
+                long timeStamp = packet.getPts() != Global.NO_PTS ? packet.getPts() : packet.getDts();
+                if (timeStamp == Global.NO_PTS) {
+                    continue;
+                }
+                long micros = MICROSECONDS.rescale(timeStamp, timeBase);
+                if (starts.isEmpty() || micros - last >= segmentMicros) {
+                    starts.add(micros);
+                    last = micros;
+                }
+            }
+            return starts;
+        }
+
+        /**
+         * Moves to the last keyframe at or before the given time.
+         */
+        void seek(long micros) throws IOException {
+            long timeStamp = timeBase.rescale(micros, MICROSECONDS);
+            if (container.seekKeyFrame(streamIndex, timeStamp, IContainer.SEEK_FLAG_BACKWARDS) < 0) {
+                throw new IOException("Could not seek to " + micros + " us in " + path);
+            }
+            offset = packet.getSize();
+        }
+
+        /**
+         * Returns the next decoded picture, with its time stamp in microseconds, or null at the end
+         * of the track once the pictures the decoder held back have been drained.
+         */
+        IVideoPicture nextPicture() throws IOException {
+            while (!draining) {
+                while (offset < packet.getSize()) {
+                    int decoded = decoder.decodeVideo(picture, packet, offset);
+                    if (decoded < 0) {
+                        throw new IOException("Could not decode video in " + path);
+                    }
+                    offset += decoded;
+                    if (picture.isComplete()) {
+                        return picture;
+                    }
+                }
+                do {
+                    if (container.readNextPacket(packet) < 0) {
+                        draining = true;
+                        break;
+                    }
+                } while (packet.getStreamIndex() != streamIndex);
+                offset = 0;
+            }
+            // an empty packet makes the decoder return the pictures it still holds
+            IPacket empty = NativeResources.track(IPacket.make(), "SegmentTranscoder source");
+            try {
+                if (decoder.decodeVideo(picture, empty, 0) < 0 || !picture.isComplete()
+                        || (lastDrainedPts != Global.NO_PTS && picture.getPts() <= lastDrainedPts)) {
+                    return null;
+                }
+                lastDrainedPts = picture.getPts();
+                return picture;
+            } finally {
+                NativeResources.release(empty);
+            }
+        }
+
+        void close() {
+            natives.close();
+        }
+    }
+
+    /**
+     * Collects the settings of a {@link SegmentTranscoder}. By default the output keeps the input's
+     * size and frame rate and is encoded at 1 Mbit/s with {@code libx264-normal.ffpreset}, in
+     * segments of at least 10 seconds on one worker per processor.
+     */
+    public static class Builder {
+
+        private final String input;
+
+        private final OutputSink sink;
+
+        private int workers = Runtime.getRuntime().availableProcessors();
+
+        private double segmentSeconds = 10;
+
+        private int width;
+
+        private int height;
+
+        private IRational frameRate;
+
+        private int bitRate = 1000000;
+
+        private int groupOfPictures = 48;
+
+        private String preset = "/resources/libx264-normal.ffpreset";
+
+        /**
+         * @param input file to transcode
+         * @param sink  receives the transcoded stream, e.g. a {@link ContainerSink#file} ready to be
+         *              streamed by a {@link FileRemuxer}
+         */
+        public Builder(String input, OutputSink sink) {
+            this.input = input;
+            this.sink = sink;
+        }
+
+        public Builder setWorkers(int workers) {
+            if (workers < 1) {
+                throw new IllegalArgumentException("at least one worker is needed: " + workers);
+            }
+            this.workers = workers;
+            return this;
+        }
+
+        /**
+         * Sets the shortest segment. Segments end at the first keyframe after this long, so they
+         * are longer in files with long GOPs; shorter segments spread better over the workers but
+         * each starts a new encoder.
+         */
+        public Builder setSegmentDuration(double segmentSeconds) {
+            this.segmentSeconds = segmentSeconds;
+            return this;
+        }
+
+        public Builder setSize(int width, int height) {
+            this.width = width;
+            this.height = height;
+            return this;
+        }
+
+        public Builder setFrameRate(IRational frameRate) {
+            this.frameRate = frameRate;
+            return this;
+        }
+
+        public Builder setBitRate(int bitRate) {
+            this.bitRate = bitRate;
+            return this;
+        }
+
+        public Builder setNumPicturesInGroupOfPictures(int groupOfPictures) {
+            this.groupOfPictures = groupOfPictures;
+            return this;
+        }
+
+        /**
+         * Sets the classpath resource holding the x264 preset, or null to use encoder defaults.
+         */
+        public Builder setPreset(String preset) {
+            this.preset = preset;
+            return this;
+        }
+
+        public SegmentTranscoder build() {
+            return new SegmentTranscoder(this);
+        }
+    }
+}
@@ -0,0 +1,725 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.xuggle.xuggler.Global;
+import com.xuggle.xuggler.IPacket;
+import com.xuggle.xuggler.IRational;
+import com.xuggle.xuggler.IStreamCoder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Headless soak test of the encode and mux path. Several streams of synthetic frames go through
+ * the same capture, convert, encode and mux stages as {@code CreateBroadcast}, in real time, into
+ * memory, local files or a {@link LoopbackRtmpServer}, for as long as the run is set to last.
+ *
+ * <p>Meanwhile the process is sampled for what only goes wrong after hours: stop-the-world GC
+ * pauses, heap left after collections, resident and native memory creeping up, packet time
+ * stamps drifting from the wall clock, late frame pacing and lost frames. One line is printed per
+ * sample; the samples and the verdict of every threshold go into a CSV report. Growth is measured
+ * from the first sample after the warm-up, once pools, JIT and encoder have settled.</p>
+ *
+ * <p>{@link #main} exits with status 1 if any threshold is exceeded, so a run can gate a
+ * release, e.g. {@code -Dsoak.duration=14400 -Dsoak.streams=3 -Dsoak.sink=loopback}. The same
+ * settings run it as a JUnit test, {@code SoakRunTest}, which is skipped unless
+ * {@code soak.duration} is set.</p>
+ */
+public class SoakTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final long MB = 1024 * 1024;
+
+    private static final IRational MICROSECONDS = IRational.make(1, 1000000);
+
+    private final long durationSeconds;
+
+    private final long warmUpSeconds;
+
+    private final long sampleSeconds;
+
+    private final int streamCount;
+
+    private final int width;
+
+    private final int height;
+
+    private final int frameRate;
+
+    private final String sinkType;
+
+    private final File outputDir;
+
+    private final long maxGcPauseMillis;
+
+    private final long maxPacingMicros;
+
+    private final double maxLostFraction;
+
+    private final long maxHeapGrowth;
+
+    private final long maxRssGrowth;
+
+    private final long maxNativeGrowth;
+
+    private final long maxDriftMillis;
+
+    private final List<Stream> streams = new ArrayList<Stream>();
+
+    private final List<Sample> samples = new ArrayList<Sample>();
+
+    private final GcListener gcListener = new GcListener();
+
+    private final List<String> verdicts = new ArrayList<String>();
+
+    private LoopbackRtmpServer loopback;
+
+    private long startNanos;
+
+    private SoakTest(Builder builder) {
+        this.durationSeconds = builder.durationSeconds;
+        this.warmUpSeconds = builder.warmUpSeconds >= 0
+                ? builder.warmUpSeconds
+                : Math.min(60, builder.durationSeconds / 10);
+        this.sampleSeconds = builder.sampleSeconds;
+        this.streamCount = builder.streams;
+        this.width = builder.width;
+        this.height = builder.height;
+        this.frameRate = builder.frameRate;
+        this.sinkType = builder.sinkType;
+        this.outputDir = builder.outputDir;
+        this.maxGcPauseMillis = builder.maxGcPauseMillis;
+        this.maxPacingMicros = builder.maxPacingMicros;
+        this.maxLostFraction = builder.maxLostFraction;
+        this.maxHeapGrowth = builder.maxHeapGrowth;
+        this.maxRssGrowth = builder.maxRssGrowth;
+        this.maxNativeGrowth = builder.maxNativeGrowth;
+        this.maxDriftMillis = builder.maxDriftMillis;
+    }
+
+    /**
+     * Streams for the set duration, sampling as it goes, and checks the thresholds.
+     *
+     * @return true if every threshold held
+     * @throws IOException if a stream could not be opened
+     */
+    public boolean run() throws IOException, InterruptedException {
+        gcListener.install();
+        try {
+            if ("loopback".equals(sinkType)) {
+                loopback = new LoopbackRtmpServer(0);
+                loopback.start();
+            }
+            for (int i = 0; i < streamCount; i++) {
+                streams.add(new Stream(i));
+            }
+            System.out.println("[SOAK] " + streamCount + " x " + width + "x" + height + " at " + frameRate
+                    + " fps into " + sinkType + " for " + durationSeconds + " s, warm-up " + warmUpSeconds + " s");
+            startNanos = System.nanoTime();
+            for (Stream stream : streams) {
+                stream.pipeline.start();
+            }
+            long deadline = startNanos + TimeUnit.SECONDS.toNanos(durationSeconds);
+            long nextSample = startNanos;
+            while (System.nanoTime() < deadline) {
+                nextSample += TimeUnit.SECONDS.toNanos(sampleSeconds);
+                long wait = Math.min(nextSample, deadline) - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                sample();
+            }
+            for (Stream stream : streams) {
+                stream.pipeline.stop();
+            }
+            for (Stream stream : streams) {
+                try {
+                    stream.pipeline.awaitTermination();
+                } catch (ExecutionException e) {
+                    verdicts.add("FAIL stream " + stream.index + " failed: " + e.getCause());
+                }
+            }
+            sample();
+        } finally {
+            for (Stream stream : streams) {
+                stream.close();
+            }
+            if (loopback != null) {
+                loopback.stop();
+            }
+            gcListener.remove();
+        }
+        check();
+        for (String verdict : verdicts) {
+            System.out.println("[SOAK] " + verdict);
+        }
+        return passed();
+    }
+
+    /**
+     * Returns true if the run held every threshold.
+     */
+    public boolean passed() {
+        for (String verdict : verdicts) {
+            if (verdict.startsWith("FAIL")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns one line per threshold, starting with {@code PASS} or {@code FAIL}.
+     */
+    public List<String> getVerdicts() {
+        return Collections.unmodifiableList(verdicts);
+    }
+
+    private void sample() {
+        Sample sample = new Sample();
+        sample.seconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos);
+        sample.heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage afterGc = pool.getType() == MemoryType.HEAP ? pool.getCollectionUsage() : null;
+            if (afterGc != null) {
+                sample.heapAfterGc += afterGc.getUsed();
+            }
+        }
+        sample.rss = readRss();
+        sample.nativeBytes = NativeResources.getInstance().getNativeBytes();
+        sample.nativeObjects = NativeResources.getInstance().getLiveObjects();
+        gcListener.drainInto(sample);
+        for (Stream stream : streams) {
+            StreamMetrics metrics = stream.metrics;
+            sample.frames += metrics.getFramesCaptured();
+            sample.lost += stream.pipeline.getDroppedFrames() + metrics.getFramesSkipped();
+            sample.pacingP99Micros = Math.max(sample.pacingP99Micros, metrics.getPacingJitterMicros().getP99());
+            sample.driftMillis = Math.max(sample.driftMillis, Math.abs(stream.drift.driftMicros) / 1000);
+            sample.maxDriftMillis = Math.max(sample.maxDriftMillis, stream.drift.maxDriftMicros / 1000);
+        }
+        samples.add(sample);
+        System.out.println("[SOAK] " + sample.seconds + " s: heap " + sample.heapUsed / MB + " MB ("
+                + sample.heapAfterGc / MB + " MB after GC), rss " + (sample.rss < 0 ? "?" : sample.rss / MB + " MB")
+                + ", native " + sample.nativeBytes / 1024 + " kB in " + sample.nativeObjects + " objects, "
+                + sample.gcPauses + " GC pauses (max " + sample.maxGcPauseMillis + " ms), " + sample.frames
+                + " frames, " + sample.lost + " lost, pacing p99 " + sample.pacingP99Micros + " us, drift "
+                + sample.driftMillis + " ms");
+    }
+
+    private void check() {
+        if (samples.isEmpty()) {
+            verdicts.add("FAIL no samples taken");
+            return;
+        }
+        Sample last = samples.get(samples.size() - 1);
+        Sample baseline = samples.get(0);
+        for (Sample sample : samples) {
+            if (sample.seconds >= warmUpSeconds) {
+                baseline = sample;
+                break;
+            }
+        }
+        long maxPause = 0;
+        for (Sample sample : samples) {
+            maxPause = Math.max(maxPause, sample.maxGcPauseMillis);
+        }
+        long expected = last.frames + last.lost;
+        double lostFraction = expected == 0 ? 1 : (double) last.lost / expected;
+        verify("longest GC pause", maxPause, maxGcPauseMillis, "ms");
+        verify("pacing jitter p99", last.pacingP99Micros, maxPacingMicros, "us");
+        verify("time stamp drift", last.maxDriftMillis, maxDriftMillis, "ms");
+        verdicts.add((lostFraction <= maxLostFraction ? "PASS" : "FAIL") + " lost frames "
+                + String.format(Locale.ROOT, "%.3f%% (%d of %d) <= %.3f%%",
+                lostFraction * 100, last.lost, expected, maxLostFraction * 100));
+        verify("heap growth after GC", last.heapAfterGc - baseline.heapAfterGc, maxHeapGrowth, "bytes");
+        if (last.rss >= 0 && baseline.rss >= 0) {
+            verify("RSS growth", last.rss - baseline.rss, maxRssGrowth, "bytes");
+        }
+        verify("native memory growth", last.nativeBytes - baseline.nativeBytes, maxNativeGrowth, "bytes");
+    }
+
+    private void verify(String name, long value, long limit, String unit) {
+        verdicts.add((value <= limit ? "PASS " : "FAIL ") + name + " " + value + " " + unit + " <= " + limit + " " + unit);
+    }
+
+    /**
+     * Writes the samples as CSV, preceded by the settings and followed by the verdicts as
+     * {@code #} comments.
+     */
+    public void writeReport(File file) throws IOException {
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), UTF_8));
+        try {
+            out.println("# soak " + streamCount + " x " + width + "x" + height + " at " + frameRate + " fps into "
+                    + sinkType + " for " + durationSeconds + " s, warm-up " + warmUpSeconds + " s");
+            out.println("seconds,heap_used,heap_after_gc,rss,native_bytes,native_objects,gc_pauses,gc_pause_ms,"
+                    + "gc_max_pause_ms,frames,lost,pacing_p99_us,drift_ms,max_drift_ms");
+            for (Sample sample : samples) {
+                out.println(sample.seconds + "," + sample.heapUsed + "," + sample.heapAfterGc + "," + sample.rss + ","
+                        + sample.nativeBytes + "," + sample.nativeObjects + "," + sample.gcPauses + ","
+                        + sample.gcPauseMillis + "," + sample.maxGcPauseMillis + "," + sample.frames + ","
+                        + sample.lost + "," + sample.pacingP99Micros + "," + sample.driftMillis + ","
+                        + sample.maxDriftMillis);
+            }
+            for (String verdict : verdicts) {
+                out.println("# " + verdict);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns the resident set size from {@code /proc/self/status}, or -1 where there is none.
+     */
+    private static long readRss() {
+        File status = new File("/proc/self/status");
+        if (!status.canRead()) {
+            return -1;
+        }
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(status), UTF_8));
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.startsWith("VmRSS:")) {
+                        return Long.parseLong(line.substring(6).replace("kB", "").trim()) * 1024;
+                    }
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            System.err.println("[SOAK] could not read RSS: " + e.getMessage());
+        }
+        return -1;
+    }
+
+    /**
+     * One synthetic stream and the pipeline encoding it.
+     */
+    private class Stream {
+
+        final int index;
+
+        final SyntheticFrameSource source;
+
+        final FramePool framePool;
+
+        final ColorConverter converter;
+
+        final DriftSink drift;
+
+        final StreamSession session;
+
+        final StreamMetrics metrics;
+
+        final StreamPipeline pipeline;
+
+        Stream(int index) throws IOException {
+            this.index = index;
+            String name = "soak-" + index;
+            IRational rate = IRational.make(frameRate, 1);
+            source = new SyntheticFrameSource(width, height);
+            source.open();
+            framePool = new FramePool(width, height);
+            converter = new ParallelColorConverter(width, height);
+            drift = new DriftSink(newSink(name));
+            session = new StreamSession.Builder(drift)
+                    .setSize(width, height)
+                    .setFrameRate(rate)
+                    .setWarmUp(false)
+                    .build();
+            session.open();
+            metrics = new StreamMetrics(name);
+            pipeline = new StreamPipeline.Builder()
+                    .setFrameRate(rate)
+                    .setTimeBase(session.getCoder().getTimeBase())
+                    .setMaxFrames(durationSeconds * frameRate)
+                    .setFramePool(framePool)
+                    .setMetrics(metrics)
+                    .source("capture", new CaptureStage(source, metrics))
+                    .stage("convert", new ConvertStage(converter, null, metrics), 4, DropPolicy.DROP_OLDEST)
+                    .stage("encode", new EncodeStage(session, metrics), 4, DropPolicy.DROP_OLDEST)
+                    .stage("mux", new MuxStage(session, metrics), 16, DropPolicy.BLOCK)
+                    .build();
+        }
+
+        private OutputSink newSink(String name) {
+            if ("loopback".equals(sinkType)) {
+                return ContainerSink.rtmp(loopback.getUrl("live2", name));
+            }
+            if ("file".equals(sinkType)) {
+                return ContainerSink.file(new File(outputDir, name + ".flv").getPath());
+            }
+            return new MemorySink();
+        }
+
+        void close() {
+            session.close();
+            converter.close();
+            source.close();
+            framePool.close();
+            metrics.close();
+        }
+    }
+
+    /**
+     * Passes packets on to a sink and measures how far their time stamps have drifted from the
+     * wall clock since the first one.
+     */
+    private static class DriftSink implements OutputSink {
+
+        private final OutputSink target;
+
+        private IRational timeBase;
+
+        private long firstPtsMicros = Global.NO_PTS;
+
+        private long firstNanos;
+
+        volatile long driftMicros;
+
+        volatile long maxDriftMicros;
+
+        DriftSink(OutputSink target) {
+            this.target = target;
+        }
+
+        @Override
+        public void open(IStreamCoder coder) throws IOException {
+            timeBase = coder.getTimeBase();
+            target.open(coder);
+        }
+
+        @Override
+        public void write(IPacket packet) throws IOException {
+            long now = System.nanoTime();
+            if (packet.getPts() != Global.NO_PTS && timeBase != null) {
+                long ptsMicros = MICROSECONDS.rescale(packet.getPts(), timeBase);
+                if (firstPtsMicros == Global.NO_PTS) {
+                    firstPtsMicros = ptsMicros;
+                    firstNanos = now;
+                }
+                long drift = (ptsMicros - firstPtsMicros) - (now - firstNanos) / 1000;
+                driftMicros = drift;
+                maxDriftMicros = Math.max(maxDriftMicros, Math.abs(drift));
+            }
+            target.write(packet);
+        }
+
+        @Override
+        public void close() {
+            target.close();
+        }
+
+        @Override
+        public String getName() {
+            return target.getName();
+        }
+    }
+
+    /**
+     * Collects the duration of every stop-the-world collection from the collectors'
+     * notifications. Concurrent cycles run beside the application and are left out.
+     */
+    private static class GcListener implements NotificationListener {
+
+        private final List<NotificationEmitter> emitters = new ArrayList<NotificationEmitter>();
+
+        private long pauses;
+
+        private long pauseMillis;
+
+        private long maxPauseMillis;
+
+        void install() {
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (collector instanceof NotificationEmitter) {
+                    ((NotificationEmitter) collector).addNotificationListener(this, null, null);
+                    emitters.add((NotificationEmitter) collector);
+                }
+            }
+        }
+
+        void remove() {
+            for (NotificationEmitter emitter : emitters) {
+                try {
+                    emitter.removeNotificationListener(this);
+                } catch (javax.management.ListenerNotFoundException e) {
+                    // never added
+                }
+            }
+            emitters.clear();
+        }
+
+        @Override
+        public synchronized void handleNotification(Notification notification, Object handback) {
+            if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                return;
+            }
+            GarbageCollectionNotificationInfo info =
+                    GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+            if (info.getGcName().contains("Concurrent") || info.getGcName().contains("Cycles")) {
+                return;
+            }
+            long duration = info.getGcInfo().getDuration();
+            pauses++;
+            pauseMillis += duration;
+            maxPauseMillis = Math.max(maxPauseMillis, duration);
+        }
+
+        /**
+         * Moves the pauses since the previous sample into the sample.
+         */
+        synchronized void drainInto(Sample sample) {
+            sample.gcPauses = pauses;
+            sample.gcPauseMillis = pauseMillis;
+            sample.maxGcPauseMillis = maxPauseMillis;
+            pauses = 0;
+            pauseMillis = 0;
+            maxPauseMillis = 0;
+        }
+    }
+
+    /**
+     * State of the process at one point of the run. GC figures cover the time since the previous
+     * sample; frame counts and pacing since the start.
+     */
+    private static class Sample {
+
+        long seconds;
+
+        long heapUsed;
+
+        long heapAfterGc;
+
+        long rss;
+
+        long nativeBytes;
+
+        long nativeObjects;
+
+        long gcPauses;
+
+        long gcPauseMillis;
+
+        long maxGcPauseMillis;
+
+        long frames;
+
+        long lost;
+
+        long pacingP99Micros;
+
+        long driftMillis;
+
+        long maxDriftMillis;
+    }
+
+    /**
+     * Collects the settings and thresholds of a {@link SoakTest}.
+     */
+    public static class Builder {
+
+        private long durationSeconds = 600;
+
+        private long warmUpSeconds = -1;
+
+        private long sampleSeconds = 10;
+
+        private int streams = 1;
+
+        private int width = 640;
+
+        private int height = 480;
+
+        private int frameRate = 24;
+
+        private String sinkType = "memory";
+
+        private File outputDir = new File(".");
+
+        private long maxGcPauseMillis = 100;
+
+        private long maxPacingMicros = 20000;
+
+        private double maxLostFraction = 0.01;
+
+        private long maxHeapGrowth = 32 * MB;
+
+        private long maxRssGrowth = 128 * MB;
+
+        private long maxNativeGrowth = MB;
+
+        private long maxDriftMillis = 500;
+
+        /**
+         * Sets how long to stream. Defaults to 10 minutes.
+         */
+        public Builder setDuration(long seconds) {
+            this.durationSeconds = seconds;
+            return this;
+        }
+
+        /**
+         * Sets the time after which memory growth starts to count. Defaults to a tenth of the
+         * duration, at most a minute.
+         */
+        public Builder setWarmUp(long seconds) {
+            this.warmUpSeconds = seconds;
+            return this;
+        }
+
+        /**
+         * Sets the time between samples. Defaults to 10 s.
+         */
+        public Builder setSampleInterval(long seconds) {
+            this.sampleSeconds = seconds;
+            return this;
+        }
+
+        /**
+         * Sets the number of streams encoded side by side. Defaults to 1.
+         */
+        public Builder setStreams(int streams) {
+            this.streams = streams;
+            return this;
+        }
+
+        public Builder setSize(int width, int height) {
+            this.width = width;
+            this.height = height;
+            return this;
+        }
+
+        public Builder setFrameRate(int frameRate) {
+            this.frameRate = frameRate;
+            return this;
+        }
+
+        /**
+         * Sets where the packets go: {@code memory} (the default), {@code file}, one FLV per
+         * stream in the output directory, or {@code loopback}, a local RTMP server.
+         */
+        public Builder setSink(String sinkType) {
+            if (!"memory".equals(sinkType) && !"file".equals(sinkType) && !"loopback".equals(sinkType)) {
+                throw new IllegalArgumentException("Unknown sink " + sinkType);
+            }
+            this.sinkType = sinkType;
+            return this;
+        }
+
+        public Builder setOutputDir(File outputDir) {
+            this.outputDir = outputDir;
+            return this;
+        }
+
+        /**
+         * Sets the longest stop-the-world GC pause allowed. Defaults to 100 ms.
+         */
+        public Builder setMaxGcPause(long millis) {
+            this.maxGcPauseMillis = millis;
+            return this;
+        }
+
+        /**
+         * Sets the 99th percentile of how late the source may be woken for a frame. Defaults to
+         * 20 ms.
+         */
+        public Builder setMaxPacingJitter(long micros) {
+            this.maxPacingMicros = micros;
+            return this;
+        }
+
+        /**
+         * Sets the fraction of frames that may be dropped or skipped. Defaults to 1%.
+         */
+        public Builder setMaxLostFraction(double fraction) {
+            this.maxLostFraction = fraction;
+            return this;
+        }
+
+        /**
+         * Sets how much the heap left after collections, resident memory and tracked native
+         * memory may grow after the warm-up. Defaults to 32 MB, 128 MB and 1 MB.
+         */
+        public Builder setMaxGrowth(long heapBytes, long rssBytes, long nativeBytes) {
+            this.maxHeapGrowth = heapBytes;
+            this.maxRssGrowth = rssBytes;
+            this.maxNativeGrowth = nativeBytes;
+            return this;
+        }
+
+        /**
+         * Sets how far packet time stamps may drift from the wall clock. Defaults to 500 ms.
+         */
+        public Builder setMaxDrift(long millis) {
+            this.maxDriftMillis = millis;
+            return this;
+        }
+
+        public SoakTest build() {
+            return new SoakTest(this);
+        }
+    }
+
+    /**
+     * Returns a builder configured by the {@code -Dsoak.*} properties, with the defaults of
+     * {@link #main} for those not set.
+     */
+    public static Builder fromSystemProperties() {
+        String[] size = System.getProperty("soak.size", "640x480").split("x");
+        return new Builder()
+                .setDuration(Long.getLong("soak.duration", 600))
+                .setWarmUp(Long.getLong("soak.warmUp", -1))
+                .setSampleInterval(Long.getLong("soak.sampleInterval", 10))
+                .setStreams(Integer.getInteger("soak.streams", 1))
+                .setSize(Integer.parseInt(size[0]), Integer.parseInt(size[1]))
+                .setFrameRate(Integer.getInteger("soak.frameRate", 24))
+                .setSink(System.getProperty("soak.sink", "memory"))
+                .setOutputDir(new File(System.getProperty("soak.outputDir", ".")))
+                .setMaxGcPause(Long.getLong("soak.maxGcPauseMillis", 100))
+                .setMaxPacingJitter(Long.getLong("soak.maxJitterMicros", 20000))
+                .setMaxLostFraction(Double.parseDouble(System.getProperty("soak.maxLostPercent", "1")) / 100)
+                .setMaxGrowth(Long.getLong("soak.maxHeapGrowthMB", 32) * MB, Long.getLong("soak.maxRssGrowthMB", 128) * MB,
+                        Long.getLong("soak.maxNativeGrowthKB", 1024) * 1024)
+                .setMaxDrift(Long.getLong("soak.maxDriftMillis", 500));
+    }
+
+    /**
+     * Runs a soak test configured by {@code -Dsoak.*} properties and writes its report, by default
+     * to {@code soak-report.csv}. Exits with status 1 if a threshold was exceeded.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        SoakTest test = fromSystemProperties().build();
+        boolean passed = test.run();
+        File report = new File(System.getProperty("soak.report", "soak-report.csv"));
+        test.writeReport(report);
+        System.out.println("[SOAK] " + (passed ? "passed" : "FAILED") + ", report in " + report.getPath());
+        System.exit(passed ? 0 : 1);
+    }
+}
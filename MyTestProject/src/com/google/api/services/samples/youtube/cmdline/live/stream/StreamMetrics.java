@@ -0,0 +1,340 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Latency histograms and counters for one stream. The pipeline stages record into it as frames
+ * pass through; it can be published as an MXBean and print a summary at a fixed interval, so
+ * nothing is written to the console per frame.
+ */
+public class StreamMetrics implements StreamMetricsMXBean {
+
+    private static final long NANOS_PER_MICRO = 1000;
+
+    private final String name;
+
+    private final Histogram capture = new Histogram();
+
+    private final Histogram convert = new Histogram();
+
+    private final Histogram encode = new Histogram();
+
+    private final Histogram write = new Histogram();
+
+    private final Histogram frameAge = new Histogram();
+
+    private final Histogram packetBytes = new Histogram();
+
+    private final Histogram pacing = new Histogram();
+
+    /**
+     * Changed fraction of each frame checked by a {@link TileChangeDetector}, in per mille.
+     */
+    private final Histogram dirty = new Histogram();
+
+    private final AtomicLong framesCaptured = new AtomicLong();
+
+    private final AtomicLong framesDropped = new AtomicLong();
+
+    private final AtomicLong framesSkipped = new AtomicLong();
+
+    private final AtomicLong framesUnchanged = new AtomicLong();
+
+    private final AtomicLong packetsWritten = new AtomicLong();
+
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    /**
+     * {@link System#nanoTime()} of the first written packet, 0 until then.
+     */
+    private volatile long firstPacketNanos;
+
+    private ObjectName objectName;
+
+    private ScheduledExecutorService reporter;
+
+    private long lastReportNanos;
+
+    private long lastReportBytes;
+
+    /**
+     * @param name identifies the stream in the JMX object name and the summary log
+     */
+    public StreamMetrics(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void recordCapture(long nanos) {
+        capture.record(nanos);
+        framesCaptured.incrementAndGet();
+    }
+
+    public void recordConvert(long nanos) {
+        convert.record(nanos);
+    }
+
+    public void recordEncode(long nanos) {
+        encode.record(nanos);
+    }
+
+    /**
+     * Records a packet written to the sink.
+     *
+     * @param nanos      time spent in the write
+     * @param bytes      packet size
+     * @param frameNanos {@link System#nanoTime()} at which the frame's capture started
+     */
+    public void recordWrite(long nanos, int bytes, long frameNanos) {
+        long now = System.nanoTime();
+        if (firstPacketNanos == 0) {
+            firstPacketNanos = now;
+        }
+        write.record(nanos);
+        packetBytes.record(bytes);
+        frameAge.record(now - frameNanos);
+        packetsWritten.incrementAndGet();
+        bytesWritten.addAndGet(bytes);
+    }
+
+    public void recordDropped() {
+        framesDropped.incrementAndGet();
+    }
+
+    /**
+     * Records how late the source was woken for a frame.
+     */
+    public void recordPacing(long lateNanos) {
+        pacing.record(lateNanos);
+    }
+
+    /**
+     * Records frame slots the source missed entirely.
+     */
+    public void recordSkipped(long frames) {
+        framesSkipped.addAndGet(frames);
+    }
+
+    /**
+     * Records the fraction of a frame that changed since the previous one.
+     */
+    public void recordDirtyRatio(double ratio) {
+        dirty.record(Math.round(ratio * 1000));
+        if (ratio == 0) {
+            framesUnchanged.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the encode times in nanoseconds, for callers that need more than the snapshots.
+     */
+    public Histogram getEncodeLatency() {
+        return encode;
+    }
+
+    /**
+     * Returns the write times in nanoseconds.
+     */
+    public Histogram getWriteLatency() {
+        return write;
+    }
+
+    @Override
+    public Histogram.Snapshot getCaptureMicros() {
+        return capture.snapshot(NANOS_PER_MICRO);
+    }
+
+    @Override
+    public Histogram.Snapshot getConvertMicros() {
+        return convert.snapshot(NANOS_PER_MICRO);
+    }
+
+    @Override
+    public Histogram.Snapshot getEncodeMicros() {
+        return encode.snapshot(NANOS_PER_MICRO);
+    }
+
+    @Override
+    public Histogram.Snapshot getWriteMicros() {
+        return write.snapshot(NANOS_PER_MICRO);
+    }
+
+    @Override
+    public Histogram.Snapshot getFrameAgeMicros() {
+        return frameAge.snapshot(NANOS_PER_MICRO);
+    }
+
+    @Override
+    public Histogram.Snapshot getPacketBytes() {
+        return packetBytes.snapshot(1);
+    }
+
+    @Override
+    public Histogram.Snapshot getPacingJitterMicros() {
+        return pacing.snapshot(NANOS_PER_MICRO);
+    }
+
+    @Override
+    public Histogram.Snapshot getDirtyPerMille() {
+        return dirty.snapshot(1);
+    }
+
+    @Override
+    public long getFramesUnchanged() {
+        return framesUnchanged.get();
+    }
+
+    @Override
+    public long getFramesCaptured() {
+        return framesCaptured.get();
+    }
+
+    @Override
+    public long getFramesDropped() {
+        return framesDropped.get();
+    }
+
+    @Override
+    public long getFramesSkipped() {
+        return framesSkipped.get();
+    }
+
+    @Override
+    public long getPacketsWritten() {
+        return packetsWritten.get();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    @Override
+    public long getBitRate() {
+        long first = firstPacketNanos;
+        if (first == 0) {
+            return 0;
+        }
+        long elapsed = System.nanoTime() - first;
+        return elapsed <= 0 ? 0 : bytesWritten.get() * 8 * TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    @Override
+    public void reset() {
+        capture.reset();
+        convert.reset();
+        encode.reset();
+        write.reset();
+        frameAge.reset();
+        packetBytes.reset();
+        pacing.reset();
+        dirty.reset();
+        framesUnchanged.set(0);
+        framesCaptured.set(0);
+        framesDropped.set(0);
+        framesSkipped.set(0);
+        packetsWritten.set(0);
+        bytesWritten.set(0);
+        firstPacketNanos = 0;
+    }
+
+    /**
+     * Publishes these metrics on the platform MBean server.
+     */
+    public synchronized void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName("com.google.api.services.samples.youtube:type=StreamMetrics,name="
+                    + ObjectName.quote(name));
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            System.err.println("[METRICS] could not register " + name + ": " + e.getMessage());
+            objectName = null;
+        }
+    }
+
+    /**
+     * Prints {@link #summary()} every {@code period} on a background thread.
+     */
+    public synchronized void startReporting(long period, TimeUnit unit) {
+        if (reporter != null) {
+            return;
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "metrics-" + name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        lastReportNanos = System.nanoTime();
+        reporter.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                System.out.println(summary());
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Returns a one-paragraph summary. The bit rate is measured since the previous summary.
+     */
+    public synchronized String summary() {
+        long now = System.nanoTime();
+        long bytes = bytesWritten.get();
+        long elapsed = now - lastReportNanos;
+        long bitRate = lastReportNanos == 0 || elapsed <= 0
+                ? getBitRate()
+                : (bytes - lastReportBytes) * 8 * TimeUnit.SECONDS.toNanos(1) / elapsed;
+        lastReportNanos = now;
+        lastReportBytes = bytes;
+        return "[METRICS] " + name + ": " + framesCaptured.get() + " frames captured, "
+                + framesDropped.get() + " dropped, " + framesSkipped.get() + " skipped, "
+                + framesUnchanged.get() + " unchanged, "
+                + packetsWritten.get() + " packets, "
+                + bitRate / 1000 + " kbit/s"
+                + "\n  pacing us    " + getPacingJitterMicros()
+                + "\n  capture us   " + getCaptureMicros()
+                + "\n  convert us   " + getConvertMicros()
+                + "\n  dirty permil " + getDirtyPerMille()
+                + "\n  encode us    " + getEncodeMicros()
+                + "\n  write us     " + getWriteMicros()
+                + "\n  frame age us " + getFrameAgeMicros()
+                + "\n  packet bytes " + getPacketBytes()
+                + "\n  " + NativeResources.summary();
+    }
+
+    /**
+     * Stops reporting and removes the MBean.
+     */
+    public synchronized void close() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                System.err.println("[METRICS] could not unregister " + name + ": " + e.getMessage());
+            }
+            objectName = null;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+/**
+ * JMX view of {@link StreamMetrics}. Latencies are in microseconds, sizes in bytes.
+ */
+public interface StreamMetricsMXBean {
+
+    Histogram.Snapshot getCaptureMicros();
+
+    Histogram.Snapshot getConvertMicros();
+
+    Histogram.Snapshot getEncodeMicros();
+
+    Histogram.Snapshot getWriteMicros();
+
+    /**
+     * Time from the start of capture until the frame's packet was written.
+     */
+    Histogram.Snapshot getFrameAgeMicros();
+
+    Histogram.Snapshot getPacketBytes();
+
+    /**
+     * How late the source was woken for each frame.
+     */
+    Histogram.Snapshot getPacingJitterMicros();
+
+    /**
+     * Changed fraction of each frame, in per mille, for frames checked for changes.
+     */
+    Histogram.Snapshot getDirtyPerMille();
+
+    /**
+     * Frames identical to the one before, which needed no colour conversion.
+     */
+    long getFramesUnchanged();
+
+    long getFramesCaptured();
+
+    long getFramesDropped();
+
+    /**
+     * Frame slots the source missed because capture fell behind the frame rate.
+     */
+    long getFramesSkipped();
+
+    long getPacketsWritten();
+
+    long getBytesWritten();
+
+    /**
+     * Average bit rate written to the sink since the first packet, in bits per second.
+     */
+    long getBitRate();
+
+    /**
+     * Clears all histograms and counters.
+     */
+    void reset();
+}
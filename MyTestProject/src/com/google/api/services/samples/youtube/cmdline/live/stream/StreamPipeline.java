@@ -0,0 +1,448 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import com.xuggle.xuggler.IRational;
+
+import java.io.EOFException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs capture, conversion, encoding and muxing as a chain of stages, each on its own thread,
+ * connected by bounded {@link FrameQueue}s. A stage that falls behind only fills its input queue;
+ * the {@link DropPolicy} of that queue decides whether upstream waits or frames are discarded, so
+ * the sustained frame rate is set by the slowest stage rather than by the sum of all of them.
+ *
+ * <p>The first stage is the source. It is paced by a {@link FrameScheduler} at the configured
+ * frame rate, which also stamps each frame before the source stage sees it, and runs until it
+ * throws {@link EOFException}, the frame limit is reached or {@link #stop()} is called. The
+ * remaining stages drain their queues and then exit.</p>
+ */
+public class StreamPipeline {
+
+    /**
+     * How long an idle stage parks before polling its queue again.
+     */
+    private static final long IDLE_PARK_NANOS = 200000L;
+
+    private final Worker[] workers;
+
+    private final FramePool framePool;
+
+    private final FrameScheduler scheduler;
+
+    private final long maxFrames;
+
+    private final StreamMetrics metrics;
+
+    private volatile boolean stopRequested;
+
+    private volatile boolean aborted;
+
+    private volatile Throwable failure;
+
+    private final AtomicLong producedFrames = new AtomicLong();
+
+    private StreamPipeline(Builder builder) {
+        if (builder.names.isEmpty()) {
+            throw new IllegalStateException("a pipeline needs a source stage");
+        }
+        IRational timeBase = builder.timeBase != null ? builder.timeBase
+                : IRational.make(builder.frameRate.getDenominator(), builder.frameRate.getNumerator());
+        this.scheduler = new FrameScheduler(builder.frameRate, timeBase, builder.pacingPolicy);
+        this.scheduler.setMetrics(builder.metrics);
+        this.maxFrames = builder.maxFrames;
+        this.metrics = builder.metrics;
+
+        int size = builder.names.size();
+        int frames = size + builder.reservedFrames;
+        workers = new Worker[size];
+        for (int i = 0; i < size; i++) {
+            FrameQueue<Frame> input = null;
+            if (i > 0) {
+                input = new FrameQueue<Frame>(builder.capacities.get(i));
+                frames += input.capacity();
+            }
+            workers[i] = new Worker(builder.names.get(i), builder.stages.get(i), input,
+                    builder.policies.get(i));
+        }
+        framePool = builder.framePool != null ? builder.framePool : new FramePool();
+        framePool.allocate(frames);
+    }
+
+    /**
+     * Starts one thread per stage.
+     */
+    public void start() {
+        for (int i = 0; i < workers.length; i++) {
+            final int index = i;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    if (index == 0) {
+                        runSource();
+                    } else {
+                        runStage(index);
+                    }
+                }
+            }, "pipeline-" + workers[i].name);
+            thread.setDaemon(true);
+            workers[i].thread = thread;
+        }
+        for (Worker worker : workers) {
+            worker.thread.start();
+        }
+    }
+
+    /**
+     * Asks the source to stop producing frames. Frames already in flight are still processed.
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * Waits until every stage has exited.
+     *
+     * @throws ExecutionException if a stage failed; the cause is the stage's exception
+     */
+    public void awaitTermination() throws InterruptedException, ExecutionException {
+        for (Worker worker : workers) {
+            worker.thread.join();
+        }
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+    }
+
+    /**
+     * Returns the number of frames produced by the source so far.
+     */
+    public long getProducedFrames() {
+        return producedFrames.get();
+    }
+
+    /**
+     * Returns how late the source was woken for each frame, in nanoseconds.
+     */
+    public Histogram getPacingJitter() {
+        return scheduler.getJitter();
+    }
+
+    /**
+     * Returns the number of frame slots the source missed under {@link PacingPolicy#SKIP}.
+     */
+    public long getSkippedFrames() {
+        return scheduler.getSkippedFrames();
+    }
+
+    /**
+     * Returns the number of frames discarded because a stage fell behind.
+     */
+    public long getDroppedFrames() {
+        long dropped = 0;
+        for (Worker worker : workers) {
+            dropped += worker.dropped.get();
+        }
+        return dropped;
+    }
+
+    /**
+     * Returns the number of frames discarded in front of the named stage.
+     */
+    public long getDroppedFrames(String stageName) {
+        for (Worker worker : workers) {
+            if (worker.name.equals(stageName)) {
+                return worker.dropped.get();
+            }
+        }
+        throw new IllegalArgumentException("no such stage: " + stageName);
+    }
+
+    /**
+     * Returns the number of frames waiting in front of the named stage.
+     */
+    public int getQueueDepth(String stageName) {
+        for (Worker worker : workers) {
+            if (worker.name.equals(stageName)) {
+                return worker.input == null ? 0 : worker.input.size();
+            }
+        }
+        throw new IllegalArgumentException("no such stage: " + stageName);
+    }
+
+    private void runSource() {
+        Worker source = workers[0];
+        long sequence = 0;
+        try {
+            scheduler.start();
+            while (!stopRequested && !aborted && (maxFrames <= 0 || sequence < maxFrames)) {
+                long slot = scheduler.awaitNextSlot();
+                Frame frame = obtainFrame();
+                if (frame == null) {
+                    break;
+                }
+                frame.setSequence(sequence++);
+                frame.setTimeStamp(scheduler.getTimeStamp(slot));
+                frame.setCaptureNanos(System.nanoTime());
+                boolean forward;
+                try {
+                    forward = source.stage.process(frame);
+                } catch (EOFException e) {
+                    recycle(frame);
+                    break;
+                }
+                if (forward) {
+                    producedFrames.incrementAndGet();
+                    handOff(1, frame);
+                } else {
+                    recycle(frame);
+                }
+            }
+        } catch (Throwable t) {
+            fail(source, t);
+        } finally {
+            source.done = true;
+        }
+    }
+
+    private void runStage(int index) {
+        Worker worker = workers[index];
+        Worker upstream = workers[index - 1];
+        try {
+            while (!aborted) {
+                Frame frame = worker.input.poll();
+                if (frame == null) {
+                    if (upstream.done && worker.input.isEmpty()) {
+                        break;
+                    }
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    continue;
+                }
+                if (worker.stage.process(frame) && index + 1 < workers.length) {
+                    handOff(index + 1, frame);
+                } else {
+                    recycle(frame);
+                }
+            }
+        } catch (Throwable t) {
+            fail(worker, t);
+        } finally {
+            worker.done = true;
+        }
+    }
+
+    /**
+     * Queues a frame for the given stage, applying that stage's drop policy if it is full.
+     */
+    private void handOff(int index, Frame frame) {
+        Worker next = workers[index];
+        while (!next.input.offer(frame)) {
+            if (aborted || next.done) {
+                recycle(frame);
+                return;
+            }
+            switch (next.policy) {
+                case DROP_NEWEST:
+                    countDrop(next);
+                    recycle(frame);
+                    return;
+                case DROP_OLDEST:
+                    Frame oldest = next.input.poll();
+                    if (oldest != null) {
+                        countDrop(next);
+                        recycle(oldest);
+                    }
+                    break;
+                default:
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    break;
+            }
+        }
+    }
+
+    private void countDrop(Worker worker) {
+        worker.dropped.incrementAndGet();
+        if (metrics != null) {
+            metrics.recordDropped();
+        }
+    }
+
+    private Frame obtainFrame() {
+        Frame frame;
+        while ((frame = framePool.acquire()) == null) {
+            if (aborted) {
+                return null;
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+        return frame;
+    }
+
+    private void recycle(Frame frame) {
+        framePool.release(frame);
+    }
+
+    private void fail(Worker worker, Throwable t) {
+        if (failure == null) {
+            failure = t;
+        }
+        aborted = true;
+        System.err.println("[PIPELINE] stage " + worker.name + " failed: " + t.getMessage());
+    }
+
+    /**
+     * Per-stage state.
+     */
+    private static class Worker {
+
+        final String name;
+
+        final PipelineStage stage;
+
+        /**
+         * Queue feeding this stage; null for the source.
+         */
+        final FrameQueue<Frame> input;
+
+        final DropPolicy policy;
+
+        final AtomicLong dropped = new AtomicLong();
+
+        volatile boolean done;
+
+        Thread thread;
+
+        Worker(String name, PipelineStage stage, FrameQueue<Frame> input, DropPolicy policy) {
+            this.name = name;
+            this.stage = stage;
+            this.input = input;
+            this.policy = policy;
+        }
+    }
+
+    /**
+     * Assembles a pipeline from its stages, in order.
+     */
+    public static class Builder {
+
+        private final List<String> names = new ArrayList<String>();
+
+        private final List<PipelineStage> stages = new ArrayList<PipelineStage>();
+
+        private final List<Integer> capacities = new ArrayList<Integer>();
+
+        private final List<DropPolicy> policies = new ArrayList<DropPolicy>();
+
+        private IRational frameRate = IRational.make(24, 1);
+
+        private IRational timeBase;
+
+        private PacingPolicy pacingPolicy = PacingPolicy.SKIP;
+
+        private long maxFrames;
+
+        private FramePool framePool;
+
+        private StreamMetrics metrics;
+
+        private int reservedFrames;
+
+        /**
+         * Sets the rate at which the source stage is invoked. Defaults to 24 fps.
+         */
+        public Builder setFrameRate(IRational frameRate) {
+            this.frameRate = frameRate;
+            return this;
+        }
+
+        /**
+         * Sets the time base of the encoder the frames are for, so their time stamps fall on
+         * whole ticks. Defaults to the inverse of the frame rate.
+         */
+        public Builder setTimeBase(IRational timeBase) {
+            this.timeBase = timeBase;
+            return this;
+        }
+
+        /**
+         * Sets what the source does after missing frame deadlines. Defaults to
+         * {@link PacingPolicy#SKIP}.
+         */
+        public Builder setPacingPolicy(PacingPolicy pacingPolicy) {
+            this.pacingPolicy = pacingPolicy;
+            return this;
+        }
+
+        /**
+         * Stops the source after the given number of frames; 0 (the default) means unlimited.
+         */
+        public Builder setMaxFrames(long maxFrames) {
+            this.maxFrames = maxFrames;
+            return this;
+        }
+
+        /**
+         * Sets the pool the pipeline takes its frames from. Without one, frames carry no pooled
+         * images or pictures and the stages have to provide their own.
+         */
+        public Builder setFramePool(FramePool framePool) {
+            this.framePool = framePool;
+            return this;
+        }
+
+        /**
+         * Adds frames to the pool for stages that keep references to frames after handing them
+         * on, such as the rendition queues of a {@link RenditionLadder}.
+         */
+        public Builder reserveFrames(int reservedFrames) {
+            this.reservedFrames = reservedFrames;
+            return this;
+        }
+
+        /**
+         * Sets the metrics that receive pacing jitter and count frames skipped by the source or
+         * dropped between stages.
+         */
+        public Builder setMetrics(StreamMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Sets the source stage, which must be added first.
+         */
+        public Builder source(String name, PipelineStage stage) {
+            if (!names.isEmpty()) {
+                throw new IllegalStateException("the source must be the first stage");
+            }
+            return add(name, stage, 0, DropPolicy.BLOCK);
+        }
+
+        /**
+         * Appends a stage fed by a queue of the given capacity.
+         *
+         * @param policy what the previous stage does when this stage's queue is full
+         */
+        public Builder stage(String name, PipelineStage stage, int capacity, DropPolicy policy) {
+            if (names.isEmpty()) {
+                throw new IllegalStateException("add the source stage first");
+            }
+            return add(name, stage, capacity, policy);
+        }
+
+        private Builder add(String name, PipelineStage stage, int capacity, DropPolicy policy) {
+            names.add(name);
+            stages.add(stage);
+            capacities.add(capacity);
+            policies.add(policy);
+            return this;
+        }
+
+        public StreamPipeline build() {
+            return new StreamPipeline(this);
+        }
+    }
+}
@@ -0,0 +1,852 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import com.xuggle.xuggler.Configuration;
+import com.xuggle.xuggler.ICodec;
+import com.xuggle.xuggler.IPacket;
+import com.xuggle.xuggler.IPixelFormat;
+import com.xuggle.xuggler.IRational;
+import com.xuggle.xuggler.IStreamCoder;
+import com.xuggle.xuggler.IVideoPicture;
+import com.xuggle.xuggler.IVideoResampler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Long-lived connection to an {@link OutputSink}, usually a live ingestion endpoint. The H.264
+ * encoder and the sink are opened once and then fed a continuous stream of pictures, instead of
+ * paying connection setup and encoder warm-up for every packet.
+ *
+ * <p>The encoder is created independently of the sink, so when a write to the sink fails the
+ * session reopens only the sink and re-attaches the same encoder. With a
+ * {@linkplain Builder#setReplayBuffer replay buffer} the sink is then resumed from the most recent
+ * keyframe already encoded; otherwise the session asks for a new keyframe and skips the packets
+ * that depend on frames sent before the drop until it arrives.</p>
+ *
+ * <p>The picture size and bit rate can be changed while streaming with {@link #reconfigure}. The
+ * encoding thread replaces the encoder at the next GOP boundary with one that starts with a
+ * keyframe, and hands the packets the old encoder still held to the writing thread. That thread
+ * writes them when the first packet of the new encoder arrives and then switches over: a new bit
+ * rate keeps the connection, as every keyframe carries its own parameter sets, while a new size
+ * reopens the sink for the new stream header. Pictures of a different size than the encoder are
+ * scaled on the way in. The frame rate can be lowered without touching the encoder through
+ * {@link #setMaxFrameRate}.</p>
+ *
+ * <p>To start streaming sooner, the encoder can be {@linkplain #prepare() prepared} before the
+ * destination is known, e.g. while the broadcast is still being provisioned, and pictures encoded
+ * right away. Until {@link #connectAsync} the packets only go to the replay buffer; the writing
+ * thread then opens the sink and resumes it from the last buffered keyframe.</p>
+ *
+ * <p>{@link #encode} and {@link #write} may be called from different threads, one each.</p>
+ */
+public class StreamSession {
+
+    private static final IRational MICROSECONDS = IRational.make(1, 1000000);
+
+    private volatile OutputSink sink;
+
+    private volatile int width;
+
+    private volatile int height;
+
+    private final IRational frameRate;
+
+    private volatile int bitRate;
+
+    private final int groupOfPictures;
+
+    private final String preset;
+
+    private final int maxReconnectAttempts;
+
+    private final long reconnectDelayMillis;
+
+    private final PacketRingBuffer replayBuffer;
+
+    private final boolean warmUpEncoder;
+
+    /**
+     * Encoder in use on the encoding thread.
+     */
+    private volatile IStreamCoder coder;
+
+    /**
+     * Encoder of the packets the writing thread is writing; behind {@link #coder} until the
+     * writing thread reaches the packets of a new encoder.
+     */
+    private IStreamCoder writerCoder;
+
+    /**
+     * Encoder the open sink was opened with, which its stream refers to until it is closed; null
+     * while not connected.
+     */
+    private IStreamCoder sinkCoder;
+
+    /**
+     * Encoder replacements made on the encoding thread and not yet reached by the writing thread.
+     */
+    private final Queue<EncoderSwitch> switches = new ConcurrentLinkedQueue<EncoderSwitch>();
+
+    private volatile boolean connected;
+
+    /**
+     * Set by {@link #connectAsync} until the writing thread has connected.
+     */
+    private volatile boolean connectRequested;
+
+    /**
+     * Set by {@link #requestReconnect} until the writing thread has reopened the sink.
+     */
+    private volatile boolean reconnectRequested;
+
+    /**
+     * {@link System#nanoTime()} at which the first packet reached the sink, 0 until then.
+     */
+    private volatile long firstPacketNanos;
+
+    /**
+     * Parsed {@link #preset}, kept for encoders reopened by {@link #reconfigure}.
+     */
+    private Properties presetProperties;
+
+    /**
+     * Size and bit rate to switch to at the next GOP boundary, or null.
+     */
+    private volatile int[] pendingSettings;
+
+    /**
+     * Minimum distance between encoded pictures in microseconds; 0 encodes every picture.
+     */
+    private volatile long minPictureInterval;
+
+    private long nextPictureTimeStamp;
+
+    private int picturesSinceKeyFrame;
+
+    /**
+     * Scales pictures to the encoder size when they arrive in a different size; null otherwise.
+     */
+    private IVideoResampler resampler;
+
+    private IVideoPicture scaled;
+
+    /**
+     * Set when the sink was reopened; the next encoded picture is forced to be a keyframe.
+     */
+    private volatile boolean keyFrameRequested;
+
+    /**
+     * Set until a keyframe has been written since the sink was opened.
+     */
+    private boolean awaitingKeyFrame = true;
+
+    private long reconnects;
+
+    private StreamSession(Builder builder) {
+        this.sink = builder.sink;
+        this.width = builder.width;
+        this.height = builder.height;
+        this.frameRate = builder.frameRate;
+        this.bitRate = builder.bitRate;
+        this.groupOfPictures = builder.groupOfPictures;
+        this.preset = builder.preset;
+        this.maxReconnectAttempts = builder.maxReconnectAttempts;
+        this.reconnectDelayMillis = builder.reconnectDelayMillis;
+        this.replayBuffer = builder.replayBuffer;
+        this.warmUpEncoder = builder.warmUp;
+    }
+
+    /**
+     * Opens the encoder, if {@link #prepare()} has not already, and connects to the sink.
+     *
+     * @throws IOException if the preset cannot be read or the sink cannot be opened
+     */
+    public void open() throws IOException {
+        prepare();
+        connect();
+    }
+
+    /**
+     * Opens the encoder without connecting to the sink, and unless the builder turned it off, warms
+     * it up by running a GOP of blank pictures through a throwaway encoder with the same settings. This loads the natives, parses
+     * the preset and pages in the encoding code before the first real picture arrives. Does nothing
+     * if the encoder is already open.
+     *
+     * @throws IOException if the preset cannot be read or the encoder cannot be opened
+     */
+    public void prepare() throws IOException {
+        if (coder != null) {
+            return;
+        }
+        System.out.println("[ENCODER] video size is " + width + "x" + height);
+        if (warmUpEncoder) {
+            warmUp();
+        }
+        coder = openCoder();
+        writerCoder = coder;
+    }
+
+    private void warmUp() throws IOException {
+        NativeResources.Scope natives = NativeResources.openScope("StreamSession warm-up");
+        IStreamCoder scratch = natives.add(openCoder());
+        IVideoPicture blank = natives.add(IVideoPicture.make(IPixelFormat.Type.YUV420P, width, height));
+        IPacket packet = natives.add(IPacket.make());
+        try {
+            long frameMicros = (long) (1000000 / frameRate.getDouble());
+            for (int i = 0; i < groupOfPictures; i++) {
+                blank.setComplete(true, IPixelFormat.Type.YUV420P, width, height, i * frameMicros);
+                blank.setKeyFrame(i == 0);
+                blank.setQuality(0);
+                scratch.encodeVideo(packet, blank, 0);
+                packet.reset();
+            }
+            while (scratch.encodeVideo(packet, null, 0) >= 0 && packet.isComplete()) {
+                packet.reset();
+            }
+        } finally {
+            natives.close();
+        }
+    }
+
+    private IStreamCoder openCoder() throws IOException {
+        ICodec codec = ICodec.findEncodingCodec(ICodec.ID.CODEC_ID_H264);
+        IStreamCoder coder = NativeResources.track(IStreamCoder.make(IStreamCoder.Direction.ENCODING, codec),
+                "StreamSession");
+        coder.setNumPicturesInGroupOfPictures(groupOfPictures);
+        coder.setCodec(codec);
+        coder.setBitRate(bitRate);
+        coder.setPixelType(IPixelFormat.Type.YUV420P);
+        coder.setHeight(height);
+        coder.setWidth(width);
+        coder.setFlag(IStreamCoder.Flags.FLAG_QSCALE, true);
+        coder.setGlobalQuality(0);
+        coder.setFrameRate(frameRate);
+        coder.setTimeBase(IRational.make(frameRate.getDenominator(), frameRate.getNumerator()));
+        if (preset != null) {
+            if (presetProperties == null) {
+                presetProperties = loadPreset(preset);
+            }
+            Configuration.configure(presetProperties, coder);
+        }
+        if (coder.open() < 0) {
+            NativeResources.release(coder);
+            throw new IOException("Could not open H.264 encoder");
+        }
+        return coder;
+    }
+
+    /**
+     * Encodes a picture into the given packet. Pictures closer to the previous one than the
+     * {@linkplain #setMaxFrameRate maximum frame rate} allows are skipped.
+     *
+     * @return true if the encoder completed a packet
+     * @throws IOException if a pending reconfiguration could not reopen the encoder or the sink
+     */
+    public boolean encode(IVideoPicture picture, IPacket packet) throws IOException {
+        return encode(picture, picture.isKeyFrame(), packet);
+    }
+
+    /**
+     * Encodes a picture that may be shared with other sessions. Whether it should be a keyframe
+     * is passed in instead of read from the picture, and the picture is only modified if it is
+     * encoded at its own size, which at most one session sharing it can do.
+     *
+     * @return true if the encoder completed a packet
+     * @throws IOException if a pending reconfiguration could not reopen the encoder or the sink
+     */
+    public boolean encode(IVideoPicture picture, boolean keyFrame, IPacket packet) throws IOException {
+        long timeStamp = picture.getPts();
+        long interval = minPictureInterval;
+        if (interval > 0 && !keyFrameRequested) {
+            // allow an eighth of an interval of rounding in the source time stamps
+            if (timeStamp + (interval >> 3) < nextPictureTimeStamp) {
+                return false;
+            }
+            nextPictureTimeStamp = Math.max(nextPictureTimeStamp + interval, timeStamp);
+        }
+        if (keyFrameRequested) {
+            keyFrameRequested = false;
+            keyFrame = true;
+        }
+        if (keyFrame || picturesSinceKeyFrame >= groupOfPictures) {
+            int[] settings = pendingSettings;
+            if (settings != null) {
+                pendingSettings = null;
+                switchEncoder(settings[0], settings[1], settings[2], timeStamp);
+                keyFrame = true;
+            }
+            picturesSinceKeyFrame = 0;
+        }
+        picturesSinceKeyFrame++;
+        IVideoPicture input = scale(picture);
+        if (input.isKeyFrame() != keyFrame) {
+            input.setKeyFrame(keyFrame);
+        }
+        if (coder.encodeVideo(packet, input, 0) < 0) {
+            throw new RuntimeException("Could not encode picture at " + timeStamp);
+        }
+        return packet.isComplete();
+    }
+
+    /**
+     * Asks for a new picture size and bit rate. The encoder is switched at the next GOP boundary;
+     * a later request replaces one that has not been applied yet. Only a new size reopens the
+     * sink.
+     */
+    public void reconfigure(int width, int height, int bitRate) {
+        pendingSettings = new int[] {width, height, bitRate};
+    }
+
+    /**
+     * Limits the rate at which pictures are encoded by skipping pictures that arrive too early,
+     * without reopening the encoder.
+     *
+     * @param framesPerSecond maximum rate, or 0 to encode every picture
+     */
+    public void setMaxFrameRate(double framesPerSecond) {
+        minPictureInterval = framesPerSecond > 0 ? (long) (1000000 / framesPerSecond) : 0;
+    }
+
+    /**
+     * Sets the sink of a session built without one, or replaces the sink before the session
+     * connects.
+     */
+    public void setSink(OutputSink sink) {
+        if (connected) {
+            throw new IllegalStateException("already connected to " + this.sink.getName());
+        }
+        this.sink = sink;
+    }
+
+    /**
+     * Asks the writing thread to connect to the sink when it writes the next packet, resuming from
+     * the last keyframe in the replay buffer. Used instead of {@link #open()} once the session is
+     * {@linkplain #prepare() prepared} and already encoding.
+     */
+    public void connectAsync() {
+        if (sink == null) {
+            throw new IllegalStateException("no sink to connect to");
+        }
+        connectRequested = true;
+    }
+
+    /**
+     * Writes an encoded packet, reconnecting to the sink if the write fails. Before the session is
+     * connected the packet is only kept in the replay buffer.
+     *
+     * @return true if the packet was written to the sink
+     * @throws IOException if the sink could not be opened or reopened
+     */
+    public boolean write(IPacket packet) throws IOException {
+        EncoderSwitch change;
+        while ((change = switches.peek()) != null && packet.getPts() >= change.timeStamp) {
+            switches.poll();
+            applySwitch(change);
+        }
+        if (!connected) {
+            if (!connectRequested) {
+                if (replayBuffer != null) {
+                    replayBuffer.append(packet);
+                }
+                return false;
+            }
+            connectRequested = false;
+            reconnectRequested = false;
+            try {
+                connect();
+                if (!resume()) {
+                    requestKeyFrame();
+                }
+            } catch (IOException e) {
+                System.err.println("[SESSION] could not connect to " + sink.getName() + ": " + e.getMessage());
+                reconnect();
+            }
+        } else if (reconnectRequested) {
+            reconnectRequested = false;
+            System.out.println("[SESSION] reconnecting to " + sink.getName() + " on request");
+            reconnect();
+        }
+        if (awaitingKeyFrame) {
+            if (!packet.isKeyPacket()) {
+                return false;
+            }
+            awaitingKeyFrame = false;
+        }
+        if (replayBuffer != null) {
+            // keep it before writing, so a failed packet is part of the replay
+            replayBuffer.append(packet);
+        }
+        try {
+            sink.write(packet);
+        } catch (IOException e) {
+            System.err.println("[SESSION] " + e.getMessage() + ", reconnecting");
+            reconnect();
+        }
+        if (firstPacketNanos == 0) {
+            firstPacketNanos = System.nanoTime();
+        }
+        return true;
+    }
+
+    /**
+     * Asks the encoder to make the next picture a keyframe.
+     */
+    public void requestKeyFrame() {
+        keyFrameRequested = true;
+    }
+
+    /**
+     * Asks the writing thread to close the sink and open it again before the next packet,
+     * resuming from the last keyframe, e.g. when the ingestion server receives no data.
+     */
+    public void requestReconnect() {
+        reconnectRequested = true;
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} at which the first packet was written to the sink, or
+     * 0 if none has been yet.
+     */
+    public long getFirstPacketNanos() {
+        return firstPacketNanos;
+    }
+
+    /**
+     * Returns the number of times the sink was reopened.
+     */
+    public long getReconnects() {
+        return reconnects;
+    }
+
+    public IStreamCoder getCoder() {
+        return coder;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getBitRate() {
+        return bitRate;
+    }
+
+    public OutputSink getSink() {
+        return sink;
+    }
+
+    /**
+     * Encodes the pictures the encoder still holds back, e.g. for B-frames, and writes their
+     * packets. Call at the end of the input, once nothing is written any more, before
+     * {@link #close()}.
+     */
+    public void finish() {
+        if (coder == null) {
+            return;
+        }
+        EncoderSwitch change;
+        while ((change = switches.poll()) != null) {
+            try {
+                applySwitch(change);
+            } catch (IOException e) {
+                System.err.println("[SESSION] could not switch encoder: " + e.getMessage());
+            }
+        }
+        boolean writing = connected && !awaitingKeyFrame;
+        for (IPacket flushed : drain(coder)) {
+            if (writing) {
+                try {
+                    sink.write(flushed);
+                } catch (IOException e) {
+                    System.err.println("[SESSION] could not write buffered packet: " + e.getMessage());
+                    writing = false;
+                }
+            }
+            NativeResources.release(flushed);
+        }
+    }
+
+    /**
+     * Closes the sink and releases the encoders, including those of switches never reached.
+     */
+    public void close() {
+        if (connected) {
+            closeSink();
+        }
+        Set<IStreamCoder> coders = Collections.newSetFromMap(new IdentityHashMap<IStreamCoder, Boolean>());
+        coders.add(coder);
+        coders.add(writerCoder);
+        coders.add(sinkCoder);
+        EncoderSwitch change;
+        while ((change = switches.poll()) != null) {
+            for (IPacket flushed : change.flushed) {
+                NativeResources.release(flushed);
+            }
+            coders.add(change.coder);
+        }
+        for (IStreamCoder released : coders) {
+            NativeResources.release(released);
+        }
+        coder = null;
+        writerCoder = null;
+        sinkCoder = null;
+        releaseScaler();
+    }
+
+    /**
+     * Replaces the encoder on the encoding thread. The old encoder is drained, and it and its
+     * last packets are handed to the writing thread, which applies the switch when it reaches the
+     * first packet at or after {@code timeStamp}, the time stamp in microseconds of the first
+     * picture for the new encoder.
+     *
+     * @throws IOException if the new encoder cannot be opened; the old one is kept
+     */
+    private void switchEncoder(int newWidth, int newHeight, int newBitRate, long timeStamp) throws IOException {
+        boolean resized = newWidth != width || newHeight != height;
+        System.out.println("[SESSION] switching encoder from " + width + "x" + height + " at " + bitRate / 1000
+                + " kbit/s to " + newWidth + "x" + newHeight + " at " + newBitRate / 1000 + " kbit/s"
+                + (resized ? ", reopening the sink" : ""));
+        int oldWidth = width;
+        int oldHeight = height;
+        int oldBitRate = bitRate;
+        width = newWidth;
+        height = newHeight;
+        bitRate = newBitRate;
+        IStreamCoder next;
+        try {
+            next = openCoder();
+        } catch (IOException e) {
+            width = oldWidth;
+            height = oldHeight;
+            bitRate = oldBitRate;
+            throw e;
+        }
+        // packets carry time stamps in the encoder's time base, pictures in microseconds
+        long switchPts = next.getTimeBase().rescale(timeStamp, MICROSECONDS);
+        switches.offer(new EncoderSwitch(switchPts, drain(coder), next, resized));
+        coder = next;
+        if (resized) {
+            releaseScaler();
+        }
+    }
+
+    /**
+     * Switches the writing thread to the next encoder: writes the old encoder's last packets,
+     * reopens the sink if the size changed and releases the old encoder once nothing refers to it.
+     */
+    private void applySwitch(EncoderSwitch change) throws IOException {
+        try {
+            for (IPacket flushed : change.flushed) {
+                write(flushed);
+            }
+        } finally {
+            for (IPacket flushed : change.flushed) {
+                NativeResources.release(flushed);
+            }
+        }
+        IStreamCoder retired = writerCoder;
+        writerCoder = change.coder;
+        if (change.resized) {
+            // buffered packets have the old size and cannot resume the new stream
+            if (replayBuffer != null) {
+                replayBuffer.clear();
+            }
+            if (connected) {
+                closeSink();
+                try {
+                    connect();
+                } catch (IOException e) {
+                    System.err.println("[SESSION] could not reopen " + sink.getName() + ": " + e.getMessage());
+                    reconnect();
+                }
+            }
+        }
+        retire(retired);
+    }
+
+    /**
+     * Encodes the pictures an encoder still holds back into new packets.
+     */
+    private static List<IPacket> drain(IStreamCoder encoder) {
+        List<IPacket> packets = new ArrayList<IPacket>();
+        IPacket packet = NativeResources.track(IPacket.make(), "StreamSession");
+        while (encoder.encodeVideo(packet, null, 0) >= 0 && packet.isComplete()) {
+            packets.add(packet);
+            packet = NativeResources.track(IPacket.make(), "StreamSession");
+        }
+        NativeResources.release(packet);
+        return packets;
+    }
+
+    /**
+     * Returns the picture to encode, scaled to the encoder size if needed.
+     */
+    private IVideoPicture scale(IVideoPicture picture) {
+        if (picture.getWidth() == width && picture.getHeight() == height) {
+            return picture;
+        }
+        if (resampler == null || resampler.getInputWidth() != picture.getWidth()
+                || resampler.getInputHeight() != picture.getHeight()) {
+            releaseScaler();
+            resampler = NativeResources.track(IVideoResampler.make(width, height, IPixelFormat.Type.YUV420P,
+                    picture.getWidth(), picture.getHeight(), picture.getPixelType()), "StreamSession");
+            if (resampler == null) {
+                throw new RuntimeException("Could not create resampler to " + width + "x" + height);
+            }
+            scaled = NativeResources.track(IVideoPicture.make(IPixelFormat.Type.YUV420P, width, height),
+                    "StreamSession");
+        }
+        if (resampler.resample(scaled, picture) < 0) {
+            throw new RuntimeException("Could not scale picture at " + picture.getPts());
+        }
+        scaled.setPts(picture.getPts());
+        scaled.setQuality(0);
+        return scaled;
+    }
+
+    private void releaseScaler() {
+        NativeResources.release(resampler);
+        resampler = null;
+        NativeResources.release(scaled);
+        scaled = null;
+    }
+
+    private void connect() throws IOException {
+        sink.open(writerCoder);
+        connected = true;
+        awaitingKeyFrame = true;
+        IStreamCoder previous = sinkCoder;
+        sinkCoder = writerCoder;
+        retire(previous);
+    }
+
+    private void closeSink() {
+        sink.close();
+        connected = false;
+        IStreamCoder previous = sinkCoder;
+        sinkCoder = null;
+        retire(previous);
+    }
+
+    /**
+     * Releases an encoder the session has moved past, unless the writing thread or the open sink
+     * still uses it.
+     */
+    private void retire(IStreamCoder retired) {
+        if (retired != null && retired != writerCoder && retired != sinkCoder) {
+            NativeResources.release(retired);
+        }
+    }
+
+    private void reconnect() throws IOException {
+        closeSink();
+        IOException lastFailure = null;
+        for (int attempt = 1; attempt <= maxReconnectAttempts; attempt++) {
+            try {
+                Thread.sleep(reconnectDelayMillis * attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reconnecting to " + sink.getName());
+            }
+            try {
+                connect();
+                if (!resume()) {
+                    requestKeyFrame();
+                }
+                reconnects++;
+                return;
+            } catch (IOException e) {
+                System.err.println("[SESSION] reconnect attempt " + attempt + " failed: " + e.getMessage());
+                lastFailure = e;
+                if (connected) {
+                    closeSink();
+                }
+            }
+        }
+        throw lastFailure != null ? lastFailure : new IOException("Could not reconnect to " + sink.getName());
+    }
+
+    /**
+     * Replays the packets since the last buffered keyframe into the freshly opened sink.
+     *
+     * @return false if there was nothing to resume from
+     * @throws IOException if the sink failed again while replaying
+     */
+    private boolean resume() throws IOException {
+        if (replayBuffer == null) {
+            return false;
+        }
+        long keyFrame = replayBuffer.getLastKeyFrame();
+        if (keyFrame < 0) {
+            return false;
+        }
+        int replayed = replayBuffer.replay(keyFrame, sink);
+        awaitingKeyFrame = false;
+        System.out.println("[SESSION] resumed " + sink.getName() + " with " + replayed + " buffered packets");
+        return true;
+    }
+
+    private static Properties loadPreset(String resource) throws IOException {
+        InputStream is = StreamSession.class.getResourceAsStream(resource);
+        if (is == null) {
+            throw new IOException("You need the " + resource + " file from the Xuggle distribution in your classpath.");
+        }
+        Properties props = new Properties();
+        try {
+            props.load(is);
+        } finally {
+            is.close();
+        }
+        return props;
+    }
+
+    /**
+     * Encoder replacement handed from the encoding to the writing thread.
+     */
+    private static class EncoderSwitch {
+
+        /**
+         * Time stamp of the first picture given to the new encoder, in the encoders' time base;
+         * every earlier packet is the old encoder's.
+         */
+        final long timeStamp;
+
+        /**
+         * Last packets of the old encoder, written before switching.
+         */
+        final List<IPacket> flushed;
+
+        final IStreamCoder coder;
+
+        final boolean resized;
+
+        EncoderSwitch(long timeStamp, List<IPacket> flushed, IStreamCoder coder, boolean resized) {
+            this.timeStamp = timeStamp;
+            this.flushed = flushed;
+            this.coder = coder;
+            this.resized = resized;
+        }
+    }
+
+    /**
+     * Collects the settings of a {@link StreamSession}. The defaults match the encoder settings
+     * previously hard-coded in {@code CreateBroadcast}.
+     */
+    public static class Builder {
+
+        private final OutputSink sink;
+
+        private int width = 640;
+
+        private int height = 480;
+
+        private IRational frameRate = IRational.make(24, 1);
+
+        private int bitRate = 200000;
+
+        private int groupOfPictures = 5;
+
+        private String preset = "/resources/libx264-normal.ffpreset";
+
+        private int maxReconnectAttempts = 5;
+
+        private long reconnectDelayMillis = 500;
+
+        private PacketRingBuffer replayBuffer;
+
+        private boolean warmUp = true;
+
+        /**
+         * @param url RTMP address of the sink, e.g. the ingestion address followed by the stream
+         *            name
+         */
+        public Builder(String url) {
+            this(ContainerSink.rtmp(url));
+        }
+
+        public Builder(OutputSink sink) {
+            this.sink = sink;
+        }
+
+        /**
+         * Creates a builder for a session whose sink is given later with
+         * {@link StreamSession#setSink}, e.g. once the ingestion address is known.
+         */
+        public Builder() {
+            this((OutputSink) null);
+        }
+
+        public Builder setSize(int width, int height) {
+            this.width = width;
+            this.height = height;
+            return this;
+        }
+
+        public Builder setFrameRate(IRational frameRate) {
+            this.frameRate = frameRate;
+            return this;
+        }
+
+        public Builder setBitRate(int bitRate) {
+            this.bitRate = bitRate;
+            return this;
+        }
+
+        public Builder setNumPicturesInGroupOfPictures(int groupOfPictures) {
+            this.groupOfPictures = groupOfPictures;
+            return this;
+        }
+
+        /**
+         * Sets the classpath resource holding the x264 preset, or null to use encoder defaults.
+         */
+        public Builder setPreset(String preset) {
+            this.preset = preset;
+            return this;
+        }
+
+        /**
+         * Sets how often a dropped sink is reopened before giving up, waiting
+         * {@code attempt * delayMillis} before each attempt.
+         */
+        public Builder setReconnect(int maxAttempts, long delayMillis) {
+            this.maxReconnectAttempts = maxAttempts;
+            this.reconnectDelayMillis = delayMillis;
+            return this;
+        }
+
+        /**
+         * Sets the buffer written packets are kept in, so a reopened sink resumes from the last
+         * keyframe instead of waiting for a new one. The session does not close it.
+         */
+        public Builder setReplayBuffer(PacketRingBuffer replayBuffer) {
+            this.replayBuffer = replayBuffer;
+            return this;
+        }
+
+        /**
+         * Turns the warm-up in {@link StreamSession#prepare()} on or off. Worth turning off for
+         * sessions that are not on a latency-critical path, e.g. batch encoding, as it encodes a
+         * GOP of pictures for nothing.
+         */
+        public Builder setWarmUp(boolean warmUp) {
+            this.warmUp = warmUp;
+            return this;
+        }
+
+        public StreamSession build() {
+            return new StreamSession(this);
+        }
+    }
+}
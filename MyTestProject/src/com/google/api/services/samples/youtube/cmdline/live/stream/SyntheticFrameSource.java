@@ -0,0 +1,72 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+/**
+ * Generates a moving colour-bar test pattern. Needs no display or camera, so the pipeline can be
+ * run and benchmarked headless.
+ */
+public class SyntheticFrameSource implements FrameSource {
+
+    private static final int[] BARS = {
+            0xFFFFFF, 0xFFFF00, 0x00FFFF, 0x00FF00, 0xFF00FF, 0xFF0000, 0x0000FF, 0x000000
+    };
+
+    private final int width;
+
+    private final int height;
+
+    /**
+     * BGR bytes of one row of bars, twice as wide as the frame so a shifted window can be copied.
+     */
+    private byte[] row;
+
+    private int offset;
+
+    public SyntheticFrameSource(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    public void open() {
+        row = new byte[width * 2 * 3];
+        int barWidth = Math.max(1, width / BARS.length);
+        for (int x = 0; x < width * 2; x++) {
+            int color = BARS[(x / barWidth) % BARS.length];
+            row[x * 3] = (byte) color;
+            row[x * 3 + 1] = (byte) (color >> 8);
+            row[x * 3 + 2] = (byte) (color >> 16);
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public boolean read(Frame frame) {
+        byte[] bgr = frame.getPixels();
+        int stride = width * 3;
+        int start = offset * 3;
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(row, start, bgr, y * stride, stride);
+        }
+        // a sweeping line so every frame differs from the previous one
+        int line = (int) (frame.getSequence() % height) * stride;
+        for (int i = line; i < line + stride; i++) {
+            bgr[i] = (byte) 0x80;
+        }
+        offset = (offset + 4) % width;
+        return true;
+    }
+
+    @Override
+    public void close() {
+        row = null;
+    }
+}
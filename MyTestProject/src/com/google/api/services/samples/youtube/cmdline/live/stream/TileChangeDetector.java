@@ -0,0 +1,136 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Finds the parts of a captured frame that changed since the previous one. The BGR raster is cut
+ * into {@link #TILE_WIDTH} x {@link #TILE_HEIGHT} tiles and each tile is hashed; a tile whose hash
+ * differs from the one it had in the previous frame is dirty.
+ *
+ * <p>The result is stored on the frame with {@link Frame#setDirtyTiles}, where
+ * {@link ParallelColorConverter} picks it up and converts only the dirty tiles, keeping the rest of
+ * its planes from the previous frame. Screen content is mostly static, so most frames convert a
+ * handful of tiles or none. Unchanged frames are still handed on with their own time stamp so the
+ * stream keeps a steady frame rate; the encoder codes an identical picture as skipped macroblocks,
+ * which is cheap.</p>
+ *
+ * <p>The detector compares each frame with the one it saw before, so it must see every frame the
+ * converter sees, in the same order, as it does when both run in one {@link ConvertStage}.</p>
+ */
+public class TileChangeDetector {
+
+    /**
+     * Tile width in pixels. Even, so every tile owns whole chroma columns.
+     */
+    public static final int TILE_WIDTH = 64;
+
+    /**
+     * Tile height in pixels. Even, so every tile owns whole chroma rows.
+     */
+    public static final int TILE_HEIGHT = 32;
+
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private final int width;
+
+    private final int height;
+
+    private final int columns;
+
+    private final int rows;
+
+    private final long[] hashes;
+
+    /**
+     * False until the first frame has been hashed, and after {@link #reset()}.
+     */
+    private boolean primed;
+
+    public TileChangeDetector(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.columns = (width + TILE_WIDTH - 1) / TILE_WIDTH;
+        this.rows = (height + TILE_HEIGHT - 1) / TILE_HEIGHT;
+        this.hashes = new long[columns * rows];
+    }
+
+    /**
+     * Returns the number of tiles across a frame.
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Returns the number of tiles down a frame.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    public int getTileCount() {
+        return hashes.length;
+    }
+
+    /**
+     * Hashes the frame's pixels and marks its dirty tiles, row by row. Every tile of the first
+     * frame is dirty.
+     *
+     * @return the number of dirty tiles
+     */
+    public int detect(Frame frame) {
+        boolean[] dirty = frame.getDirtyTiles();
+        if (dirty == null || dirty.length != hashes.length) {
+            dirty = new boolean[hashes.length];
+        }
+        ByteBuffer pixels = frame.getPixelBuffer();
+        int count = 0;
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                int tile = row * columns + column;
+                long hash = hashTile(pixels, column * TILE_WIDTH, row * TILE_HEIGHT);
+                dirty[tile] = !primed || hash != hashes[tile];
+                hashes[tile] = hash;
+                if (dirty[tile]) {
+                    count++;
+                }
+            }
+        }
+        primed = true;
+        frame.setDirtyTiles(dirty, count);
+        return count;
+    }
+
+    /**
+     * Makes the next frame entirely dirty, e.g. after the converter lost its planes.
+     */
+    public void reset() {
+        primed = false;
+        Arrays.fill(hashes, 0);
+    }
+
+    /**
+     * Hashes one tile eight bytes at a time; the few bytes left over at the right edge of a row are
+     * folded in one by one.
+     */
+    private long hashTile(ByteBuffer pixels, int left, int top) {
+        int stride = width * 3;
+        int rowBytes = (Math.min(width, left + TILE_WIDTH) - left) * 3;
+        int longs = rowBytes >> 3;
+        int bottom = Math.min(height, top + TILE_HEIGHT);
+        long hash = 0;
+        for (int y = top; y < bottom; y++) {
+            int offset = y * stride + left * 3;
+            int end = offset + (longs << 3);
+            for (; offset < end; offset += 8) {
+                hash = (hash ^ pixels.getLong(offset)) * MULTIPLIER;
+            }
+            end = y * stride + left * 3 + rowBytes;
+            for (; offset < end; offset++) {
+                hash = (hash ^ pixels.get(offset)) * MULTIPLIER;
+            }
+        }
+        return hash ^ (hash >>> 29);
+    }
+}
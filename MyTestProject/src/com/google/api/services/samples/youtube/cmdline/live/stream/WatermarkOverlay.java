@@ -0,0 +1,310 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import com.xuggle.xuggler.IVideoPicture;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.imageio.ImageIO;
+
+/**
+ * Pipeline stage that blends a watermark into the YUV420P picture of each frame.
+ *
+ * <p>The image is converted once, when the overlay is built, into Y, U and V planes premultiplied
+ * by its alpha, plus the matching alpha masks; chroma is averaged over 2x2 blocks like the picture's.
+ * Each frame then only reads, blends and writes back the rows of the picture the watermark covers,
+ * so the cost per frame depends on the size of the watermark, not of the frame, and no RGB image is
+ * composited or converted again.</p>
+ *
+ * <p>Alpha is kept in 0..256, so a pixel blends as {@code (src * (256 - a) + premultiplied) >> 8}
+ * with no division. The watermark is placed on even coordinates so its chroma blocks line up with
+ * the picture's.</p>
+ */
+public class WatermarkOverlay implements PipelineStage {
+
+    /**
+     * The watermark shipped with the samples.
+     */
+    public static final String DEFAULT_RESOURCE = "/resources/watermark.jpg";
+
+    private final int left;
+
+    private final int top;
+
+    private final int width;
+
+    private final int height;
+
+    private final int chromaWidth;
+
+    private final int chromaHeight;
+
+    private final int frameHeight;
+
+    /**
+     * Luma premultiplied by alpha, and 256 minus alpha, per pixel of the watermark.
+     */
+    private final int[] yPremultiplied;
+
+    private final int[] yInverseAlpha;
+
+    /**
+     * Chroma premultiplied by alpha, and 256 minus alpha, per 2x2 block of the watermark.
+     */
+    private final int[] uPremultiplied;
+
+    private final int[] vPremultiplied;
+
+    private final int[] chromaInverseAlpha;
+
+    /**
+     * One row of the picture plane being blended.
+     */
+    private final byte[] row;
+
+    private WatermarkOverlay(Builder builder) {
+        BufferedImage image = builder.image;
+        if (builder.scaledWidth > 0 && builder.scaledWidth != image.getWidth()) {
+            image = scale(image, builder.scaledWidth);
+        }
+        int frameWidth = builder.frameWidth;
+        this.frameHeight = builder.frameHeight;
+        int x = builder.x >= 0 ? builder.x : frameWidth - image.getWidth() - builder.margin;
+        int y = builder.y >= 0 ? builder.y : frameHeight - image.getHeight() - builder.margin;
+        this.left = Math.max(0, x) & ~1;
+        this.top = Math.max(0, y) & ~1;
+        this.width = Math.max(0, Math.min(image.getWidth(), frameWidth - left));
+        this.height = Math.max(0, Math.min(image.getHeight(), frameHeight - top));
+        this.chromaWidth = (width + 1) / 2;
+        this.chromaHeight = (height + 1) / 2;
+        this.yPremultiplied = new int[width * height];
+        this.yInverseAlpha = new int[width * height];
+        this.uPremultiplied = new int[chromaWidth * chromaHeight];
+        this.vPremultiplied = new int[chromaWidth * chromaHeight];
+        this.chromaInverseAlpha = new int[chromaWidth * chromaHeight];
+        this.row = new byte[width];
+        premultiply(image, builder.opacity);
+    }
+
+    /**
+     * Reads an image from the class path.
+     *
+     * @throws IOException if the resource is missing or not an image
+     */
+    public static BufferedImage readImage(String resource) throws IOException {
+        InputStream in = WatermarkOverlay.class.getResourceAsStream(resource);
+        if (in == null) {
+            throw new IOException("Missing " + resource);
+        }
+        try {
+            BufferedImage image = ImageIO.read(in);
+            if (image == null) {
+                throw new IOException(resource + " is not a readable image");
+            }
+            return image;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns the covered area in pixels, after clipping to the frame.
+     */
+    public int getArea() {
+        return width * height;
+    }
+
+    @Override
+    public boolean process(Frame frame) {
+        blend(frame.getPicture());
+        return true;
+    }
+
+    /**
+     * Blends the watermark into a YUV420P picture of the frame size given to the builder.
+     */
+    public void blend(IVideoPicture picture) {
+        if (width == 0 || height == 0) {
+            return;
+        }
+        int yLineSize = picture.getDataLineSize(0);
+        int uLineSize = picture.getDataLineSize(1);
+        int vLineSize = picture.getDataLineSize(2);
+        int uOffset = yLineSize * frameHeight;
+        int vOffset = uOffset + uLineSize * ((frameHeight + 1) / 2);
+
+        blendPlane(picture, 0, yLineSize, left, top, width, height, yPremultiplied, yInverseAlpha);
+        blendPlane(picture, uOffset, uLineSize, left >> 1, top >> 1, chromaWidth, chromaHeight,
+                uPremultiplied, chromaInverseAlpha);
+        blendPlane(picture, vOffset, vLineSize, left >> 1, top >> 1, chromaWidth, chromaHeight,
+                vPremultiplied, chromaInverseAlpha);
+    }
+
+    /**
+     * Reads each covered row of one plane, blends it and writes it back.
+     */
+    private void blendPlane(IVideoPicture picture, int planeOffset, int lineSize, int x, int y,
+            int planeWidth, int planeHeight, int[] premultiplied, int[] inverseAlpha) {
+        byte[] row = this.row;
+        for (int j = 0; j < planeHeight; j++) {
+            int offset = planeOffset + (y + j) * lineSize + x;
+            picture.get(offset, row, 0, planeWidth);
+            int i = j * planeWidth;
+            for (int k = 0; k < planeWidth; k++, i++) {
+                row[k] = (byte) (((row[k] & 0xFF) * inverseAlpha[i] + premultiplied[i]) >> 8);
+            }
+            picture.put(row, 0, offset, planeWidth);
+        }
+    }
+
+    /**
+     * Converts the image to BT.601 limited-range YUV with the coefficients of
+     * {@link ParallelColorConverter}, and premultiplies each sample by its alpha times the opacity.
+     * The 128 added to every premultiplied value rounds the blend.
+     */
+    private void premultiply(BufferedImage image, float opacity) {
+        int[] argb = image.getRGB(0, 0, width, height, null, 0, width);
+        int scale = Math.round(opacity * 256);
+        int[] alpha = new int[argb.length];
+        int[] u = new int[argb.length];
+        int[] v = new int[argb.length];
+        boolean hasAlpha = image.getColorModel().hasAlpha();
+        for (int i = 0; i < argb.length; i++) {
+            int pixel = argb[i];
+            int r = (pixel >> 16) & 0xFF;
+            int g = (pixel >> 8) & 0xFF;
+            int b = pixel & 0xFF;
+            int a = hasAlpha ? pixel >>> 24 : 255;
+            // 0..255 to 0..256, then scaled by the opacity
+            a = ((a + (a >> 7)) * scale) >> 8;
+            alpha[i] = a;
+            int luma = ((66 * r + 129 * g + 25 * b + 128) >> 8) + 16;
+            yPremultiplied[i] = luma * a + 128;
+            yInverseAlpha[i] = 256 - a;
+            u[i] = ((-38 * r - 74 * g + 112 * b + 128) >> 8) + 128;
+            v[i] = ((112 * r - 94 * g - 18 * b + 128) >> 8) + 128;
+        }
+        for (int cy = 0; cy < chromaHeight; cy++) {
+            for (int cx = 0; cx < chromaWidth; cx++) {
+                int alphaSum = 0;
+                int uSum = 0;
+                int vSum = 0;
+                int samples = 0;
+                for (int dy = 0; dy < 2; dy++) {
+                    int py = cy * 2 + dy;
+                    if (py >= height) {
+                        continue;
+                    }
+                    for (int dx = 0; dx < 2; dx++) {
+                        int px = cx * 2 + dx;
+                        if (px >= width) {
+                            continue;
+                        }
+                        int i = py * width + px;
+                        alphaSum += alpha[i];
+                        uSum += u[i] * alpha[i];
+                        vSum += v[i] * alpha[i];
+                        samples++;
+                    }
+                }
+                int c = cy * chromaWidth + cx;
+                chromaInverseAlpha[c] = 256 - (alphaSum + samples / 2) / samples;
+                uPremultiplied[c] = (uSum + samples / 2) / samples + 128;
+                vPremultiplied[c] = (vSum + samples / 2) / samples + 128;
+            }
+        }
+    }
+
+    private static BufferedImage scale(BufferedImage image, int scaledWidth) {
+        int scaledHeight = Math.max(1, (int) Math.round((double) image.getHeight() * scaledWidth / image.getWidth()));
+        BufferedImage scaled = new BufferedImage(scaledWidth, scaledHeight, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, scaledWidth, scaledHeight, null);
+        } finally {
+            g.dispose();
+        }
+        return scaled;
+    }
+
+    /**
+     * Collects the settings of a {@link WatermarkOverlay}. By default the image is drawn at its own
+     * size, 16 pixels in from the bottom right corner, at 60% opacity.
+     */
+    public static class Builder {
+
+        private final BufferedImage image;
+
+        private final int frameWidth;
+
+        private final int frameHeight;
+
+        private int x = -1;
+
+        private int y = -1;
+
+        private int margin = 16;
+
+        private int scaledWidth;
+
+        private float opacity = 0.6f;
+
+        /**
+         * @param image       the watermark; its alpha channel, if any, is kept
+         * @param frameWidth  width of the pictures it is blended into
+         * @param frameHeight height of the pictures it is blended into
+         */
+        public Builder(BufferedImage image, int frameWidth, int frameHeight) {
+            this.image = image;
+            this.frameWidth = frameWidth;
+            this.frameHeight = frameHeight;
+        }
+
+        /**
+         * Places the top left corner of the watermark, rounded down to even coordinates. The part
+         * outside the frame is cut off.
+         */
+        public Builder setPosition(int x, int y) {
+            if (x < 0 || y < 0) {
+                throw new IllegalArgumentException("position must not be negative: " + x + "," + y);
+            }
+            this.x = x;
+            this.y = y;
+            return this;
+        }
+
+        /**
+         * Sets the distance from the bottom right corner when no position is set.
+         */
+        public Builder setMargin(int margin) {
+            this.margin = margin;
+            return this;
+        }
+
+        /**
+         * Scales the image to this width, keeping its aspect ratio, before it is converted.
+         */
+        public Builder setWidth(int scaledWidth) {
+            this.scaledWidth = scaledWidth;
+            return this;
+        }
+
+        /**
+         * Sets the opacity, from 0 (invisible) to 1, applied on top of the image's own alpha.
+         */
+        public Builder setOpacity(float opacity) {
+            if (opacity < 0 || opacity > 1) {
+                throw new IllegalArgumentException("opacity must be between 0 and 1: " + opacity);
+            }
+            this.opacity = opacity;
+            return this;
+        }
+
+        public WatermarkOverlay build() {
+            return new WatermarkOverlay(this);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import com.github.sarxos.webcam.Webcam;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Captures frames from the default webcam.
+ *
+ * <p>The camera's RGB bytes are read into one reusable direct buffer and swapped into the BGR
+ * raster of the frame, so no {@code BufferedImage} is created per frame.</p>
+ */
+public class WebcamFrameSource implements FrameSource {
+
+    private final Dimension size;
+
+    private Webcam webcam;
+
+    private ByteBuffer rgb;
+
+    /**
+     * @param size capture resolution, e.g. {@code WebcamResolution.QVGA.getSize()}
+     */
+    public WebcamFrameSource(Dimension size) {
+        this.size = new Dimension(size);
+    }
+
+    @Override
+    public void open() throws IOException {
+        webcam = Webcam.getDefault();
+        if (webcam == null) {
+            throw new IOException("No webcam found");
+        }
+        webcam.setViewSize(size);
+        if (!webcam.open()) {
+            throw new IOException("Could not open webcam " + webcam);
+        }
+        rgb = ByteBuffer.allocateDirect(size.width * size.height * 3);
+    }
+
+    @Override
+    public int getWidth() {
+        return size.width;
+    }
+
+    @Override
+    public int getHeight() {
+        return size.height;
+    }
+
+    @Override
+    public boolean read(Frame frame) {
+        rgb.clear();
+        webcam.getImageBytes(rgb);
+        byte[] bgr = frame.getPixels();
+        int length = Math.min(bgr.length, rgb.capacity());
+        for (int i = 0; i + 2 < length; i += 3) {
+            bgr[i] = rgb.get(i + 2);
+            bgr[i + 1] = rgb.get(i + 1);
+            bgr[i + 2] = rgb.get(i);
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if (webcam != null) {
+            webcam.close();
+            webcam = null;
+        }
+    }
+}
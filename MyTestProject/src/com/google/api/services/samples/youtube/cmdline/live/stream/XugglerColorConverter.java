@@ -0,0 +1,46 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import com.xuggle.xuggler.IPixelFormat;
+import com.xuggle.xuggler.IVideoPicture;
+import com.xuggle.xuggler.IVideoResampler;
+
+/**
+ * Converts through Xuggler's native swscale resampler.
+ *
+ * <p>{@link com.xuggle.xuggler.video.IConverter#toPicture} allocates a new picture on every call,
+ * so this converter does what that converter does internally against the pooled pictures of the
+ * frame instead: the pixels are copied into the BGR24 staging picture and a single
+ * {@link IVideoResampler}, created once, writes the YUV420P picture.</p>
+ */
+public class XugglerColorConverter implements ColorConverter {
+
+    private IVideoResampler resampler;
+
+    @Override
+    public void convert(Frame frame) {
+        IVideoPicture source = frame.getSourcePicture();
+        IVideoPicture picture = frame.getPicture();
+        byte[] pixels = frame.getPixels();
+        int width = picture.getWidth();
+        int height = picture.getHeight();
+        source.put(pixels, 0, 0, pixels.length);
+        source.setComplete(true, IPixelFormat.Type.BGR24, width, height, frame.getTimeStamp());
+
+        if (resampler == null) {
+            resampler = NativeResources.track(IVideoResampler.make(width, height, IPixelFormat.Type.YUV420P,
+                    width, height, IPixelFormat.Type.BGR24), "XugglerColorConverter");
+            if (resampler == null) {
+                throw new IllegalStateException("Could not create BGR24 to YUV420P resampler");
+            }
+        }
+        if (resampler.resample(picture, source) < 0) {
+            throw new RuntimeException("Could not convert image " + frame.getSequence());
+        }
+    }
+
+    @Override
+    public void close() {
+        NativeResources.release(resampler);
+        resampler = null;
+    }
+}
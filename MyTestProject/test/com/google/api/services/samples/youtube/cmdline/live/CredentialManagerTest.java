@@ -0,0 +1,152 @@
+package com.google.api.services.samples.youtube.cmdline.live;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.api.client.auth.oauth2.Credential;
+import com.google.api.client.auth.oauth2.StoredCredential;
+import com.google.api.client.util.store.DataStore;
+import com.google.api.client.util.store.MemoryDataStoreFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exercises caching and background refresh of {@link CredentialManager} against a
+ * {@link LocalTokenServer}. Each datastore starts with a stored refresh token, so the browser flow
+ * never runs.
+ */
+public class CredentialManagerTest {
+
+    private static final List<String> SCOPES = Collections.singletonList("https://www.googleapis.com/auth/youtube");
+
+    private static final long REFRESH_MARGIN_MILLIS = 1000;
+
+    private static final long RETRY_DELAY_MILLIS = 100;
+
+    private static final long WAIT_MILLIS = 5000;
+
+    private LocalTokenServer server;
+
+    private MemoryDataStoreFactory dataStoreFactory;
+
+    private CredentialManager manager;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalTokenServer(0);
+        server.start();
+        dataStoreFactory = new MemoryDataStoreFactory();
+        manager = new CredentialManager.Builder(Auth.HTTP_TRANSPORT, Auth.JSON_FACTORY)
+                .setClientSecretsResource("/resources/test_client_secrets.json")
+                .setDataStoreFactory(dataStoreFactory)
+                .setTokenServerUrl(server.getTokenServerUrl())
+                .setRefreshMargin(REFRESH_MARGIN_MILLIS, TimeUnit.MILLISECONDS)
+                .setRetryDelay(RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        manager.close();
+        server.stop();
+    }
+
+    @Test
+    public void cachesOneCredentialPerDatastore() throws Exception {
+        store("livebroadcast", TimeUnit.HOURS.toMillis(1));
+        store("livestream", TimeUnit.HOURS.toMillis(1));
+
+        Credential broadcast = manager.authorize(SCOPES, "livebroadcast");
+        assertSame(broadcast, manager.authorize(SCOPES, "livebroadcast"));
+        assertNotSame(broadcast, manager.authorize(SCOPES, "livestream"));
+        assertEquals("stored-access-livebroadcast", broadcast.getAccessToken());
+        // the stored tokens are valid for another hour, so nothing asks the token endpoint
+        assertEquals(0, server.getRequests());
+        assertEquals(0, manager.getRefreshes());
+    }
+
+    @Test
+    public void refreshesBeforeExpiry() throws Exception {
+        long expiration = System.currentTimeMillis() + REFRESH_MARGIN_MILLIS + 500;
+        store("livebroadcast", expiration - System.currentTimeMillis());
+
+        Credential credential = manager.authorize(SCOPES, "livebroadcast");
+        awaitRefreshes(1);
+        assertTrue("refreshed after the token expired", System.currentTimeMillis() < expiration);
+        assertSame(credential, manager.authorize(SCOPES, "livebroadcast"));
+        assertTrue(credential.getAccessToken(), credential.getAccessToken().startsWith("local-access-"));
+        assertTrue(credential.getExpirationTimeMilliseconds() > expiration);
+        // the refresh listener wrote the new token back to the datastore
+        assertEquals(credential.getAccessToken(), datastore("livebroadcast").get("user").getAccessToken());
+        assertEquals(0, manager.getRefreshFailures());
+    }
+
+    @Test
+    public void retriesFailedRefresh() throws Exception {
+        server.failNext(2);
+        store("livebroadcast", 0);
+
+        Credential credential = manager.authorize(SCOPES, "livebroadcast");
+        awaitRefreshes(1);
+        assertEquals(2, manager.getRefreshFailures());
+        assertEquals(3, server.getRequests());
+        assertSame(credential, manager.authorize(SCOPES, "livebroadcast"));
+        assertTrue(credential.getAccessToken(), credential.getAccessToken().startsWith("local-access-"));
+    }
+
+    @Test
+    public void rejectedRefreshDropsCachedCredential() throws Exception {
+        server.setRevoked(true);
+        store("livebroadcast", 0);
+
+        Credential rejected = manager.authorize(SCOPES, "livebroadcast");
+        awaitFailures(1);
+        Thread.sleep(RETRY_DELAY_MILLIS * 3);
+        // rejected outright, so not retried
+        assertEquals(1, manager.getRefreshFailures());
+        assertEquals(1, server.getRequests());
+
+        // the refresh token is still stored, so the next authorize loads it instead of reusing the old one
+        server.setRevoked(false);
+        Credential reloaded = manager.authorize(SCOPES, "livebroadcast");
+        assertNotSame(rejected, reloaded);
+        awaitRefreshes(1);
+        assertSame(reloaded, manager.authorize(SCOPES, "livebroadcast"));
+    }
+
+    private DataStore<StoredCredential> datastore(String name) throws IOException {
+        return dataStoreFactory.getDataStore(name);
+    }
+
+    private void store(String name, long expiresInMillis) throws IOException {
+        datastore(name).set("user", new StoredCredential()
+                .setAccessToken("stored-access-" + name)
+                .setRefreshToken("stored-refresh-" + name)
+                .setExpirationTimeMilliseconds(System.currentTimeMillis() + expiresInMillis));
+    }
+
+    private void awaitRefreshes(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (manager.getRefreshes() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, manager.getRefreshes());
+    }
+
+    private void awaitFailures(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (manager.getRefreshFailures() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, manager.getRefreshFailures());
+    }
+}
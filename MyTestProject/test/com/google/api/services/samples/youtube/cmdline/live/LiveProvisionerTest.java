@@ -0,0 +1,198 @@
+package com.google.api.services.samples.youtube.cmdline.live;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.util.DateTime;
+import com.google.api.client.util.Sleeper;
+import com.google.api.services.youtube.YouTube;
+import com.google.api.services.youtube.model.CdnSettings;
+import com.google.api.services.youtube.model.LiveBroadcast;
+import com.google.api.services.youtube.model.LiveBroadcastSnippet;
+import com.google.api.services.youtube.model.LiveBroadcastStatus;
+import com.google.api.services.youtube.model.LiveStream;
+import com.google.api.services.youtube.model.LiveStreamSnippet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks the retry policy of {@link LiveProvisioner} against errors injected by a
+ * {@link LocalLiveApiServer}. Backoffs are recorded instead of slept.
+ */
+public class LiveProvisionerTest {
+
+    private LocalLiveApiServer server;
+
+    private YouTube youtube;
+
+    private final List<Long> backoffs = Collections.synchronizedList(new ArrayList<Long>());
+
+    private LiveProvisioner provisioner;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new LocalLiveApiServer(0);
+        server.start();
+        youtube = new YouTube.Builder(Auth.HTTP_TRANSPORT, Auth.JSON_FACTORY, null)
+                .setRootUrl(server.getRootUrl()).setApplicationName("LiveProvisionerTest").build();
+        provisioner = newProvisioner(5);
+    }
+
+    @After
+    public void tearDown() {
+        provisioner.close();
+        server.stop();
+    }
+
+    @Test
+    public void retriesServerErrors() throws Exception {
+        server.failNext(2, 503, "backendError");
+        assertNotNull(insertBroadcast().getId());
+        assertEquals(2, provisioner.getRetries());
+        assertEquals(3, provisioner.getRequests());
+        assertEquals(2, backoffs.size());
+        assertEquals(1, server.getBroadcastCount());
+    }
+
+    @Test
+    public void retriesTooManyRequests() throws Exception {
+        server.failNext(1, 429, "rateLimitExceeded");
+        assertNotNull(insertBroadcast().getId());
+        assertEquals(1, provisioner.getRetries());
+    }
+
+    @Test
+    public void retriesRateLimitForbidden() throws Exception {
+        server.failNext(1, 403, "rateLimitExceeded");
+        insertBroadcast();
+        server.failNext(1, 403, "userRateLimitExceeded");
+        insertBroadcast();
+        assertEquals(2, provisioner.getRetries());
+        assertEquals(2, server.getBroadcastCount());
+    }
+
+    @Test
+    public void doesNotRetryQuotaExceeded() throws Exception {
+        server.failNext(3, 403, "quotaExceeded");
+        try {
+            insertBroadcast();
+            fail("quotaExceeded was not reported");
+        } catch (GoogleJsonResponseException e) {
+            assertEquals(403, e.getStatusCode());
+            assertEquals("quotaExceeded", e.getDetails().getErrors().get(0).getReason());
+        }
+        assertEquals(0, provisioner.getRetries());
+        assertEquals(1, server.getRequests());
+        assertTrue(backoffs.isEmpty());
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() throws Exception {
+        provisioner.close();
+        provisioner = newProvisioner(3);
+        server.failNext(10, 503, "backendError");
+        try {
+            insertBroadcast();
+            fail("the last failure was not reported");
+        } catch (GoogleJsonResponseException e) {
+            assertEquals(503, e.getStatusCode());
+        }
+        assertEquals(3, server.getRequests());
+        assertEquals(2, provisioner.getRetries());
+        assertEquals(0, server.getBroadcastCount());
+    }
+
+    @Test
+    public void classifiesErrors() {
+        assertTrue(LiveProvisioner.isRetryable(new ConnectException("refused")));
+        assertTrue(!LiveProvisioner.isRetryable(new IOException("malformed")));
+    }
+
+    @Test
+    public void failedPairDoesNotStopTheOthers() throws Exception {
+        provisioner.close();
+        // one request at a time, so the injected failure hits the first broadcast insert
+        provisioner = new LiveProvisioner.Builder(youtube)
+                .setConcurrency(1)
+                .setSleeper(recordingSleeper())
+                .build();
+        server.failNext(1, 403, "quotaExceeded");
+        List<LiveBroadcast> broadcasts = new ArrayList<LiveBroadcast>();
+        List<LiveStream> streams = new ArrayList<LiveStream>();
+        for (int i = 0; i < 3; i++) {
+            broadcasts.add(newBroadcast("pair " + i));
+            streams.add(newStream("pair " + i));
+        }
+
+        List<LiveProvisioner.Provisioned> results = provisioner.provisionAll(broadcasts, streams);
+        assertEquals(3, results.size());
+        assertNotNull(results.get(0).getFailure());
+        assertNull(results.get(0).getBroadcast());
+        assertNull(results.get(0).getBoundBroadcast());
+        for (int i = 1; i < 3; i++) {
+            LiveProvisioner.Provisioned provisioned = results.get(i);
+            assertNull("pair " + i + " failed: " + provisioned.getFailure(), provisioned.getFailure());
+            assertEquals(provisioned.getStream().getId(),
+                    provisioned.getBoundBroadcast().getContentDetails().getBoundStreamId());
+        }
+        assertEquals(2, server.getBroadcastCount());
+        assertEquals(3, server.getStreamCount());
+    }
+
+    private LiveProvisioner newProvisioner(int maxAttempts) {
+        return new LiveProvisioner.Builder(youtube)
+                .setMaxAttempts(maxAttempts)
+                .setBackoff(10, 100)
+                .setSleeper(recordingSleeper())
+                .build();
+    }
+
+    private Sleeper recordingSleeper() {
+        return new Sleeper() {
+            @Override
+            public void sleep(long millis) {
+                backoffs.add(millis);
+            }
+        };
+    }
+
+    private LiveBroadcast insertBroadcast() throws IOException {
+        return provisioner.execute(youtube.liveBroadcasts().insert("snippet,status", newBroadcast("retry")));
+    }
+
+    private static LiveBroadcast newBroadcast(String title) {
+        LiveBroadcastSnippet snippet = new LiveBroadcastSnippet();
+        snippet.setTitle(title);
+        snippet.setScheduledStartTime(new DateTime("2015-06-15T04:40:00.000Z"));
+        LiveBroadcastStatus status = new LiveBroadcastStatus();
+        status.setPrivacyStatus("private");
+        LiveBroadcast broadcast = new LiveBroadcast();
+        broadcast.setSnippet(snippet);
+        broadcast.setStatus(status);
+        return broadcast;
+    }
+
+    private static LiveStream newStream(String title) {
+        LiveStreamSnippet snippet = new LiveStreamSnippet();
+        snippet.setTitle(title);
+        CdnSettings cdn = new CdnSettings();
+        cdn.setFormat("720p");
+        cdn.setIngestionType("rtmp");
+        LiveStream stream = new LiveStream();
+        stream.setSnippet(snippet);
+        stream.setCdn(cdn);
+        return stream;
+    }
+}
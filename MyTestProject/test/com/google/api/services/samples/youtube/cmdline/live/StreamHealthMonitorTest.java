@@ -0,0 +1,155 @@
+package com.google.api.services.samples.youtube.cmdline.live;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.api.client.util.DateTime;
+import com.google.api.services.samples.youtube.cmdline.live.StreamHealthMonitor.Action;
+import com.google.api.services.youtube.YouTube;
+import com.google.api.services.youtube.model.CdnSettings;
+import com.google.api.services.youtube.model.LiveBroadcast;
+import com.google.api.services.youtube.model.LiveBroadcastSnippet;
+import com.google.api.services.youtube.model.LiveBroadcastStatus;
+import com.google.api.services.youtube.model.LiveStream;
+import com.google.api.services.youtube.model.LiveStreamSnippet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Polls a {@link LocalLiveApiServer} through {@link StreamHealthMonitor#poll()} one step at a time,
+ * standing in for the ingestion servers with {@link LocalLiveApiServer#setStreamHealth}. No
+ * session is attached, so actions are only counted.
+ */
+public class StreamHealthMonitorTest {
+
+    private static final long MIN_INTERVAL_MILLIS = 100;
+
+    private static final long MAX_INTERVAL_MILLIS = 800;
+
+    private static final long COOLDOWN_MILLIS = 300;
+
+    private LocalLiveApiServer server;
+
+    private String broadcastId;
+
+    private String streamId;
+
+    private final AtomicInteger ended = new AtomicInteger();
+
+    private StreamHealthMonitor monitor;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new LocalLiveApiServer(0);
+        server.start();
+        YouTube youtube = new YouTube.Builder(Auth.HTTP_TRANSPORT, Auth.JSON_FACTORY, null)
+                .setRootUrl(server.getRootUrl()).setApplicationName("StreamHealthMonitorTest").build();
+        broadcastId = youtube.liveBroadcasts().insert("snippet,status", newBroadcast()).execute().getId();
+        streamId = youtube.liveStreams().insert("snippet,cdn", newStream()).execute().getId();
+        server.setLifeCycleStatus(broadcastId, "live");
+        monitor = new StreamHealthMonitor.Builder(youtube, broadcastId, streamId)
+                .setInterval(MIN_INTERVAL_MILLIS, MAX_INTERVAL_MILLIS)
+                .setActionCooldown(COOLDOWN_MILLIS)
+                .setOnBroadcastEnded(new Runnable() {
+                    @Override
+                    public void run() {
+                        ended.incrementAndGet();
+                    }
+                })
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        monitor.stop();
+        server.stop();
+    }
+
+    @Test
+    public void unchangedHealthyStreamIsNotModifiedAndBacksOff() {
+        server.setStreamHealth(streamId, "active", "good");
+        assertEquals(MIN_INTERVAL_MILLIS, monitor.poll());
+        assertEquals("good", monitor.getHealthStatus());
+        assertEquals(0, monitor.getNotModified());
+
+        // stream and broadcast both come back as 304, so the interval doubles up to the maximum
+        assertEquals(2 * MIN_INTERVAL_MILLIS, monitor.poll());
+        assertEquals(2, monitor.getNotModified());
+        assertEquals(2, server.getNotModified());
+        assertEquals(4 * MIN_INTERVAL_MILLIS, monitor.poll());
+        assertEquals(8 * MIN_INTERVAL_MILLIS, monitor.poll());
+        assertEquals(MAX_INTERVAL_MILLIS, monitor.poll());
+        assertEquals(8, monitor.getNotModified());
+
+        // a change brings it back to the minimum
+        server.setStreamHealth(streamId, "active", "ok", "bitrateLow");
+        assertEquals(MIN_INTERVAL_MILLIS, monitor.poll());
+        assertEquals(0, monitor.getFailures());
+    }
+
+    @Test
+    public void actionsAreTakenOncePerCooldown() throws Exception {
+        server.setStreamHealth(streamId, "active", "bad", "bitrateHigh", "gopSizeLong");
+        assertEquals(MIN_INTERVAL_MILLIS, monitor.poll());
+        assertTrue(monitor.getIssues().contains("bitrateHigh"));
+        assertEquals(1, monitor.getActions(Action.LOWER_BIT_RATE));
+        assertEquals(1, monitor.getActions(Action.KEY_FRAME));
+
+        // still reported, but within the cooldown
+        assertEquals(MIN_INTERVAL_MILLIS, monitor.poll());
+        assertEquals(MIN_INTERVAL_MILLIS, monitor.poll());
+        assertEquals(1, monitor.getActions(Action.LOWER_BIT_RATE));
+        assertEquals(1, monitor.getActions(Action.KEY_FRAME));
+
+        Thread.sleep(COOLDOWN_MILLIS + 50);
+        monitor.poll();
+        assertEquals(2, monitor.getActions(Action.LOWER_BIT_RATE));
+        assertEquals(2, monitor.getActions(Action.KEY_FRAME));
+        // nothing is being sent without a session, so a reconnect would not help
+        assertEquals(0, monitor.getActions(Action.RECONNECT));
+    }
+
+    @Test
+    public void completeBroadcastRunsCallbackOnce() {
+        server.setStreamHealth(streamId, "active", "good");
+        monitor.poll();
+        assertEquals("live", monitor.getLifeCycleStatus());
+        assertEquals(0, ended.get());
+
+        server.setLifeCycleStatus(broadcastId, "complete");
+        monitor.poll();
+        assertTrue(monitor.isBroadcastEnded());
+        assertEquals("complete", monitor.getLifeCycleStatus());
+        assertEquals(1, ended.get());
+        monitor.poll();
+        assertEquals(1, ended.get());
+    }
+
+    private static LiveBroadcast newBroadcast() {
+        LiveBroadcastSnippet snippet = new LiveBroadcastSnippet();
+        snippet.setTitle("health");
+        snippet.setScheduledStartTime(new DateTime("2015-06-15T04:40:00.000Z"));
+        LiveBroadcastStatus status = new LiveBroadcastStatus();
+        status.setPrivacyStatus("private");
+        LiveBroadcast broadcast = new LiveBroadcast();
+        broadcast.setSnippet(snippet);
+        broadcast.setStatus(status);
+        return broadcast;
+    }
+
+    private static LiveStream newStream() {
+        LiveStreamSnippet snippet = new LiveStreamSnippet();
+        snippet.setTitle("health");
+        CdnSettings cdn = new CdnSettings();
+        cdn.setFormat("720p");
+        cdn.setIngestionType("rtmp");
+        LiveStream stream = new LiveStream();
+        stream.setSnippet(snippet);
+        stream.setCdn(cdn);
+        return stream;
+    }
+}
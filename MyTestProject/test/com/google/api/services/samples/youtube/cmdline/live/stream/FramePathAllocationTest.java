@@ -0,0 +1,100 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Checks that a frame taken through the pooled path, from capture to the sink, allocates nothing
+ * on the Java heap once the pool is warm.
+ */
+public class FramePathAllocationTest {
+
+    private static final int WIDTH = 64;
+
+    private static final int HEIGHT = 48;
+
+    private static final int WARM_UP_FRAMES = 200;
+
+    private static final int MEASURED_FRAMES = 1000;
+
+    private FramePool pool;
+
+    private SyntheticFrameSource source;
+
+    private XugglerColorConverter converter;
+
+    private StreamSession session;
+
+    private PipelineStage[] stages;
+
+    private long sequence;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = new FramePool(WIDTH, HEIGHT);
+        pool.allocate(2);
+        source = new SyntheticFrameSource(WIDTH, HEIGHT);
+        source.open();
+        converter = new XugglerColorConverter();
+        session = new StreamSession.Builder(new MemorySink())
+                .setSize(WIDTH, HEIGHT)
+                .setWarmUp(false)
+                .build();
+        session.open();
+        stages = new PipelineStage[] {
+                new CaptureStage(source),
+                new ConvertStage(converter),
+                new EncodeStage(session),
+                new MuxStage(session)
+        };
+    }
+
+    @After
+    public void tearDown() {
+        session.close();
+        converter.close();
+        source.close();
+        pool.close();
+    }
+
+    @Test
+    public void steadyStateFrameAllocatesNothing() throws Exception {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported());
+        allocations.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+
+        // fills the pooled packets and the sink's buffer, and lets the JIT settle
+        runFrames(WARM_UP_FRAMES);
+        long before = allocations.getThreadAllocatedBytes(thread);
+        runFrames(MEASURED_FRAMES);
+        long allocated = allocations.getThreadAllocatedBytes(thread) - before;
+
+        // a few stray bytes over the whole run round down; anything allocated per frame does not
+        assertEquals("bytes allocated per frame (" + allocated + " in total)", 0, allocated / MEASURED_FRAMES);
+    }
+
+    private void runFrames(int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            Frame frame = pool.acquire();
+            frame.setSequence(sequence);
+            frame.setTimeStamp(sequence * 1000000L / 24);
+            frame.setCaptureNanos(System.nanoTime());
+            sequence++;
+            for (PipelineStage stage : stages) {
+                if (!stage.process(frame)) {
+                    break;
+                }
+            }
+            pool.release(frame);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.xuggle.xuggler.IVideoPicture;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares the striped parallel conversion with a plain serial conversion of the same frame,
+ * plane by plane, at sizes that are odd or end just inside or past a tile, and with the swscale
+ * conversion of {@link XugglerColorConverter} it replaces.
+ */
+public class ParallelColorConverterTest {
+
+    private static final int[][] SIZES = {
+            {1, 1}, {2, 2}, {3, 5}, {17, 9},
+            {TileChangeDetector.TILE_WIDTH, TileChangeDetector.TILE_HEIGHT},
+            {TileChangeDetector.TILE_WIDTH - 1, TileChangeDetector.TILE_HEIGHT - 1},
+            {TileChangeDetector.TILE_WIDTH + 1, TileChangeDetector.TILE_HEIGHT + 1},
+            {2 * TileChangeDetector.TILE_WIDTH + 3, 3 * TileChangeDetector.TILE_HEIGHT + 1},
+            {641, 479}, {640, 360}
+    };
+
+    /**
+     * Sizes for the comparison with swscale, which needs the Xuggler natives.
+     */
+    private static final int[][] NATIVE_SIZES = {
+            {TileChangeDetector.TILE_WIDTH, TileChangeDetector.TILE_HEIGHT},
+            {TileChangeDetector.TILE_WIDTH + 1, TileChangeDetector.TILE_HEIGHT + 1},
+            {2 * TileChangeDetector.TILE_WIDTH + 3, 3 * TileChangeDetector.TILE_HEIGHT + 1},
+            {640, 360}
+    };
+
+    /**
+     * Most a sample may differ from swscale's, which rounds differently and filters chroma over
+     * more than a 2x2 block.
+     */
+    private static final int SWSCALE_TOLERANCE = 2;
+
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void startPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void stopPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void fullFrameMatchesSerialConversion() {
+        Random random = new Random(42);
+        for (int[] size : SIZES) {
+            int width = size[0];
+            int height = size[1];
+            byte[] bgr = randomImage(random, width, height);
+            ParallelColorConverter converter = new ParallelColorConverter(width, height, pool);
+            converter.convertPlanes(bgr);
+            assertSamePlanes(width + "x" + height, new SerialConversion(bgr, width, height), converter);
+        }
+    }
+
+    @Test
+    public void dirtyTilesMatchSerialConversionOfNewFrame() {
+        Random random = new Random(7);
+        for (int[] size : SIZES) {
+            int width = size[0];
+            int height = size[1];
+            int columns = (width + TileChangeDetector.TILE_WIDTH - 1) / TileChangeDetector.TILE_WIDTH;
+            int rows = (height + TileChangeDetector.TILE_HEIGHT - 1) / TileChangeDetector.TILE_HEIGHT;
+            byte[] previous = randomImage(random, width, height);
+            ParallelColorConverter converter = new ParallelColorConverter(width, height, pool);
+            converter.convertPlanes(previous);
+
+            // change every other tile, including the partial ones on the right and bottom edges
+            byte[] next = previous.clone();
+            boolean[] dirty = new boolean[columns * rows];
+            for (int tile = 0; tile < dirty.length; tile++) {
+                if (tile % 2 == 0 || tile == dirty.length - 1) {
+                    dirty[tile] = true;
+                    repaintTile(random, next, width, height, tile % columns, tile / columns);
+                }
+            }
+            converter.convertPlanes(next, dirty);
+            assertSamePlanes(width + "x" + height + " dirty", new SerialConversion(next, width, height), converter);
+        }
+    }
+
+    @Test
+    public void matchesSwscaleWithinTolerance() {
+        for (int[] size : NATIVE_SIZES) {
+            int width = size[0];
+            int height = size[1];
+            FramePool frames = new FramePool(width, height);
+            XugglerColorConverter swscale = new XugglerColorConverter();
+            ParallelColorConverter converter = new ParallelColorConverter(width, height, pool);
+            try {
+                frames.allocate(1);
+                Frame frame = frames.acquire();
+                paintSmoothImage(frame.getPixels(), width, height);
+                swscale.convert(frame);
+                converter.convertPlanes(frame.getPixels());
+
+                IVideoPicture picture = frame.getPicture();
+                int chromaWidth = (width + 1) / 2;
+                int chromaHeight = (height + 1) / 2;
+                int uOffset = picture.getDataLineSize(0) * height;
+                int vOffset = uOffset + picture.getDataLineSize(1) * chromaHeight;
+                String message = width + "x" + height;
+                assertClose(message + " Y", readPlane(picture, 0, 0, width, height), converter.getYPlane());
+                assertClose(message + " U", readPlane(picture, 1, uOffset, chromaWidth, chromaHeight),
+                        converter.getUPlane());
+                assertClose(message + " V", readPlane(picture, 2, vOffset, chromaWidth, chromaHeight),
+                        converter.getVPlane());
+                frames.release(frame);
+            } finally {
+                swscale.close();
+                frames.close();
+            }
+        }
+    }
+
+    private static void assertClose(String message, byte[] expected, byte[] actual) {
+        for (int i = 0; i < expected.length; i++) {
+            int difference = Math.abs((expected[i] & 0xFF) - (actual[i] & 0xFF));
+            assertTrue(message + " sample " + i + ": " + (expected[i] & 0xFF) + " vs " + (actual[i] & 0xFF),
+                    difference <= SWSCALE_TOLERANCE);
+        }
+    }
+
+    private static byte[] readPlane(IVideoPicture picture, int index, int offset, int planeWidth, int planeHeight) {
+        byte[] plane = new byte[planeWidth * planeHeight];
+        int lineSize = picture.getDataLineSize(index);
+        for (int row = 0; row < planeHeight; row++) {
+            picture.get(offset + row * lineSize, plane, row * planeWidth, planeWidth);
+        }
+        return plane;
+    }
+
+    /**
+     * Paints gradients, so neighbouring pixels are close and swscale's wider chroma filter lands
+     * on about the same value as a 2x2 average.
+     */
+    private static void paintSmoothImage(byte[] bgr, int width, int height) {
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = (y * width + x) * 3;
+                bgr[i] = (byte) (x * 255 / Math.max(1, width - 1));
+                bgr[i + 1] = (byte) (y * 255 / Math.max(1, height - 1));
+                bgr[i + 2] = (byte) ((x + y) * 255 / Math.max(1, width + height - 2));
+            }
+        }
+    }
+
+    private static void assertSamePlanes(String message, SerialConversion expected, ParallelColorConverter actual) {
+        assertArrayEquals(message + " Y", expected.y, actual.getYPlane());
+        assertArrayEquals(message + " U", expected.u, actual.getUPlane());
+        assertArrayEquals(message + " V", expected.v, actual.getVPlane());
+    }
+
+    private static byte[] randomImage(Random random, int width, int height) {
+        byte[] bgr = new byte[width * height * 3];
+        random.nextBytes(bgr);
+        return bgr;
+    }
+
+    private static void repaintTile(Random random, byte[] bgr, int width, int height, int column, int row) {
+        int left = column * TileChangeDetector.TILE_WIDTH;
+        int right = Math.min(width, left + TileChangeDetector.TILE_WIDTH);
+        int top = row * TileChangeDetector.TILE_HEIGHT;
+        int bottom = Math.min(height, top + TileChangeDetector.TILE_HEIGHT);
+        for (int y = top; y < bottom; y++) {
+            for (int i = (y * width + left) * 3; i < (y * width + right) * 3; i++) {
+                bgr[i] = (byte) random.nextInt(256);
+            }
+        }
+    }
+
+    /**
+     * BT.601 limited-range conversion one pixel at a time, with the chroma of each 2x2 block
+     * averaged and the last row and column repeated on odd sizes.
+     */
+    private static class SerialConversion {
+
+        final byte[] y;
+
+        final byte[] u;
+
+        final byte[] v;
+
+        SerialConversion(byte[] bgr, int width, int height) {
+            int chromaWidth = (width + 1) / 2;
+            int chromaHeight = (height + 1) / 2;
+            y = new byte[width * height];
+            u = new byte[chromaWidth * chromaHeight];
+            v = new byte[chromaWidth * chromaHeight];
+            for (int row = 0; row < height; row++) {
+                for (int column = 0; column < width; column++) {
+                    int i = (row * width + column) * 3;
+                    int b = bgr[i] & 0xFF;
+                    int g = bgr[i + 1] & 0xFF;
+                    int r = bgr[i + 2] & 0xFF;
+                    y[row * width + column] = (byte) (((66 * r + 129 * g + 25 * b + 128) >> 8) + 16);
+                }
+            }
+            for (int row = 0; row < chromaHeight; row++) {
+                for (int column = 0; column < chromaWidth; column++) {
+                    int r = 0;
+                    int g = 0;
+                    int b = 0;
+                    for (int dy = 0; dy < 2; dy++) {
+                        for (int dx = 0; dx < 2; dx++) {
+                            int sampleRow = Math.min(height - 1, row * 2 + dy);
+                            int sampleColumn = Math.min(width - 1, column * 2 + dx);
+                            int i = (sampleRow * width + sampleColumn) * 3;
+                            b += bgr[i] & 0xFF;
+                            g += bgr[i + 1] & 0xFF;
+                            r += bgr[i + 2] & 0xFF;
+                        }
+                    }
+                    u[row * chromaWidth + column] = (byte) (((-38 * r - 74 * g + 112 * b + 512) >> 10) + 128);
+                    v[row * chromaWidth + column] = (byte) (((112 * r - 94 * g - 18 * b + 512) >> 10) + 128);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.xuggle.xuggler.Global;
+import com.xuggle.xuggler.IPacket;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Joins segments the way {@link SegmentTranscoder} writes them and checks the time stamps of the
+ * result.
+ */
+public class SegmentTranscoderTest {
+
+    /**
+     * Presentation order within a mini-GOP of an encoder with three B-frames, in decoding order.
+     */
+    private static final int[] DECODE_ORDER = {0, 4, 2, 1, 3, 8, 6, 5, 7, 12, 10, 9, 11};
+
+    @Test
+    public void joinedSegmentsKeepDecodingOrderAndBFrameDelay() {
+        // the first segment starts decoding at its first picture, the others two ticks ahead of
+        // it for the B-frame delay, so each of them overlaps the end of the one before
+        List<List<IPacket>> segments = new ArrayList<List<IPacket>>();
+        segments.add(segment(0, 0));
+        for (int i = 1; i < 4; i++) {
+            segments.add(segment(i * DECODE_ORDER.length, 2));
+        }
+
+        long lastDts = Global.NO_PTS;
+        List<IPacket> joined = new ArrayList<IPacket>();
+        List<Long> delays = new ArrayList<Long>();
+        for (List<IPacket> segment : segments) {
+            for (IPacket packet : segment) {
+                delays.add(packet.getPts() - packet.getDts());
+            }
+            SegmentTranscoder.shift(segment, lastDts);
+            joined.addAll(segment);
+            lastDts = segment.get(segment.size() - 1).getDts();
+        }
+
+        Set<Long> presentation = new HashSet<Long>();
+        for (int i = 0; i < joined.size(); i++) {
+            IPacket packet = joined.get(i);
+            if (i > 0) {
+                assertTrue("DTS " + joined.get(i - 1).getDts() + " then " + packet.getDts(),
+                        packet.getDts() > joined.get(i - 1).getDts());
+            }
+            assertEquals("PTS - DTS of packet " + i, (long) delays.get(i), packet.getPts() - packet.getDts());
+            assertTrue("PTS " + packet.getPts() + " repeated", presentation.add(packet.getPts()));
+        }
+    }
+
+    @Test
+    public void segmentThatFollowsOnIsNotShifted() {
+        List<IPacket> first = segment(0, 0);
+        List<IPacket> second = segment(100, 2);
+        assertEquals(0, SegmentTranscoder.shift(first, Global.NO_PTS));
+        assertEquals(0, SegmentTranscoder.shift(second, first.get(first.size() - 1).getDts()));
+        assertEquals(98, second.get(0).getDts());
+        assertEquals(100, second.get(0).getPts());
+    }
+
+    /**
+     * Returns the packets of one encoder, starting with a keyframe presented at {@code firstPts}
+     * and decoded {@code delay} ticks earlier.
+     */
+    private static List<IPacket> segment(long firstPts, long delay) {
+        List<IPacket> packets = new ArrayList<IPacket>();
+        for (int i = 0; i < DECODE_ORDER.length; i++) {
+            IPacket packet = IPacket.make();
+            packet.setPts(firstPts + DECODE_ORDER[i]);
+            packet.setDts(firstPts - delay + i);
+            packet.setKeyPacket(i == 0);
+            packets.add(packet);
+        }
+        return packets;
+    }
+}
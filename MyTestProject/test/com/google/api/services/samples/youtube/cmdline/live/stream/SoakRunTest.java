@@ -0,0 +1,27 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+
+/**
+ * Runs {@link SoakTest} as part of the test suite, so CI can gate on it. Skipped unless
+ * {@code -Dsoak.duration} is set, since a useful run takes minutes to hours; every other
+ * {@code -Dsoak.*} setting applies as for {@link SoakTest#main}, e.g.
+ * {@code mvn test -Dtest=SoakRunTest -Dsoak.duration=300}.
+ */
+public class SoakRunTest {
+
+    @Test
+    public void holdsEveryThreshold() throws Exception {
+        assumeTrue(System.getProperty("soak.duration") != null);
+        SoakTest soak = SoakTest.fromSystemProperties().build();
+        boolean passed = soak.run();
+        File report = new File(System.getProperty("soak.report", "target/soak-report.csv"));
+        soak.writeReport(report);
+        assertTrue("see " + report.getPath() + ": " + soak.getVerdicts(), passed);
+    }
+}
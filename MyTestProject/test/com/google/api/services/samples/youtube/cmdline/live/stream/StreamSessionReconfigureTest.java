@@ -0,0 +1,166 @@
+package com.google.api.services.samples.youtube.cmdline.live.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.xuggle.xuggler.IPacket;
+import com.xuggle.xuggler.IStreamCoder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reconfigures a session while it streams and checks what the sink sees: each connection starts
+ * with the stream header of the encoder whose packets follow, on a keyframe, and its packets
+ * arrive in decoding order, including the ones the old encoder held back for B-frames.
+ */
+public class StreamSessionReconfigureTest {
+
+    private static final int WIDTH = 64;
+
+    private static final int HEIGHT = 48;
+
+    private static final int GOP = 12;
+
+    private FramePool pool;
+
+    private SyntheticFrameSource source;
+
+    private XugglerColorConverter converter;
+
+    private RecordingSink sink;
+
+    private StreamSession session;
+
+    private PipelineStage[] stages;
+
+    private long sequence;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = new FramePool(WIDTH, HEIGHT);
+        pool.allocate(2);
+        source = new SyntheticFrameSource(WIDTH, HEIGHT);
+        source.open();
+        converter = new XugglerColorConverter();
+        sink = new RecordingSink();
+        session = new StreamSession.Builder(sink)
+                .setSize(WIDTH, HEIGHT)
+                .setBitRate(200000)
+                .setNumPicturesInGroupOfPictures(GOP)
+                .setWarmUp(false)
+                .build();
+        session.open();
+        stages = new PipelineStage[] {
+                new CaptureStage(source),
+                new ConvertStage(converter),
+                new EncodeStage(session),
+                new MuxStage(session)
+        };
+    }
+
+    @After
+    public void tearDown() {
+        session.close();
+        converter.close();
+        source.close();
+        pool.close();
+    }
+
+    @Test
+    public void newSizeReopensSinkWithNewHeaderInDecodingOrder() throws Exception {
+        runFrames(2 * GOP + 5);
+        // a new bit rate keeps the connection
+        session.reconfigure(WIDTH, HEIGHT, 100000);
+        runFrames(2 * GOP);
+        session.reconfigure(WIDTH / 2, HEIGHT / 2, 100000);
+        runFrames(3 * GOP);
+        session.finish();
+
+        assertEquals("connections", 2, sink.connections.size());
+        Connection first = sink.connections.get(0);
+        Connection second = sink.connections.get(1);
+        assertEquals(WIDTH, first.width);
+        assertEquals(WIDTH / 2, second.width);
+        assertEquals(HEIGHT / 2, second.height);
+        for (Connection connection : sink.connections) {
+            assertTrue(connection.width + "x" + connection.height + " received nothing", !connection.dts.isEmpty());
+            assertTrue(connection.width + "x" + connection.height + " did not start on a keyframe",
+                    connection.firstKey);
+            for (int i = 1; i < connection.dts.size(); i++) {
+                assertTrue(connection.width + "x" + connection.height + " DTS " + connection.dts.get(i - 1)
+                        + " then " + connection.dts.get(i), connection.dts.get(i) > connection.dts.get(i - 1));
+            }
+        }
+    }
+
+    private void runFrames(int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            Frame frame = pool.acquire();
+            frame.setSequence(sequence);
+            frame.setTimeStamp(sequence * 1000000L / 24);
+            frame.setCaptureNanos(System.nanoTime());
+            sequence++;
+            for (PipelineStage stage : stages) {
+                if (!stage.process(frame)) {
+                    break;
+                }
+            }
+            pool.release(frame);
+        }
+    }
+
+    /**
+     * What one connection of the sink received.
+     */
+    private static class Connection {
+
+        int width;
+
+        int height;
+
+        boolean firstKey;
+
+        final List<Long> dts = new ArrayList<Long>();
+    }
+
+    /**
+     * Records the encoder each connection was opened with and the packets written to it.
+     */
+    private static class RecordingSink implements OutputSink {
+
+        final List<Connection> connections = new ArrayList<Connection>();
+
+        private Connection current;
+
+        @Override
+        public void open(IStreamCoder coder) {
+            current = new Connection();
+            current.width = coder.getWidth();
+            current.height = coder.getHeight();
+            connections.add(current);
+        }
+
+        @Override
+        public void write(IPacket packet) {
+            if (current.dts.isEmpty()) {
+                current.firstKey = packet.isKeyPacket();
+            }
+            current.dts.add(packet.getDts());
+        }
+
+        @Override
+        public void close() {
+            current = null;
+        }
+
+        @Override
+        public String getName() {
+            return "recording";
+        }
+    }
+}